@@ -0,0 +1,364 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.sling.commons.threads.ModifiableThreadPoolConfig;
+import org.apache.sling.commons.threads.ThreadPoolConfig.ThreadPoolPolicy;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the submission throughput and the handoff latency of a {@link DefaultThreadPool}
+ * for all queue flavours (synchronous, bounded and unbounded) and all block policies.
+ * <p>
+ * The throughput benchmarks report the number of {@code execute}/{@code submit} calls per
+ * second. The handoff benchmarks record the time from submitting a task until a worker
+ * starts running it in a histogram, whose p50/p99/p99.9 are printed after each iteration.
+ * Tasks which are rejected or dropped by the block policy are not part of the histogram,
+ * they are reported as the {@code dropped} counter next to the {@code handoffs} counter.
+ * <p>
+ * Run with {@code mvn -Pbenchmarks test-compile exec:exec -Djmh.main=org.apache.sling.commons.threads.impl.DefaultThreadPoolBenchmark}
+ * to execute the benchmarks with 1, 2, 4, ... producer threads up to the number of available
+ * processors. JMH options can be passed with {@code -Djmh.args="..."}, passing {@code -t}
+ * runs a single producer thread count only.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.lang=ALL-UNNAMED")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DefaultThreadPoolBenchmark {
+
+    /** Maximum number of tasks waiting in an unbounded queue before producers back off. */
+    private static final int MAX_BACKLOG = 10_000;
+
+    /** How long a handoff benchmark waits for a task which might have been discarded. */
+    private static final long HANDOFF_TIMEOUT_NS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final Runnable NOOP_RUNNABLE = () -> {};
+
+    private static final Callable<Object> NOOP_CALLABLE = () -> Boolean.TRUE;
+
+    /** 0 = synchronous queue, &gt; 0 = bounded array queue, -1 = unbounded linked queue */
+    @Param({"0", "1000", "-1"})
+    public int queueSize;
+
+    @Param({"ABORT", "DISCARD", "DISCARDOLDEST", "RUN"})
+    public ThreadPoolPolicy blockPolicy;
+
+    @Param({"4"})
+    public int poolSize;
+
+    private DefaultThreadPool pool;
+
+    private BlockingQueue<Runnable> queue;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        config.setMinPoolSize(poolSize);
+        config.setMaxPoolSize(poolSize);
+        config.setQueueSize(queueSize);
+        config.setBlockPolicy(blockPolicy);
+        config.setShutdownGraceful(false);
+        pool = new DefaultThreadPool("benchmark", config);
+        queue = pool.getExecutor().getQueue();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public boolean execute() {
+        backOff();
+        try {
+            pool.execute(NOOP_RUNNABLE);
+            return true;
+        } catch (final RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Future<?> submitRunnable() {
+        backOff();
+        try {
+            return pool.submit(NOOP_RUNNABLE);
+        } catch (final RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Future<Object> submitCallable() {
+        backOff();
+        try {
+            return pool.submit(NOOP_CALLABLE);
+        } catch (final RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void handoffExecute(final HandoffLatencies latencies, final HandoffCounters counters) {
+        final HandoffTask task = new HandoffTask();
+        try {
+            pool.execute(task);
+        } catch (final RejectedExecutionException e) {
+            counters.dropped++;
+            return;
+        }
+        record(task, latencies, counters);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void handoffSubmitRunnable(final HandoffLatencies latencies, final HandoffCounters counters) {
+        final HandoffTask task = new HandoffTask();
+        try {
+            pool.submit((Runnable) task);
+        } catch (final RejectedExecutionException e) {
+            counters.dropped++;
+            return;
+        }
+        record(task, latencies, counters);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void handoffSubmitCallable(final HandoffLatencies latencies, final HandoffCounters counters) {
+        final HandoffTask task = new HandoffTask();
+        try {
+            pool.submit((Callable<Object>) task);
+        } catch (final RejectedExecutionException e) {
+            counters.dropped++;
+            return;
+        }
+        record(task, latencies, counters);
+    }
+
+    private static void record(final HandoffTask task, final HandoffLatencies latencies, final HandoffCounters counters) {
+        final long nanos = task.awaitStart();
+        if (nanos < 0) {
+            // discarded by the block policy
+            counters.dropped++;
+        } else {
+            latencies.record(nanos);
+            counters.handoffs++;
+        }
+    }
+
+    /**
+     * The number of handed off and dropped tasks per producer thread, reported next to the score.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class HandoffCounters {
+
+        public long handoffs;
+
+        public long dropped;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            handoffs = 0;
+            dropped = 0;
+        }
+    }
+
+    /**
+     * A histogram of the handoff times of all producer threads with 16 buckets per power of two,
+     * so a percentile is accurate to about 6%.
+     */
+    @State(Scope.Benchmark)
+    public static class HandoffLatencies {
+
+        private static final int SUB_BUCKETS = 16;
+
+        private static final int SUB_BUCKET_BITS = 4;
+
+        private final AtomicLongArray buckets = new AtomicLongArray((64 - SUB_BUCKET_BITS) * SUB_BUCKETS);
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            for (int i = 0; i < buckets.length(); i++) {
+                buckets.set(i, 0);
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void print() {
+            long count = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                count += buckets.get(i);
+            }
+            if (count > 0) {
+                System.out.printf("handoff latency: p50 = %.3f us, p99 = %.3f us, p99.9 = %.3f us (%d handoffs)%n",
+                        percentile(count, 0.5) / 1000.0,
+                        percentile(count, 0.99) / 1000.0,
+                        percentile(count, 0.999) / 1000.0,
+                        count);
+            }
+        }
+
+        void record(final long nanos) {
+            buckets.incrementAndGet(index(nanos));
+        }
+
+        private long percentile(final long count, final double quantile) {
+            final long rank = (long) Math.ceil(count * quantile);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return lowerBound(i);
+                }
+            }
+            return lowerBound(buckets.length() - 1);
+        }
+
+        private static int index(final long nanos) {
+            if (nanos < SUB_BUCKETS) {
+                return (int) nanos;
+            }
+            final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            final int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        private static long lowerBound(final int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            final int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        }
+    }
+
+    /**
+     * Keeps an unbounded queue from growing without limit while the producers
+     * are faster than the workers. Bounded queues are limited by the block policy.
+     */
+    private void backOff() {
+        if (queueSize < 0) {
+            while (queue.size() > MAX_BACKLOG) {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Task recording the moment a worker picks it up.
+     */
+    private static final class HandoffTask implements Runnable, Callable<Object> {
+
+        private final long submitted = System.nanoTime();
+
+        private volatile long started;
+
+        @Override
+        public void run() {
+            started = System.nanoTime();
+        }
+
+        @Override
+        public Object call() {
+            run();
+            return Boolean.TRUE;
+        }
+
+        /**
+         * Wait until the task has been started, a discarded task gives up after {@link #HANDOFF_TIMEOUT_NS}.
+         * @return the handoff time in nanoseconds
+         */
+        long awaitStart() {
+            long start;
+            while ((start = started) == 0) {
+                if (System.nanoTime() - submitted > HANDOFF_TIMEOUT_NS) {
+                    return -1;
+                }
+                Thread.yield();
+            }
+            return start - submitted;
+        }
+    }
+
+    /**
+     * Runs the benchmarks of this class once per producer thread count.
+     * @param args JMH command line options
+     * @throws CommandLineOptionException If the options are invalid
+     * @throws RunnerException If running the benchmarks fails
+     */
+    public static void main(final String[] args) throws CommandLineOptionException, RunnerException {
+        final CommandLineOptions cmdOptions = new CommandLineOptions(args);
+        final List<Integer> producers = new ArrayList<>();
+        if (cmdOptions.getThreads().hasValue()) {
+            producers.add(cmdOptions.getThreads().get());
+        } else {
+            final int cpus = Runtime.getRuntime().availableProcessors();
+            for (int i = 1; i < cpus; i *= 2) {
+                producers.add(i);
+            }
+            producers.add(cpus);
+        }
+        for (final int threads : producers) {
+            final ChainedOptionsBuilder options = new OptionsBuilder().parent(cmdOptions).threads(threads);
+            if (cmdOptions.getIncludes().isEmpty()) {
+                options.include(DefaultThreadPoolBenchmark.class.getName());
+            }
+            new Runner(options.build()).run();
+        }
+    }
+}
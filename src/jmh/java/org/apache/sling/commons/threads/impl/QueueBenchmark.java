@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the throughput of the work queues of a thread pool under contention.
+ * <p>
+ * Four producer threads offer to and four consumer threads poll from a shared bounded queue,
+ * like the threads submitting tasks to and the worker threads of a thread pool. Neither side blocks,
+ * so a full or empty queue shows up as failed operations rather than parked threads.
+ * <p>
+ * Run with {@code mvn -Pbenchmarks test-compile exec:exec -Djmh.main=org.apache.sling.commons.threads.impl.QueueBenchmark}
+ */
+@State(Scope.Group)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QueueBenchmark {
+
+    private static final Object TASK = new Object();
+
+    @Param({"ARRAY", "LINKED", "RING_BUFFER"})
+    public String queueType;
+
+    @Param({"1024"})
+    public int capacity;
+
+    private BlockingQueue<Object> queue;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        switch (queueType) {
+            case "LINKED" :
+                queue = new LinkedBlockingQueue<>(capacity);
+                break;
+            case "RING_BUFFER" :
+                queue = new MpmcArrayBlockingQueue<>(capacity);
+                break;
+            default :
+                queue = new ArrayBlockingQueue<>(capacity);
+        }
+    }
+
+    @Benchmark
+    @Group("queue")
+    @GroupThreads(4)
+    public boolean offer() {
+        return queue.offer(TASK);
+    }
+
+    @Benchmark
+    @Group("queue")
+    @GroupThreads(4)
+    public Object poll() {
+        return queue.poll();
+    }
+
+    /**
+     * Runs the benchmarks of this class.
+     * @param args JMH command line options
+     * @throws CommandLineOptionException If the options are invalid
+     * @throws RunnerException If running the benchmarks fails
+     */
+    public static void main(final String[] args) throws CommandLineOptionException, RunnerException {
+        final CommandLineOptions cmdOptions = new CommandLineOptions(args);
+        final ChainedOptionsBuilder options = new OptionsBuilder().parent(cmdOptions);
+        if (cmdOptions.getIncludes().isEmpty()) {
+            options.include(QueueBenchmark.class.getName());
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the per task overhead of cleaning up thread locals.
+ * <p>
+ * {@link #cleanerCycle()} runs a single save/cleanup cycle of the {@link ThreadLocalCleaner}
+ * on the benchmark thread, {@link #runTasks()} runs tasks through a single threaded executor,
+ * either a plain {@link ThreadPoolExecutor} as baseline or a {@link ThreadPoolExecutorCleaningThreadLocals}.
+ * In both cases the thread carries {@link #liveThreadLocals} thread locals which have been set
+ * before the measurement.
+ * <p>
+ * Run with {@code mvn -Pbenchmarks test-compile exec:exec -Djmh.main=org.apache.sling.commons.threads.impl.ThreadLocalCleanerBenchmark}
+ * which adds the GC profiler, so the allocated bytes per task are reported as {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.lang=ALL-UNNAMED")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ThreadLocalCleanerBenchmark {
+
+    private static final int TASKS_PER_INVOCATION = 100;
+
+    private static final Runnable NOOP = () -> {};
+
+    private static final ThreadLocalChangeListener DISABLED_LISTENER = new ThreadLocalChangeListener() {
+
+        @Override
+        public void changed(Mode mode, Thread thread, ThreadLocal<?> threadLocal, Object value) {
+            // never called
+        }
+
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    @Param({"0", "8", "64", "512"})
+    public int liveThreadLocals;
+
+    @Param({"plain", "cleaning"})
+    public String executorType;
+
+    private final List<ThreadLocal<Object>> threadLocals = new ArrayList<>();
+
+    private ThreadPoolExecutor executor;
+
+    /** reused like the per worker cleaner of {@link ThreadPoolExecutorCleaningThreadLocals} */
+    private final ThreadLocalCleaner cleaner = new ThreadLocalCleaner(DISABLED_LISTENER);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        for (int i = 0; i < liveThreadLocals; i++) {
+            threadLocals.add(new ThreadLocal<>());
+        }
+        // the benchmark thread itself for cleanerCycle()
+        populateThreadLocals();
+        // the worker thread for runTasks(), populated before it takes its first task
+        final ThreadFactory factory = r -> new Thread(() -> {
+            populateThreadLocals();
+            r.run();
+        }, "thread-local-cleaner-benchmark");
+        if ("cleaning".equals(executorType)) {
+            executor = new ThreadPoolExecutorCleaningThreadLocals(1, 1, 1, TimeUnit.MINUTES,
+                    new LinkedBlockingQueue<>(), factory, new ThreadPoolExecutor.AbortPolicy(), DISABLED_LISTENER);
+        } else {
+            executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.MINUTES,
+                    new LinkedBlockingQueue<>(), factory, new ThreadPoolExecutor.AbortPolicy());
+        }
+        executor.prestartAllCoreThreads();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+        for (final ThreadLocal<Object> tl : threadLocals) {
+            tl.remove();
+        }
+        threadLocals.clear();
+    }
+
+    private void populateThreadLocals() {
+        for (final ThreadLocal<Object> tl : threadLocals) {
+            tl.set(new Object());
+        }
+    }
+
+    @Benchmark
+    public void cleanerCycle() {
+        if ("cleaning".equals(executorType)) {
+            cleaner.save();
+            cleaner.cleanup();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TASKS_PER_INVOCATION)
+    public Object runTasks() throws InterruptedException, ExecutionException {
+        Future<?> last = null;
+        for (int i = 0; i < TASKS_PER_INVOCATION; i++) {
+            last = executor.submit(NOOP);
+        }
+        // single worker with a FIFO queue, so all tasks are done once the last one is
+        return last.get();
+    }
+
+    /**
+     * Runs the benchmarks of this class with the GC profiler enabled.
+     * @param args JMH command line options
+     * @throws CommandLineOptionException If the options are invalid
+     * @throws RunnerException If running the benchmarks fails
+     */
+    public static void main(final String[] args) throws CommandLineOptionException, RunnerException {
+        final CommandLineOptions cmdOptions = new CommandLineOptions(args);
+        final ChainedOptionsBuilder options = new OptionsBuilder().parent(cmdOptions).addProfiler(GCProfiler.class);
+        if (cmdOptions.getIncludes().isEmpty()) {
+            options.include(ThreadLocalCleanerBenchmark.class.getName());
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -18,6 +18,7 @@ package org.apache.sling.commons.threads;
 
 import org.osgi.annotation.versioning.ProviderType;
 
+import java.util.Arrays;
 import java.util.concurrent.ThreadFactory;
 
 /**
@@ -34,6 +35,19 @@ import java.util.concurrent.ThreadFactory;
  * - shutdown wait time: -1
  * - priority: NORM
  * - daemon: false
+ * - executor type: THREAD_POOL
+ * - queue type: ARRAY
+ * - eager thread growth: false
+ * - auto scaling: false
+ * - linger time: 0
+ * - hibernation time: 0
+ * - prestart core threads: false
+ * - warm up threads: false
+ * - warm-up task: null (= empty task)
+ * - thread local cleanup mode: ALWAYS
+ * - thread local cleanup interval: 10
+ * - thread local allowlist: empty
+ * - thread local statistics: false
  * - factory: null (= default jvm thread factory)
  */
 @ProviderType
@@ -59,6 +73,32 @@ public final class ModifiableThreadPoolConfig implements ThreadPoolConfig {
     public static final String PROPERTY_PRIORITY = "priority";
     /** Configuration property for the daemon flag. */
     public static final String PROPERTY_DAEMON = "daemon";
+    /** Configuration property for the executor type. */
+    public static final String PROPERTY_EXECUTOR_TYPE = "executorType";
+    /** Configuration property for the queue type. */
+    public static final String PROPERTY_QUEUE_TYPE = "queueType";
+    /** Configuration property for the eager thread growth flag. */
+    public static final String PROPERTY_EAGER_THREAD_GROWTH = "eagerThreadGrowth";
+    /** Configuration property for the auto scaling flag. */
+    public static final String PROPERTY_AUTO_SCALING = "autoScaling";
+    /** Configuration property for the ceiling of the max pool size raised by auto scaling. */
+    public static final String PROPERTY_AUTO_SCALING_MAX_POOL_SIZE = "autoScalingMaxPoolSize";
+    /** Configuration property for the linger time. */
+    public static final String PROPERTY_LINGER_TIME = "lingerTime";
+    /** Configuration property for the hibernation time. */
+    public static final String PROPERTY_HIBERNATION_TIME = "hibernationTime";
+    /** Configuration property for the prestart core threads flag. */
+    public static final String PROPERTY_PRESTART_CORE_THREADS = "prestartCoreThreads";
+    /** Configuration property for the warm up threads flag. */
+    public static final String PROPERTY_WARM_UP_THREADS = "warmUpThreads";
+    /** Configuration property for the thread local cleanup mode. */
+    public static final String PROPERTY_THREAD_LOCAL_CLEANUP_MODE = "threadLocalCleanupMode";
+    /** Configuration property for the thread local cleanup interval. */
+    public static final String PROPERTY_THREAD_LOCAL_CLEANUP_INTERVAL = "threadLocalCleanupInterval";
+    /** Configuration property for the thread local allowlist. */
+    public static final String PROPERTY_THREAD_LOCAL_ALLOWLIST = "threadLocalAllowlist";
+    /** Configuration property for the thread local statistics flag. */
+    public static final String PROPERTY_THREAD_LOCAL_STATISTICS = "threadLocalStatistics";
     /** Configuration property for the thread pool name. */
     public static final String PROPERTY_NAME = "name";
 
@@ -99,6 +139,48 @@ public final class ModifiableThreadPoolConfig implements ThreadPoolConfig {
     /** Create daemon threads? */
     private  boolean isDaemon = false;
 
+    /** The type of the executor. */
+    private ExecutorType executorType = ExecutorType.THREAD_POOL;
+
+    /** The type of the bounded work queue. */
+    private QueueType queueType = QueueType.ARRAY;
+
+    /** Start threads up to the max pool size before queueing tasks? */
+    private boolean eagerThreadGrowth = false;
+
+    /** Adjust the core pool size to the load? */
+    private boolean autoScaling = false;
+
+    /** The ceiling up to which auto scaling raises the max pool size. */
+    private int autoScalingMaxPoolSize = -1;
+
+    /** The time an unused pool is kept. */
+    private long lingerTime = 0L;
+
+    /** The time without tasks after which all threads are released. */
+    private long hibernationTime = 0L;
+
+    /** Start all core threads at once? */
+    private boolean prestartCoreThreads = false;
+
+    /** Run a warm-up task for each prestarted thread? */
+    private boolean warmUpThreads = false;
+
+    /** Optional warm-up task. */
+    private Runnable warmUpTask;
+
+    /** Thread local cleanup mode. */
+    private ThreadLocalCleanupMode threadLocalCleanupMode = ThreadLocalCleanupMode.ALWAYS;
+
+    /** Number of tasks between thread local cleanups. */
+    private int threadLocalCleanupInterval = 10;
+
+    /** Thread locals which survive the cleanup. */
+    private String[] threadLocalAllowlist = new String[0];
+
+    /** Collect thread local statistics? */
+    private boolean threadLocalStatistics = false;
+
     /**
      * Create a new default configuration.
      */
@@ -123,6 +205,20 @@ public final class ModifiableThreadPoolConfig implements ThreadPoolConfig {
             this.factory = copy.getFactory();
             this.priority = copy.getPriority();
             this.isDaemon = copy.isDaemon();
+            this.executorType = copy.getExecutorType();
+            this.queueType = copy.getQueueType();
+            this.eagerThreadGrowth = copy.isEagerThreadGrowth();
+            this.autoScaling = copy.isAutoScaling();
+            this.autoScalingMaxPoolSize = copy.getAutoScalingMaxPoolSize();
+            this.lingerTime = copy.getLingerTime();
+            this.hibernationTime = copy.getHibernationTime();
+            this.prestartCoreThreads = copy.isPrestartCoreThreads();
+            this.warmUpThreads = copy.isWarmUpThreads();
+            this.warmUpTask = copy.getWarmUpTask();
+            this.threadLocalCleanupMode = copy.getThreadLocalCleanupMode();
+            this.threadLocalCleanupInterval = copy.getThreadLocalCleanupInterval();
+            this.threadLocalAllowlist = copy.getThreadLocalAllowlist();
+            this.threadLocalStatistics = copy.isThreadLocalStatistics();
         }
     }
 
@@ -305,6 +401,245 @@ public final class ModifiableThreadPoolConfig implements ThreadPoolConfig {
         this.isDaemon = isDaemon;
     }
 
+    /**
+     * @see org.apache.sling.commons.threads.ThreadPoolConfig#getExecutorType()
+     */
+    public ExecutorType getExecutorType() {
+        return executorType;
+    }
+
+    /**
+     * Set the type of executor backing the pool.
+     * @param executorType The executor type.
+     * @throws IllegalArgumentException If executorType is null.
+     * @since 3.5.0
+     */
+    public void setExecutorType(final ExecutorType executorType) {
+        if ( executorType == null ) {
+            throw new IllegalArgumentException("Executor type must not be null.");
+        }
+        this.executorType = executorType;
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ThreadPoolConfig#getQueueType()
+     */
+    public QueueType getQueueType() {
+        return queueType;
+    }
+
+    /**
+     * Set the implementation of the work queue if the queue size is greater than 0.
+     * @param queueType The queue type.
+     * @throws IllegalArgumentException If queueType is null.
+     * @since 3.5.0
+     */
+    public void setQueueType(final QueueType queueType) {
+        if ( queueType == null ) {
+            throw new IllegalArgumentException("Queue type must not be null.");
+        }
+        this.queueType = queueType;
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ThreadPoolConfig#isEagerThreadGrowth()
+     */
+    public boolean isEagerThreadGrowth() {
+        return eagerThreadGrowth;
+    }
+
+    /**
+     * Set if the pool starts new threads up to the max pool size before it queues tasks.
+     * @param eagerThreadGrowth The eager thread growth setting.
+     * @since 3.5.0
+     */
+    public void setEagerThreadGrowth(final boolean eagerThreadGrowth) {
+        this.eagerThreadGrowth = eagerThreadGrowth;
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ThreadPoolConfig#isAutoScaling()
+     */
+    public boolean isAutoScaling() {
+        return autoScaling;
+    }
+
+    /**
+     * Set if the core pool size is adjusted to the load, between the min and the max pool size.
+     * @param autoScaling The auto scaling setting.
+     * @since 3.5.0
+     */
+    public void setAutoScaling(final boolean autoScaling) {
+        this.autoScaling = autoScaling;
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ThreadPoolConfig#getAutoScalingMaxPoolSize()
+     */
+    public int getAutoScalingMaxPoolSize() {
+        return autoScalingMaxPoolSize;
+    }
+
+    /**
+     * Set the ceiling up to which auto scaling may raise the max pool size.
+     * @param autoScalingMaxPoolSize The ceiling of the max pool size, -1 to never raise it.
+     * @since 3.5.0
+     */
+    public void setAutoScalingMaxPoolSize(final int autoScalingMaxPoolSize) {
+        this.autoScalingMaxPoolSize = autoScalingMaxPoolSize;
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ThreadPoolConfig#getLingerTime()
+     */
+    public long getLingerTime() {
+        return lingerTime;
+    }
+
+    /**
+     * Set the time an unused pool is kept before it is shut down.
+     * @param lingerTime The linger time in milliseconds, 0 or less to shut down an unused pool at once.
+     * @since 3.5.0
+     */
+    public void setLingerTime(final long lingerTime) {
+        this.lingerTime = lingerTime;
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ThreadPoolConfig#getHibernationTime()
+     */
+    public long getHibernationTime() {
+        return hibernationTime;
+    }
+
+    /**
+     * Set the time without tasks after which the pool releases all its threads.
+     * @param hibernationTime The hibernation time in milliseconds, 0 or less to keep the core threads.
+     * @since 3.5.0
+     */
+    public void setHibernationTime(final long hibernationTime) {
+        this.hibernationTime = hibernationTime;
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ThreadPoolConfig#isPrestartCoreThreads()
+     */
+    public boolean isPrestartCoreThreads() {
+        return prestartCoreThreads;
+    }
+
+    /**
+     * Set if all core threads are started at once.
+     * @param prestartCoreThreads The prestart core threads setting.
+     * @since 3.5.0
+     */
+    public void setPrestartCoreThreads(final boolean prestartCoreThreads) {
+        this.prestartCoreThreads = prestartCoreThreads;
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ThreadPoolConfig#isWarmUpThreads()
+     */
+    public boolean isWarmUpThreads() {
+        return warmUpThreads;
+    }
+
+    /**
+     * Set if a warm-up task is run for each prestarted thread.
+     * @param warmUpThreads The warm up threads setting.
+     * @since 3.5.0
+     */
+    public void setWarmUpThreads(final boolean warmUpThreads) {
+        this.warmUpThreads = warmUpThreads;
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ThreadPoolConfig#getWarmUpTask()
+     */
+    public Runnable getWarmUpTask() {
+        return warmUpTask;
+    }
+
+    /**
+     * Set the warm-up task.
+     * @param warmUpTask The task warming up the prestarted threads or <code>null</code>
+     *                   to use an empty task.
+     * @since 3.5.0
+     */
+    public void setWarmUpTask(final Runnable warmUpTask) {
+        this.warmUpTask = warmUpTask;
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ThreadPoolConfig#getThreadLocalCleanupMode()
+     */
+    public ThreadLocalCleanupMode getThreadLocalCleanupMode() {
+        return threadLocalCleanupMode;
+    }
+
+    /**
+     * Set the thread local cleanup mode.
+     * @param threadLocalCleanupMode The thread local cleanup mode.
+     * @throws IllegalArgumentException If threadLocalCleanupMode is null.
+     * @since 3.5.0
+     */
+    public void setThreadLocalCleanupMode(final ThreadLocalCleanupMode threadLocalCleanupMode) {
+        if ( threadLocalCleanupMode == null ) {
+            throw new IllegalArgumentException("Thread local cleanup mode must not be null.");
+        }
+        this.threadLocalCleanupMode = threadLocalCleanupMode;
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ThreadPoolConfig#getThreadLocalCleanupInterval()
+     */
+    public int getThreadLocalCleanupInterval() {
+        return threadLocalCleanupInterval;
+    }
+
+    /**
+     * Set the number of tasks after which the thread locals are cleaned up
+     * in mode {@link ThreadLocalCleanupMode#EVERY_N_TASKS}.
+     * @param threadLocalCleanupInterval The thread local cleanup interval.
+     * @since 3.5.0
+     */
+    public void setThreadLocalCleanupInterval(final int threadLocalCleanupInterval) {
+        this.threadLocalCleanupInterval = threadLocalCleanupInterval;
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ThreadPoolConfig#getThreadLocalAllowlist()
+     */
+    public String[] getThreadLocalAllowlist() {
+        return threadLocalAllowlist.clone();
+    }
+
+    /**
+     * Set the thread locals which survive the cleanup.
+     * @param threadLocalAllowlist The class names or package names followed by {@code .*},
+     *                             <code>null</code> for an empty allowlist.
+     * @since 3.5.0
+     */
+    public void setThreadLocalAllowlist(final String... threadLocalAllowlist) {
+        this.threadLocalAllowlist = threadLocalAllowlist == null ? new String[0] : threadLocalAllowlist.clone();
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ThreadPoolConfig#isThreadLocalStatistics()
+     */
+    public boolean isThreadLocalStatistics() {
+        return threadLocalStatistics;
+    }
+
+    /**
+     * Set if statistics about the thread locals changed by tasks are collected.
+     * @param threadLocalStatistics The thread local statistics setting.
+     * @since 3.5.0
+     */
+    public void setThreadLocalStatistics(final boolean threadLocalStatistics) {
+        this.threadLocalStatistics = threadLocalStatistics;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if ( obj instanceof ModifiableThreadPoolConfig ) {
@@ -318,7 +653,20 @@ public final class ModifiableThreadPoolConfig implements ThreadPoolConfig {
                 && this.shutdownGraceful == o.shutdownGraceful
                 && this.shutdownWaitTimeMs == o.shutdownWaitTimeMs
                 && this.priority.equals(o.priority)
-                && this.isDaemon == o.isDaemon;
+                && this.isDaemon == o.isDaemon
+                && this.executorType.equals(o.executorType)
+                && this.queueType.equals(o.queueType)
+                && this.eagerThreadGrowth == o.eagerThreadGrowth
+                && this.autoScaling == o.autoScaling
+                && this.autoScalingMaxPoolSize == o.autoScalingMaxPoolSize
+                && this.lingerTime == o.lingerTime
+                && this.hibernationTime == o.hibernationTime
+                && this.prestartCoreThreads == o.prestartCoreThreads
+                && this.warmUpThreads == o.warmUpThreads
+                && this.threadLocalCleanupMode.equals(o.threadLocalCleanupMode)
+                && this.threadLocalCleanupInterval == o.threadLocalCleanupInterval
+                && Arrays.equals(this.threadLocalAllowlist, o.threadLocalAllowlist)
+                && this.threadLocalStatistics == o.threadLocalStatistics;
         }
         return false;
     }
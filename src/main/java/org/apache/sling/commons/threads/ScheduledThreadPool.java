@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * A thread pool which can run tasks after a delay or periodically.
+ * It is obtained from the {@link ThreadPoolManager} and must be released
+ * with {@link ThreadPoolManager#release(ThreadPool)} when not used anymore.
+ * <p>
+ * Cancelled tasks are removed from the queue of the pool immediately.
+ * @since 3.5.0
+ */
+@ProviderType
+public interface ScheduledThreadPool extends ThreadPool {
+
+    /**
+     * Schedules a runnable to run once after the given delay.
+     * @param runnable The {@link Runnable} to schedule
+     * @param delay The delay
+     * @param unit The unit of the delay
+     * @return A {@link ScheduledFuture} representing pending completion of the {@link Runnable}
+     */
+    ScheduledFuture<?> schedule(Runnable runnable, long delay, TimeUnit unit);
+
+    /**
+     * Schedules a callable to run once after the given delay.
+     * @param callable The {@link Callable} to schedule
+     * @param delay The delay
+     * @param unit The unit of the delay
+     * @param <T> The generic type for the callable.
+     * @return A {@link ScheduledFuture} representing pending completion of the {@link Callable}
+     */
+    <T> ScheduledFuture<T> schedule(Callable<T> callable, long delay, TimeUnit unit);
+
+    /**
+     * Schedules a runnable to run periodically at a fixed rate, see
+     * {@link java.util.concurrent.ScheduledExecutorService#scheduleAtFixedRate(Runnable, long, long, TimeUnit)}.
+     * @param runnable The {@link Runnable} to schedule
+     * @param initialDelay The delay of the first run
+     * @param period The period between the start of two runs
+     * @param unit The unit of the delay and period
+     * @return A {@link ScheduledFuture} which can be used to cancel the task
+     */
+    ScheduledFuture<?> scheduleAtFixedRate(Runnable runnable, long initialDelay, long period, TimeUnit unit);
+
+    /**
+     * Schedules a runnable to run periodically with a fixed delay, see
+     * {@link java.util.concurrent.ScheduledExecutorService#scheduleWithFixedDelay(Runnable, long, long, TimeUnit)}.
+     * @param runnable The {@link Runnable} to schedule
+     * @param initialDelay The delay of the first run
+     * @param delay The delay between the end of one run and the start of the next run
+     * @param unit The unit of the delays
+     * @return A {@link ScheduledFuture} which can be used to cancel the task
+     */
+    ScheduledFuture<?> scheduleWithFixedDelay(Runnable runnable, long initialDelay, long delay, TimeUnit unit);
+}
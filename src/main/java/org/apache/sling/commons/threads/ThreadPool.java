@@ -18,9 +18,14 @@ package org.apache.sling.commons.threads;
 
 import org.osgi.annotation.versioning.ProviderType;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * The thread pool interface allows to start runnables by
@@ -46,6 +51,57 @@ public interface ThreadPool extends Executor {
      */
     Future<?> submit(Runnable runnable);
 
+    /**
+     * Submits a batch of callables for execution.
+     * The batch is enqueued as a whole, with at most as many queue operations as the pool
+     * has threads, instead of one per callable. The callables are started in the order of
+     * the collection by the threads picking up the batch, the thread locals are cleaned up
+     * after each callable like for single tasks.
+     * @param tasks The {@link Callable}s to submit
+     * @param <T> The generic type for the callables.
+     * @return The {@link Future}s representing pending completion of the {@link Callable}s,
+     *         in the order of the collection
+     * @since 3.5.0
+     */
+    <T> List<Future<T>> submitAll(Collection<? extends Callable<T>> tasks);
+
+    /**
+     * Submits a batch of callables for execution like {@link #submitAll(Collection)} and waits
+     * until all of them are done or the timeout expires, whichever happens first.
+     * The callables which are not done when the timeout expires are cancelled.
+     * @param tasks The {@link Callable}s to submit
+     * @param timeout The maximum time to wait
+     * @param unit The unit of the timeout
+     * @param <T> The generic type for the callables.
+     * @return The {@link Future}s of the {@link Callable}s in the order of the collection,
+     *         all of them are done
+     * @throws InterruptedException If interrupted while waiting, the unfinished callables are cancelled
+     * @since 3.5.0
+     */
+    <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+            throws InterruptedException;
+
+    /**
+     * Submits a supplier for execution.
+     * Dependent async stages of the returned future without an explicit executor
+     * run on this thread pool as well (requires Java 9 or later).
+     * @param supplier The {@link Supplier} to submit
+     * @param <T> The generic type for the supplier.
+     * @return A {@link CompletableFuture} completed with the result of the {@link Supplier}
+     * @since 3.5.0
+     */
+    <T> CompletableFuture<T> submitAsync(Supplier<T> supplier);
+
+    /**
+     * Submits a runnable for execution.
+     * Dependent async stages of the returned future without an explicit executor
+     * run on this thread pool as well (requires Java 9 or later).
+     * @param runnable The {@link Runnable} to submit
+     * @return A {@link CompletableFuture} completed once the {@link Runnable} has run
+     * @since 3.5.0
+     */
+    CompletableFuture<Void> runAsync(Runnable runnable);
+
     /**
      * The name of the thread pool.
      * @return The thread pool name.
@@ -40,6 +40,58 @@ public interface ThreadPoolConfig {
         MAX
     };
 
+    /**
+     * The types of executors backing a thread pool.
+     * @since 3.5.0
+     */
+    public enum ExecutorType {
+        /** A pool of platform threads which are reused for many tasks. */
+        THREAD_POOL,
+        /** A new virtual thread for each task, requires Java 21. The max pool size limits the number
+         * of concurrently running tasks. Thread locals don't need to be cleaned up. */
+        VIRTUAL_THREADS,
+        /** A {@link java.util.concurrent.ForkJoinPool} with a deque per worker and work stealing, for
+         * tasks forking subtasks. The max pool size is the parallelism, the queue is unbounded and
+         * thread locals are not cleaned up. */
+        FORK_JOIN,
+        /** A {@link java.util.concurrent.ScheduledThreadPoolExecutor} which can run tasks after a delay
+         * or periodically, see {@link org.apache.sling.commons.threads.ScheduledThreadPool}. The max pool
+         * size is the number of threads and the queue is unbounded. */
+        SCHEDULED
+    };
+
+    /**
+     * The implementations of a bounded work queue, used if the queue size is greater than 0.
+     * @since 3.5.0
+     */
+    public enum QueueType {
+        /** A {@link java.util.concurrent.ArrayBlockingQueue}, a single lock is shared by producers and consumers. */
+        ARRAY,
+        /** A {@link java.util.concurrent.LinkedBlockingQueue}, with separate locks for producers and consumers
+         * but a node allocation per task. */
+        LINKED,
+        /** A lock free ring buffer for multiple producers and consumers, which only blocks
+         * consumers if it is empty. */
+        RING_BUFFER
+    };
+
+    /**
+     * The modes for cleaning up the thread locals of the pool's threads.
+     * @since 3.5.0
+     */
+    public enum ThreadLocalCleanupMode {
+        /** The thread locals are restored after each task. */
+        ALWAYS,
+        /** The thread locals are restored after every n-th task of a thread,
+         * see {@link ThreadPoolConfig#getThreadLocalCleanupInterval()}. */
+        EVERY_N_TASKS,
+        /** The thread locals are restored to the state when the thread took its first task,
+         * but only if a cheap check detects that a task has added or removed thread locals. */
+        ON_CHANGE_ONLY,
+        /** The thread locals are never cleaned up. */
+        NEVER
+    };
+
     /**
      * Return the minimum pool size.
      * @return The minimum pool size.
@@ -110,4 +162,123 @@ public interface ThreadPoolConfig {
      * @return <code>true</code> if daemon threads should be created.
      */
     boolean isDaemon();
-}
\ No newline at end of file
+
+    /**
+     * Return the mode for cleaning up thread locals.
+     * @return The thread local cleanup mode.
+     * @since 3.5.0
+     */
+    ThreadLocalCleanupMode getThreadLocalCleanupMode();
+
+    /**
+     * Return the number of tasks after which the thread locals of a thread are
+     * cleaned up in mode {@link ThreadLocalCleanupMode#EVERY_N_TASKS}.
+     * @return The thread local cleanup interval.
+     * @since 3.5.0
+     */
+    int getThreadLocalCleanupInterval();
+
+    /**
+     * Return the thread locals which are not removed by the cleanup, e.g. intentional per thread caches.
+     * Each entry is either a fully qualified class name or a package name followed by {@code .*}.
+     * Such an entry is matched against the class of the thread local, the class declaring the supplier of a
+     * thread local created with {@link ThreadLocal#withInitial(java.util.function.Supplier)} and the
+     * class of the value.
+     * @return The thread local allowlist, never <code>null</code>.
+     * @since 3.5.0
+     */
+    String[] getThreadLocalAllowlist();
+
+    /**
+     * Return if statistics about the thread locals changed by the tasks of the pool are collected.
+     * @return <code>true</code> if thread local statistics are collected.
+     * @since 3.5.0
+     */
+    boolean isThreadLocalStatistics();
+
+    /**
+     * Return the type of executor backing the pool.
+     * @return The executor type.
+     * @since 3.5.0
+     */
+    ExecutorType getExecutorType();
+
+    /**
+     * Return the implementation of the work queue if the queue size is greater than 0.
+     * @return The queue type.
+     * @since 3.5.0
+     */
+    QueueType getQueueType();
+
+    /**
+     * Return if the pool starts new threads up to the max pool size before it queues tasks.
+     * By default threads above the min pool size are only started once the queue is full.
+     * @return <code>true</code> if threads are started before tasks are queued.
+     * @since 3.5.0
+     */
+    boolean isEagerThreadGrowth();
+
+    /**
+     * Return if the core pool size is adjusted to the load, between the min and the max pool size.
+     * The load is sampled periodically from the throughput, utilization and queue of the pool.
+     * Only supported by the executor type {@link ExecutorType#THREAD_POOL}.
+     * @return <code>true</code> if the core pool size is adjusted to the load.
+     * @since 3.5.0
+     */
+    boolean isAutoScaling();
+
+    /**
+     * Return the ceiling up to which auto scaling may raise the max pool size, if the load needs
+     * more threads than the max pool size. The max pool size is restored once the load drops again.
+     * @return The ceiling of the max pool size, -1 or any value not above the max pool size to never raise it.
+     * @since 3.5.0
+     */
+    int getAutoScalingMaxPoolSize();
+
+    /**
+     * Return the time an unused pool is kept before it is shut down.
+     * If the pool is requested again within this time, it is reused together with its threads.
+     * @return The linger time in milliseconds, 0 or less to shut down an unused pool at once.
+     * @since 3.5.0
+     */
+    long getLingerTime();
+
+    /**
+     * Return the time without tasks after which the pool releases all its threads, including the core threads.
+     * The pool starts threads up to the core pool size again with the next tasks.
+     * Only supported by the executor type {@link ExecutorType#THREAD_POOL}.
+     * @return The hibernation time in milliseconds, 0 or less to keep the core threads.
+     * @since 3.5.0
+     */
+    long getHibernationTime();
+
+    /**
+     * Return if all core threads are started at once instead of one by one with the next tasks.
+     * The threads are started when the pool is created, also when it is replaced after a configuration
+     * change, and when it wakes up from hibernation. Only supported by the executor types
+     * {@link ExecutorType#THREAD_POOL} and {@link ExecutorType#SCHEDULED}.
+     * @return <code>true</code> if the core threads are prestarted.
+     * @see #getHibernationTime()
+     * @since 3.5.0
+     */
+    boolean isPrestartCoreThreads();
+
+    /**
+     * Return if a warm-up task is run for each core thread after the core threads have been prestarted,
+     * so the thread local cleanup and the classes used by the tasks are initialized before the first task.
+     * @return <code>true</code> if the prestarted threads are warmed up.
+     * @see #isPrestartCoreThreads()
+     * @see #getWarmUpTask()
+     * @since 3.5.0
+     */
+    boolean isWarmUpThreads();
+
+    /**
+     * Return the task warming up the prestarted threads. A value of null means an empty task
+     * is used, which is still subject to the thread local cleanup.
+     * @return The warm-up task or <code>null</code>
+     * @see #isWarmUpThreads()
+     * @since 3.5.0
+     */
+    Runnable getWarmUpTask();
+}
@@ -61,9 +61,56 @@ public interface ThreadPoolManager {
      */
     ThreadPool create(ThreadPoolConfig config, String label);
 
+    /**
+     * Get a scheduled thread pool.
+     * If there is no thread pool with the given name, a new scheduled thread pool
+     * with the default configuration is created and returned.
+     * A thread pool must be released when not used anymore with the
+     * {@link #release(ThreadPool)} method.
+     * @param name The name of the thread pool.
+     * @return A scheduled thread pool.
+     * @throws IllegalStateException If a thread pool with the given name exists
+     *         which is not a scheduled thread pool.
+     * @since 3.5.0
+     */
+    ScheduledThreadPool getScheduled(String name);
+
+    /**
+     * Create a new scheduled thread pool with this configuration.
+     * The max pool size of the configuration is the number of threads of the pool,
+     * the executor type, queue size and keep alive time are ignored.
+     * A thread pool must be released when not used anymore with the
+     * {@link #release(ThreadPool)} method.
+     * @param config The thread pool configuration.
+     * @param label  An optional label for the thread pool. The label
+     *               will be appended to the name of the pool.
+     * @return A new scheduled thread pool.
+     * @since 3.5.0
+     */
+    ScheduledThreadPool createScheduled(ThreadPoolConfig config, String label);
+
+    /**
+     * Get a timer executing the expired tasks with the thread pool with the given name,
+     * the thread pool is obtained like with {@link #get(String)}.
+     * A timer must be released when not used anymore with the
+     * {@link #release(Timer)} method.
+     * @param name The name of the thread pool or null for the default pool.
+     * @return A timer.
+     * @since 3.5.0
+     */
+    Timer getTimer(String name);
+
     /**
      * Release the thread pool again.
      * @param pool The thread pool to release
      */
     void release(ThreadPool pool);
+
+    /**
+     * Release the timer and its thread pool again.
+     * The pending tasks of the timer are not executed anymore.
+     * @param timer The timer to release
+     * @since 3.5.0
+     */
+    void release(Timer timer);
 }
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads;
+
+import java.util.concurrent.TimeUnit;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * A timer for a large number of timeouts and delayed actions which are usually
+ * cancelled before they expire, like the timeout guards of submitted tasks.
+ * <p>
+ * Scheduling and cancelling a task takes constant time, but a task expires only
+ * with the precision of the timer tick. Expired tasks are executed by the
+ * thread pool the timer has been obtained for with
+ * {@link ThreadPoolManager#getTimer(String)}. All timers share a single
+ * timer thread. A timer must be released with {@link ThreadPoolManager#release(Timer)}
+ * when not used anymore, pending tasks are not executed afterwards.
+ * <p>
+ * For exact or periodic scheduling, use a {@link ScheduledThreadPool}.
+ * @since 3.5.0
+ */
+@ProviderType
+public interface Timer {
+
+    /**
+     * Schedules a task to be executed by the thread pool of this timer after the given delay.
+     * @param task The {@link Runnable} to execute
+     * @param delay The delay
+     * @param unit The unit of the delay
+     * @return The timeout which can be used to cancel the task
+     * @throws IllegalStateException If the timer has been released
+     * @throws java.util.concurrent.RejectedExecutionException If the timer has been stopped
+     */
+    Timeout schedule(Runnable task, long delay, TimeUnit unit);
+
+    /**
+     * A task scheduled with a {@link Timer}.
+     */
+    @ProviderType
+    interface Timeout {
+
+        /**
+         * Cancels the task if it has not expired yet.
+         * @return {@code true} if the task has been cancelled by this call
+         */
+        boolean cancel();
+
+        /**
+         * @return {@code true} if the task has been cancelled
+         */
+        boolean isCancelled();
+
+        /**
+         * @return {@code true} if the task has expired and has been handed over to the thread pool
+         */
+        boolean isExpired();
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import java.util.Locale;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adjusts the core pool size of a {@link ThreadPoolExecutor} to its load.
+ * <p>
+ * The executor is sampled periodically. The throughput is the number of tasks completed since the last
+ * sample, the number of busy threads is smoothed over the samples. By Little's law the mean service time
+ * of a task is the number of busy threads divided by the throughput, so the number of threads needed
+ * for the current throughput plus draining the queue within one interval is
+ * {@code (throughput + queued / interval) * serviceTime}, which is divided by the target utilization
+ * to keep some threads in reserve. If no task has completed while tasks are queued, the threads are
+ * blocked by long running tasks and the core pool size is increased step by step instead.
+ * <p>
+ * The core pool size is raised at once, at most doubling it per sample, but only lowered by a quarter
+ * after the estimate has been lower for {@link #SHRINK_AFTER_SAMPLES} samples in a row, so short
+ * gaps in the load don't discard threads. The surplus threads terminate once they have been idle
+ * for the keep alive time. The maximum pool size still bounds the threads started by the executor if
+ * a bounded queue is full. It is only raised together with the core pool size if the estimate exceeds
+ * it, up to the configured ceiling, and lowered again with the core pool size until it is back at the
+ * configured maximum pool size, so a pool with equal min and max pool size can scale up as well.
+ * <p>
+ * The samples are taken on the thread of the {@link HashedWheelTimer}, as they are short and must not
+ * wait for a thread of the pool they measure. The executor is obtained from a supplier for each sample,
+ * so it may be replaced between samples.
+ */
+final class AutoScalingController implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AutoScalingController.class);
+
+    /** The interval between two samples in milliseconds. */
+    static final long DEFAULT_INTERVAL = 1000;
+
+    /** The share of busy threads aimed for. */
+    private static final double TARGET_UTILIZATION = 0.75;
+
+    /** The weight of a new sample of the busy threads. */
+    private static final double SMOOTHING = 0.5;
+
+    /** The number of samples in a row with a lower estimate before the core pool size is lowered. */
+    static final int SHRINK_AFTER_SAMPLES = 3;
+
+    private final String name;
+
+    private final Supplier<ThreadPoolExecutor> executorSupplier;
+
+    private volatile int minPoolSize;
+
+    private volatile int maxPoolSize;
+
+    private volatile int maxPoolSizeCeiling;
+
+    // the sampling state, only accessed by the sampling thread
+    private ThreadPoolExecutor lastExecutor;
+
+    private long lastCompletedTaskCount;
+
+    private long lastSampleNanos;
+
+    private double busyThreads;
+
+    private int samplesBelowCorePoolSize;
+
+    // the last sample and decision
+    private volatile double throughput;
+
+    private volatile double utilization;
+
+    private volatile long queueWaitTime;
+
+    private volatile int targetPoolSize = -1;
+
+    private final AtomicLong decisionCount = new AtomicLong();
+
+    private volatile String lastDecision;
+
+    // the schedule
+    private HashedWheelTimer timer;
+
+    private long intervalMillis;
+
+    private volatile HashedWheelTimer.WheelTimeout timeout;
+
+    private volatile boolean stopped;
+
+    /**
+     * @param name the name of the pool
+     * @param executorSupplier supplies the current executor of the pool, possibly {@code null}
+     * @param minPoolSize the lower bound of the core pool size
+     * @param maxPoolSize the configured maximum pool size
+     * @param maxPoolSizeCeiling the upper bound of the core and maximum pool size, not above the maximum pool size
+     *        to never raise it
+     */
+    AutoScalingController(final String name, final Supplier<ThreadPoolExecutor> executorSupplier,
+            final int minPoolSize, final int maxPoolSize, final int maxPoolSizeCeiling) {
+        this.name = name;
+        this.executorSupplier = executorSupplier;
+        this.setBounds(minPoolSize, maxPoolSize, maxPoolSizeCeiling);
+    }
+
+    /**
+     * @param minPoolSize the lower bound of the core pool size
+     * @param maxPoolSize the configured maximum pool size
+     * @param maxPoolSizeCeiling the upper bound of the core and maximum pool size, not above the maximum pool size
+     *        to never raise it
+     */
+    void setBounds(final int minPoolSize, final int maxPoolSize, final int maxPoolSizeCeiling) {
+        this.minPoolSize = Math.max(1, minPoolSize);
+        this.maxPoolSize = maxPoolSize < 0 ? Integer.MAX_VALUE : Math.max(this.minPoolSize, maxPoolSize);
+        this.maxPoolSizeCeiling = Math.max(this.maxPoolSize, maxPoolSizeCeiling);
+    }
+
+    /**
+     * Starts sampling the executor.
+     * @param timer the timer scheduling the samples
+     * @param interval the interval between two samples in milliseconds
+     */
+    synchronized void start(final HashedWheelTimer timer, final long interval) {
+        this.timer = timer;
+        this.intervalMillis = interval;
+        this.stopped = false;
+        this.schedule();
+    }
+
+    /**
+     * Stops sampling the executor, the core pool size is left as it is.
+     */
+    synchronized void stop() {
+        this.stopped = true;
+        final HashedWheelTimer.WheelTimeout current = this.timeout;
+        if ( current != null ) {
+            current.cancel();
+            this.timeout = null;
+        }
+    }
+
+    private void schedule() {
+        // the sample is short, so it runs directly on the timer thread
+        this.timeout = this.timer.newTimeout(this, Runnable::run, this.intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void run() {
+        try {
+            this.sample();
+        } catch (final RuntimeException e) {
+            LOGGER.warn("Unable to sample thread pool [{}]", this.name, e);
+        }
+        synchronized ( this ) {
+            if ( !this.stopped ) {
+                try {
+                    this.schedule();
+                } catch (final RuntimeException e) {
+                    // the timer has been stopped
+                    LOGGER.debug("Stopped auto scaling of thread pool [{}]", this.name, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes a sample of the executor and adjusts its core pool size if needed.
+     */
+    void sample() {
+        final ThreadPoolExecutor executor = this.executorSupplier.get();
+        if ( executor == null || executor.isShutdown() || executor instanceof ScheduledThreadPoolExecutor ) {
+            this.lastExecutor = null;
+            return;
+        }
+        final long now = System.nanoTime();
+        final long completedTaskCount = executor.getCompletedTaskCount();
+        final int active = executor.getActiveCount();
+        if ( executor != this.lastExecutor ) {
+            // first sample of this executor
+            this.lastExecutor = executor;
+            this.lastCompletedTaskCount = completedTaskCount;
+            this.lastSampleNanos = now;
+            this.busyThreads = active;
+            this.samplesBelowCorePoolSize = 0;
+            return;
+        }
+        final double seconds = Math.max(1, now - this.lastSampleNanos) / 1e9;
+        final double completed = completedTaskCount - this.lastCompletedTaskCount;
+        this.lastCompletedTaskCount = completedTaskCount;
+        this.lastSampleNanos = now;
+
+        final int queued = executor.getQueue().size();
+        final int poolSize = executor.getPoolSize();
+        final int corePoolSize = executor.getCorePoolSize();
+        final int maximumPoolSize = executor.getMaximumPoolSize();
+        this.busyThreads = SMOOTHING * active + (1 - SMOOTHING) * this.busyThreads;
+        final double currentThroughput = completed / seconds;
+        this.throughput = currentThroughput;
+        this.utilization = poolSize == 0 ? 0 : Math.min(1, this.busyThreads / poolSize);
+
+        int target;
+        if ( currentThroughput > 0 ) {
+            // Little's law: busy threads = throughput * service time
+            final double serviceTime = this.busyThreads / currentThroughput;
+            this.queueWaitTime = (long) (queued / currentThroughput * 1000);
+            target = (int) Math.ceil((currentThroughput + queued / seconds) * serviceTime / TARGET_UTILIZATION);
+        } else if ( queued > 0 ) {
+            // no task completed, so all threads are busy with long running tasks
+            this.queueWaitTime = (long) (seconds * 1000);
+            target = corePoolSize + Math.max(1, corePoolSize / 2);
+        } else {
+            this.queueWaitTime = 0;
+            target = (int) Math.ceil(this.busyThreads / TARGET_UTILIZATION);
+        }
+        // grow at most to the double per sample
+        target = Math.min(target, Math.max(corePoolSize * 2, corePoolSize + 1));
+        target = Math.max(this.minPoolSize, Math.min(this.maxPoolSizeCeiling, target));
+
+        if ( target < corePoolSize ) {
+            if ( ++this.samplesBelowCorePoolSize < SHRINK_AFTER_SAMPLES ) {
+                target = corePoolSize;
+            } else {
+                // shrink by a quarter at most
+                target = Math.max(target, corePoolSize - Math.max(1, corePoolSize / 4));
+                this.samplesBelowCorePoolSize = 0;
+            }
+        } else {
+            this.samplesBelowCorePoolSize = 0;
+        }
+        this.targetPoolSize = target;
+
+        if ( target != corePoolSize ) {
+            // the core pool size must never exceed the maximum pool size, which is restored when lowering
+            final int targetMaximumPoolSize;
+            if ( target > maximumPoolSize ) {
+                targetMaximumPoolSize = target;
+                executor.setMaximumPoolSize(targetMaximumPoolSize);
+                executor.setCorePoolSize(target);
+            } else {
+                targetMaximumPoolSize = Math.min(maximumPoolSize, Math.max(this.maxPoolSize, target));
+                executor.setCorePoolSize(target);
+                if ( targetMaximumPoolSize != maximumPoolSize ) {
+                    executor.setMaximumPoolSize(targetMaximumPoolSize);
+                }
+            }
+            final String decision = String.format(Locale.ROOT,
+                    "%s core pool size from %d to %d, max pool size %d: throughput %.1f/s, utilization %.2f, "
+                    + "queued %d, queue wait %d ms",
+                    target > corePoolSize ? "Raised" : "Lowered", corePoolSize, target, targetMaximumPoolSize,
+                    currentThroughput, this.utilization, queued, this.queueWaitTime);
+            this.lastDecision = decision;
+            this.decisionCount.incrementAndGet();
+            LOGGER.debug("Thread pool [{}] : {}", this.name, decision);
+        }
+    }
+
+    /**
+     * @return the number of tasks completed per second in the last sample
+     */
+    double getThroughput() {
+        return this.throughput;
+    }
+
+    /**
+     * @return the smoothed share of busy threads of the pool in the last sample
+     */
+    double getUtilization() {
+        return this.utilization;
+    }
+
+    /**
+     * @return the estimated time a queued task waits in milliseconds in the last sample
+     */
+    long getQueueWaitTime() {
+        return this.queueWaitTime;
+    }
+
+    /**
+     * @return the core pool size determined by the last sample, -1 before the first sample
+     */
+    int getTargetPoolSize() {
+        return this.targetPoolSize;
+    }
+
+    /**
+     * @return the number of times the core pool size has been changed
+     */
+    long getDecisionCount() {
+        return this.decisionCount.get();
+    }
+
+    /**
+     * @return the last change of the core pool size, {@code null} if it has not been changed yet
+     */
+    String getLastDecision() {
+        return this.lastDecision;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link ThreadLocalChangeListener} which is notified once per task about all thread-local values
+ * which have been added or removed, instead of once per value.
+ */
+public interface BatchThreadLocalChangeListener extends ThreadLocalChangeListener {
+
+    /**
+     * Invoked when the cleaner detects that thread-local values were added or removed
+     * after an execution has completed
+     *
+     * @param thread the thread
+     * @param changes the changes, never empty
+     */
+    void changed(Thread thread, List<Change> changes);
+
+    /**
+     * Reports a single change as a batch.
+     */
+    @Override
+    default void changed(Mode mode, Thread thread, ThreadLocal<?> threadLocal, Object value) {
+        changed(thread, Collections.singletonList(new Change(mode, threadLocal, value)));
+    }
+
+    /**
+     * A single change of a thread-local value.
+     */
+    final class Change {
+
+        private final Mode mode;
+        private final ThreadLocal<?> threadLocal;
+        private final Object value;
+
+        public Change(Mode mode, ThreadLocal<?> threadLocal, Object value) {
+            this.mode = mode;
+            this.threadLocal = threadLocal;
+            this.value = value;
+        }
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        /** @return the thread local, possibly null */
+        public ThreadLocal<?> getThreadLocal() {
+            return threadLocal;
+        }
+
+        /** @return the value, possibly null */
+        public Object getValue() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return mode + " " + (threadLocal != null ? threadLocal.getClass().getName() : "<null>") + " with value " + value;
+        }
+    }
+}
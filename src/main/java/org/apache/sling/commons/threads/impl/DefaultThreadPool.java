@@ -16,22 +16,42 @@
  */
 package org.apache.sling.commons.threads.impl;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import org.apache.sling.commons.threads.ModifiableThreadPoolConfig;
 import org.apache.sling.commons.threads.ThreadPool;
 import org.apache.sling.commons.threads.ThreadPoolConfig;
+import org.apache.sling.commons.threads.ThreadPoolConfig.ExecutorType;
+import org.apache.sling.commons.threads.ThreadPoolConfig.ThreadLocalCleanupMode;
 import org.apache.sling.commons.threads.ThreadPoolManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,13 +70,64 @@ public class DefaultThreadPool
     /** The name of this thread pool */
     protected final String name;
 
-    /** The executor. */
-    protected ThreadPoolExecutor executor;
+    /** The executor, created with the first task. */
+    protected volatile ExecutorService executor;
 
-    protected final ModifiableThreadPoolConfig configuration;
+    /** Whether the pool has been shut down, guarded by the creation lock. */
+    private boolean shutdown;
+
+    /** The queue of the executor whose tasks can be handed over to a successor, null if there is none. */
+    private volatile HandOverQueue handOverQueue;
+
+    /** The pool replacing this pool, which gets the tasks passed to this pool once it is shut down, null if there is none. */
+    private volatile DefaultThreadPool successor;
+
+    /** The thread factory warming up the prestarted core threads of the executor, null if they are not warmed up. */
+    private volatile WarmUpThreadFactory warmUpThreadFactory;
+
+    /** The lock for creating the executor. */
+    private final Object creationLock = new Object();
+
+    /** The configuration, replaced as a whole on reconfiguration and never changed once published. */
+    protected volatile ModifiableThreadPoolConfig configuration;
+
+    /** The maximum parallelism of a fork join pool. */
+    private static final int MAX_FORK_JOIN_PARALLELISM = 0x7fff;
+
+    /** The thread local statistics, null if not enabled. */
+    private final ThreadLocalStatistics threadLocalStatistics;
+
+    /** The keep alive time of the threads of a hibernating pool in milliseconds. */
+    private static final long HIBERNATION_KEEP_ALIVE_TIME = 1;
+
+    /** The lock for hibernating and waking up. */
+    private final Object hibernationLock = new Object();
+
+    /** Whether the executor releases all its threads, changed with the hibernation lock held. */
+    private volatile boolean hibernating;
+
+    /** The number of times the pool hibernated, changed with the hibernation lock held. */
+    private volatile long hibernationCount;
+
+    /** The number of times the pool woke up, changed with the hibernation lock held. */
+    private volatile long wakeUpCount;
+
+    /** The time a task has last been passed to the pool, only recorded if the pool may hibernate. */
+    private volatile long lastSubmitNanos = System.nanoTime();
+
+    /** The resolution of the time a task has last been passed to the pool, so it isn't written for each task. */
+    private static final long SUBMIT_TIME_RESOLUTION = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /** The time in milliseconds to wait for room in the queue of the successor before checking whether it is shut down. */
+    private static final long HAND_OVER_WAIT_TIME = 100;
+
+    /** Starts a thread of an executor without core threads, which only starts threads for tasks passed to it. */
+    private static final Runnable NOOP = () -> {};
 
     /**
      * Create a new thread pool.
+     * The executor is only created when the first task is passed to the pool,
+     * unless the core threads are prestarted.
      * @param name - The name of the thread pool. If null {@link DefaultThreadPoolManager#DEFAULT_THREADPOOL_NAME}
      *               is used
      */
@@ -72,7 +143,35 @@ public class DefaultThreadPool
         this.logger.info("Initializing thread pool [{}]  ...", this.name);
 
         this.configuration = new ModifiableThreadPoolConfig(origConfig);
+        this.checkPoolSizes(this.configuration);
 
+        final ExecutorType executorType = this.configuration.getExecutorType();
+        if ( (executorType == ExecutorType.VIRTUAL_THREADS && VirtualThreads.isSupported())
+                || executorType == ExecutorType.FORK_JOIN ) {
+            // virtual threads: each task gets a fresh thread, therefore there are no thread locals to clean up
+            // fork join: subtasks are forked and joined by the worker threads without passing this pool,
+            // and a worker may run other tasks while joining, so thread locals can't be cleaned up
+            this.threadLocalStatistics = null;
+        } else {
+            this.checkKeepAliveTime(this.configuration);
+            if ( this.configuration.getQueueSize() < 0 ) {
+                this.checkUnboundedQueue(this.configuration);
+            }
+            this.threadLocalStatistics = this.configuration.isThreadLocalStatistics()
+                    && this.configuration.getThreadLocalCleanupMode() != ThreadLocalCleanupMode.NEVER
+                    ? new ThreadLocalStatistics() : null;
+            if ( this.configuration.isPrestartCoreThreads() ) {
+                // the threads are started with the executor
+                this.getExecutorService();
+            }
+        }
+    }
+
+    /**
+     * Creates the executor according to the configuration.
+     * Note: this method must be called with the creation lock held.
+     */
+    private ExecutorService createExecutor() {
         // factory
         final ThreadFactory delegateThreadFactory;
         if (this.configuration.getFactory() == null) {
@@ -82,89 +181,332 @@ public class DefaultThreadPool
         } else {
             delegateThreadFactory = this.configuration.getFactory();
         }
-        // Min pool size
-        if (this.configuration.getMinPoolSize() < 0) {
-            this.configuration.setMinPoolSize(1);
-            this.logger.warn("min-pool-size < 0 for pool \"" + this.name + "\". Set to 1");
-        }
-        // Max pool size
-        if ( this.configuration.getMaxPoolSize() < 0 ) {
-            this.configuration.setMaxPoolSize(Integer.MAX_VALUE);
+
+        if (this.configuration.getExecutorType() == ExecutorType.VIRTUAL_THREADS) {
+            if (VirtualThreads.isSupported()) {
+                final ExecutorService virtualExecutor = new ThreadPerTaskExecutor(
+                        VirtualThreads.factory(ExtendedThreadFactory.getThreadNamePrefix(this.name)),
+                        this.configuration.getMaxPoolSize(),
+                        this.configuration.getQueueSize(),
+                        this.configuration.getBlockPolicy());
+                this.logger.info("Thread pool [{}] initialized with virtual threads.", name);
+                return virtualExecutor;
+            }
+            this.logger.warn("Virtual threads are not supported by this JRE, thread pool [{}] uses platform threads.", name);
         }
 
         // Set priority and daemon flag
-        final ExtendedThreadFactory threadFactory = new ExtendedThreadFactory(
+        final ExtendedThreadFactory extendedThreadFactory = new ExtendedThreadFactory(
                 delegateThreadFactory,
                 this.name,
                 this.configuration.getPriority(),
                 this.configuration.isDaemon()
         );
 
-        // Keep alive time
-        if (this.configuration.getKeepAliveTime() < 0) {
-            this.configuration.setKeepAliveTime(1000);
-            this.logger.warn("keep-alive-time-ms < 0 for pool \"" + this.name + "\". Set to 1000");
+        if (this.configuration.getExecutorType() == ExecutorType.FORK_JOIN) {
+            final int parallelism = this.configuration.getMaxPoolSize() == Integer.MAX_VALUE
+                    ? Runtime.getRuntime().availableProcessors()
+                    : Math.max(1, Math.min(this.configuration.getMaxPoolSize(), MAX_FORK_JOIN_PARALLELISM));
+            final ExecutorService forkJoinPool = new ForkJoinPool(parallelism, extendedThreadFactory.asForkJoinWorkerThreadFactory(), null, false);
+            this.logger.info("Thread pool [{}] initialized as fork join pool with parallelism {}.", name, parallelism);
+            return forkJoinPool;
+        }
+
+        ThreadFactory threadFactory = extendedThreadFactory;
+        if (this.configuration.isPrestartCoreThreads() && this.configuration.isWarmUpThreads()) {
+            // the prestarted threads run the warm-up task before they take tasks from the queue
+            final WarmUpThreadFactory warmUpFactory = new WarmUpThreadFactory(extendedThreadFactory,
+                    this.name, this.configuration.getWarmUpTask());
+            this.warmUpThreadFactory = warmUpFactory;
+            threadFactory = warmUpFactory;
         }
 
+        // threads are only started before tasks are queued by the thread pool executor
+        final boolean eagerThreadGrowth = isEagerThreadGrowth(this.configuration);
+
         // Queue
-        final BlockingQueue<Runnable> queue;
+        BlockingQueue<Runnable> queue;
         if (this.configuration.getQueueSize() != 0) {
             if (this.configuration.getQueueSize() > 0) {
-                queue = new java.util.concurrent.ArrayBlockingQueue<Runnable>(this.configuration.getQueueSize());
-            } else {
-                // SLING-7407 : queue size is -1 (or negative) == unbounded
-                // in this case the max pool size wouldn't have any effect, since the
-                // pool is only increased (ie threads only created) when the queue is blocked
-                // but with an unbounded queue that never happens, thus you'd always get only
-                // maximum min queue size threads.
-                // To fix this somewhat odd behaviour, we now automatically set the min to max for this case:
-                if (this.configuration.getMinPoolSize() < this.configuration.getMaxPoolSize()) {
-                    this.logger.info("min-pool-size (" + configuration.getMinPoolSize() + 
-                            ") < max-pool-size (" + configuration.getMaxPoolSize() + ") for pool \"" + this.name + 
-                            "\" which has unbounded queue (queue size -1). Set to " + configuration.getMaxPoolSize());
-                    this.configuration.setMinPoolSize(configuration.getMaxPoolSize());
+                switch (this.configuration.getQueueType()) {
+                    case LINKED :
+                        queue = new LinkedBlockingQueue<Runnable>(this.configuration.getQueueSize());
+                        break;
+                    case RING_BUFFER :
+                        queue = new MpmcArrayBlockingQueue<Runnable>(this.configuration.getQueueSize());
+                        break;
+                    default :
+                        queue = new java.util.concurrent.ArrayBlockingQueue<Runnable>(this.configuration.getQueueSize());
                 }
+            } else {
                 queue = new LinkedBlockingQueue<Runnable>();
             }
+            // the queued tasks can be handed over to the successor of this pool
+            final HandOverQueue handOver = new HandOverQueue(queue);
+            this.handOverQueue = handOver;
+            queue = handOver;
         } else {
             queue = new SynchronousQueue<Runnable>();
         }
 
-        RejectedExecutionHandler handler = null;
-        switch (this.configuration.getBlockPolicy()) {
-            case ABORT :
-                handler = new ThreadPoolExecutor.AbortPolicy();
-                break;
-            case DISCARD :
-                handler = new ThreadPoolExecutor.DiscardPolicy();
-                break;
-            case DISCARDOLDEST :
-                handler = new ThreadPoolExecutor.DiscardOldestPolicy();
-                break;
-            case RUN :
-                handler = new ThreadPoolExecutor.CallerRunsPolicy();
-                break;
+        RejectedExecutionHandler handler = createRejectedExecutionHandler(this.configuration);
+        if (this.configuration.getExecutorType() != ExecutorType.SCHEDULED) {
+            // a scheduled task rejected by a shut down executor must not be run at once by the successor
+            handler = this.forwardToSuccessor(handler);
         }
-        try {
-            this.executor = new ThreadPoolExecutorCleaningThreadLocals(this.configuration.getMinPoolSize(),
-                    this.configuration.getMaxPoolSize(),
-                    this.configuration.getKeepAliveTime(),
-                    TimeUnit.MILLISECONDS,
-                    queue,
-                    threadFactory,
-                    handler,
-                    new LoggingThreadLocalChangeListener());
-        } catch (RuntimeException | Error e) {
-            logThreadPoolExecutorCleaningThreadLocalsException(e);
-            this.executor = new ThreadPoolExecutor(this.configuration.getMinPoolSize(),
+        ThreadFactory workerThreadFactory = threadFactory;
+        EagerThreadGrowthQueue eagerQueue = null;
+        if (eagerThreadGrowth) {
+            eagerQueue = new EagerThreadGrowthQueue(queue);
+            queue = eagerQueue;
+            workerThreadFactory = eagerQueue.wrap(threadFactory);
+            handler = eagerQueue.wrap(handler);
+        }
+        ThreadPoolExecutor threadPoolExecutor;
+        if (this.configuration.getExecutorType() == ExecutorType.SCHEDULED) {
+            threadPoolExecutor = createScheduledExecutor(threadFactory, handler);
+        } else if (this.configuration.getThreadLocalCleanupMode() == ThreadLocalCleanupMode.NEVER) {
+            this.logger.debug("Thread pool [{}] ; Thread locals are not cleaned up", name);
+            threadPoolExecutor = new ThreadPoolExecutor(this.configuration.getMinPoolSize(),
                     this.configuration.getMaxPoolSize(),
                     this.configuration.getKeepAliveTime(),
                     TimeUnit.MILLISECONDS,
                     queue,
-                    threadFactory,
+                    workerThreadFactory,
                     handler);
+        } else {
+            try {
+                threadPoolExecutor = new ThreadPoolExecutorCleaningThreadLocals(this.configuration.getMinPoolSize(),
+                        this.configuration.getMaxPoolSize(),
+                        this.configuration.getKeepAliveTime(),
+                        TimeUnit.MILLISECONDS,
+                        queue,
+                        workerThreadFactory,
+                        handler,
+                        new LoggingThreadLocalChangeListener(this.threadLocalStatistics),
+                        this.configuration.getThreadLocalCleanupMode(),
+                        this.configuration.getThreadLocalCleanupInterval(),
+                        new ThreadLocalAllowlist(this.configuration.getThreadLocalAllowlist()));
+            } catch (RuntimeException | Error e) {
+                logThreadPoolExecutorCleaningThreadLocalsException(e);
+                threadPoolExecutor = new ThreadPoolExecutor(this.configuration.getMinPoolSize(),
+                        this.configuration.getMaxPoolSize(),
+                        this.configuration.getKeepAliveTime(),
+                        TimeUnit.MILLISECONDS,
+                        queue,
+                        workerThreadFactory,
+                        handler);
+            }
+        }
+        if (eagerQueue != null) {
+            eagerQueue.setExecutor(threadPoolExecutor);
         }
         this.logger.info("Thread pool [{}] initialized.", name);
+        return threadPoolExecutor;
+    }
+
+    private void checkPoolSizes(final ModifiableThreadPoolConfig config) {
+        // Min pool size
+        if (config.getMinPoolSize() < 0) {
+            config.setMinPoolSize(1);
+            this.logger.warn("min-pool-size < 0 for pool \"" + this.name + "\". Set to 1");
+        }
+        // Max pool size
+        if ( config.getMaxPoolSize() < 0 ) {
+            config.setMaxPoolSize(Integer.MAX_VALUE);
+        }
+    }
+
+    private void checkKeepAliveTime(final ModifiableThreadPoolConfig config) {
+        if (config.getKeepAliveTime() < 0) {
+            config.setKeepAliveTime(1000);
+            this.logger.warn("keep-alive-time-ms < 0 for pool \"" + this.name + "\". Set to 1000");
+        }
+    }
+
+    private void checkUnboundedQueue(final ModifiableThreadPoolConfig config) {
+        // SLING-7407 : queue size is -1 (or negative) == unbounded
+        // in this case the max pool size wouldn't have any effect, since the
+        // pool is only increased (ie threads only created) when the queue is blocked
+        // but with an unbounded queue that never happens, thus you'd always get only
+        // maximum min queue size threads.
+        // To fix this somewhat odd behaviour, we now automatically set the min to max for this case,
+        // unless threads are started before tasks are queued:
+        if (!isEagerThreadGrowth(config) && config.getMinPoolSize() < config.getMaxPoolSize()) {
+            this.logger.info("min-pool-size (" + config.getMinPoolSize() + 
+                    ") < max-pool-size (" + config.getMaxPoolSize() + ") for pool \"" + this.name + 
+                    "\" which has unbounded queue (queue size -1). Set to " + config.getMaxPoolSize());
+            config.setMinPoolSize(config.getMaxPoolSize());
+        }
+    }
+
+    private static boolean isEagerThreadGrowth(final ThreadPoolConfig config) {
+        return config.isEagerThreadGrowth()
+                && config.getQueueSize() != 0
+                && config.getExecutorType() != ExecutorType.SCHEDULED;
+    }
+
+    private static RejectedExecutionHandler createRejectedExecutionHandler(final ThreadPoolConfig config) {
+        switch (config.getBlockPolicy()) {
+            case ABORT :
+                return new ThreadPoolExecutor.AbortPolicy();
+            // like the policies of the thread pool executor, but reporting the discarded tasks
+            case DISCARD :
+                return (task, executor) -> discarded(task);
+            case DISCARDOLDEST :
+                return (task, executor) -> {
+                    if ( executor.isShutdown() ) {
+                        discarded(task);
+                    } else {
+                        discarded(executor.getQueue().poll());
+                        executor.execute(task);
+                    }
+                };
+            default :
+                return (task, executor) -> {
+                    if ( executor.isShutdown() ) {
+                        discarded(task);
+                    } else {
+                        task.run();
+                    }
+                };
+        }
+    }
+
+    /**
+     * @param handler the rejection handler applying the block policy
+     * @return a rejection handler which passes the tasks rejected by the shut down executor on to the successor
+     *         of this pool, as they have been passed to this pool while it was replaced, and only applies the block
+     *         policy if there is no successor or the executor is running
+     */
+    private RejectedExecutionHandler forwardToSuccessor(final RejectedExecutionHandler handler) {
+        return (task, executor) -> {
+            final DefaultThreadPool next = this.successor;
+            if ( next != null && executor.isShutdown() ) {
+                next.forward(task);
+            } else {
+                handler.rejectedExecution(task, executor);
+            }
+        };
+    }
+
+    /**
+     * Runs a task passed to the pool this pool replaces.
+     */
+    private void forward(final Runnable task) {
+        final ExecutorService executor = this.checkExecutor();
+        if ( task instanceof BatchRunner ) {
+            // cleans up the thread locals with the executor now running it
+            ((BatchRunner) task).setExecutor(executor);
+        }
+        executor.execute(task);
+    }
+
+    /**
+     * Called for a task which is dropped by the block policy and never runs.
+     * If the last runner of a batch is dropped, the remaining tasks of the batch are cancelled,
+     * as nobody would run them otherwise.
+     * @param task the dropped task, might be {@code null}
+     */
+    static void discarded(final Runnable task) {
+        if ( task instanceof BatchRunner ) {
+            ((BatchRunner) task).discard();
+        } else if ( task instanceof BatchTask ) {
+            ((BatchTask<?>) task).cancel(false);
+        }
+    }
+
+    /**
+     * Applies a changed configuration to the running executor without replacing it, so the
+     * threads are kept and running and queued tasks are not affected.
+     * <p>
+     * Only the pool sizes, the keep alive time, the block policy, the shutdown, the hibernation and
+     * the prestart settings can be changed this way, and only for a pool of type {@link ExecutorType#THREAD_POOL}.
+     * The warm-up settings only apply to new executors.
+     * Any other change requires a new pool, as well as any change of a pool which has not created
+     * its executor yet, which is cheap as the new pool doesn't create its executor either.
+     * @param newConfig the new configuration
+     * @return {@code true} if the configuration has been applied, {@code false} if a new pool is required
+     */
+    boolean reconfigure(final ThreadPoolConfig newConfig) {
+        final ThreadPoolExecutor tpe = getCreatedExecutor();
+        final ModifiableThreadPoolConfig previous = this.configuration;
+        if ( tpe == null || tpe instanceof ScheduledThreadPoolExecutor
+                || newConfig.getExecutorType() != previous.getExecutorType()
+                || newConfig.getQueueSize() != previous.getQueueSize()
+                || newConfig.getQueueType() != previous.getQueueType()
+                || newConfig.isEagerThreadGrowth() != previous.isEagerThreadGrowth()
+                || newConfig.getPriority() != previous.getPriority()
+                || newConfig.isDaemon() != previous.isDaemon()
+                || newConfig.getFactory() != previous.getFactory()
+                || newConfig.getThreadLocalCleanupMode() != previous.getThreadLocalCleanupMode()
+                || newConfig.getThreadLocalCleanupInterval() != previous.getThreadLocalCleanupInterval()
+                || !Arrays.equals(newConfig.getThreadLocalAllowlist(), previous.getThreadLocalAllowlist())
+                || newConfig.isThreadLocalStatistics() != previous.isThreadLocalStatistics() ) {
+            return false;
+        }
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig(newConfig);
+        this.checkPoolSizes(config);
+        this.checkKeepAliveTime(config);
+        if ( config.getQueueSize() < 0 ) {
+            this.checkUnboundedQueue(config);
+        }
+        // the core pool size must never exceed the maximum pool size
+        if ( config.getMaxPoolSize() > tpe.getMaximumPoolSize() ) {
+            tpe.setMaximumPoolSize(config.getMaxPoolSize());
+            tpe.setCorePoolSize(config.getMinPoolSize());
+        } else {
+            tpe.setCorePoolSize(config.getMinPoolSize());
+            tpe.setMaximumPoolSize(config.getMaxPoolSize());
+        }
+        if ( config.getBlockPolicy() != previous.getBlockPolicy() ) {
+            final RejectedExecutionHandler handler = this.forwardToSuccessor(createRejectedExecutionHandler(config));
+            tpe.setRejectedExecutionHandler(tpe.getQueue() instanceof EagerThreadGrowthQueue
+                    ? ((EagerThreadGrowthQueue) tpe.getQueue()).wrap(handler) : handler);
+        }
+        synchronized ( this.hibernationLock ) {
+            // a hibernating pool gets the keep alive time when it wakes up
+            if ( !this.hibernating ) {
+                tpe.setKeepAliveTime(config.getKeepAliveTime(), TimeUnit.MILLISECONDS);
+            }
+            // the new configuration is published as a whole instead of changing the one returned to callers
+            this.configuration = config;
+        }
+        if ( config.isPrestartCoreThreads() && !this.hibernating ) {
+            // also starts the threads of a raised core pool size
+            tpe.prestartAllCoreThreads();
+        }
+        this.logger.info("Thread pool [{}] reconfigured.", name);
+        return true;
+    }
+
+    private ScheduledThreadPoolExecutor createScheduledExecutor(final ThreadFactory threadFactory,
+            final RejectedExecutionHandler handler) {
+        // the scheduled executor has a fixed number of threads
+        final int poolSize = Math.max(1, this.configuration.getMaxPoolSize() == Integer.MAX_VALUE
+                ? this.configuration.getMinPoolSize() : this.configuration.getMaxPoolSize());
+        ScheduledThreadPoolExecutor scheduledExecutor = null;
+        if (this.configuration.getThreadLocalCleanupMode() != ThreadLocalCleanupMode.NEVER) {
+            try {
+                scheduledExecutor = new ScheduledThreadPoolExecutorCleaningThreadLocals(poolSize,
+                        threadFactory,
+                        handler,
+                        new LoggingThreadLocalChangeListener(this.threadLocalStatistics),
+                        this.configuration.getThreadLocalCleanupMode(),
+                        this.configuration.getThreadLocalCleanupInterval(),
+                        new ThreadLocalAllowlist(this.configuration.getThreadLocalAllowlist()));
+            } catch (RuntimeException | Error e) {
+                logThreadPoolExecutorCleaningThreadLocalsException(e);
+            }
+        } else {
+            this.logger.debug("Thread pool [{}] ; Thread locals are not cleaned up", name);
+        }
+        if (scheduledExecutor == null) {
+            scheduledExecutor = new ScheduledThreadPoolExecutor(poolSize, threadFactory, handler);
+        }
+        // cancelled tasks would otherwise stay in the queue until their delay has elapsed
+        scheduledExecutor.setRemoveOnCancelPolicy(true);
+        return scheduledExecutor;
     }
 
     private void logThreadPoolExecutorCleaningThreadLocalsException(Throwable t) {
@@ -180,16 +522,26 @@ public class DefaultThreadPool
         logger.debug("Cannot create ThreadPoolExecutorCleaningThreadLocals", t);
     }
 
-    private static class LoggingThreadLocalChangeListener implements ThreadLocalChangeListener {
+    private static class LoggingThreadLocalChangeListener implements BatchThreadLocalChangeListener {
+
+        /** also notified about the changes, possibly null */
+        private final ThreadLocalStatistics statistics;
+
+        LoggingThreadLocalChangeListener(final ThreadLocalStatistics statistics) {
+            this.statistics = statistics;
+        }
+
         @Override
-        public void changed(Mode mode, Thread thread, ThreadLocal<?> threadLocal, Object value) {
-            LOGGER.debug("Thread '{}' {} ThreadLocal {} with value {}", thread, mode, 
-                    threadLocal != null ? threadLocal.getClass() : "<null>", value);
+        public void changed(Thread thread, List<Change> changes) {
+            if ( statistics != null ) {
+                statistics.changed(thread, changes);
+            }
+            LOGGER.debug("Thread '{}' changed {} ThreadLocals: {}", thread, changes.size(), changes);
         }
         
         @Override
         public boolean isEnabled() {
-            return LOGGER.isDebugEnabled();
+            return statistics != null || LOGGER.isDebugEnabled();
         }
     }
 
@@ -212,7 +564,7 @@ public class DefaultThreadPool
      * @see org.apache.sling.commons.threads.ThreadPool#execute(java.lang.Runnable)
      */
     public void execute(final Runnable runnable) {
-        checkExecutor();
+        final ExecutorService executor = checkExecutor();
         if ( runnable != null ) {
             if ( logger.isDebugEnabled() ) {
                 logOperation("Executing runnable: ", runnable);
@@ -225,7 +577,7 @@ public class DefaultThreadPool
      * @see org.apache.sling.commons.threads.ThreadPool#submit(java.util.concurrent.Callable)
      */
     public <T> Future<T> submit(final Callable<T> callable) {
-        checkExecutor();
+        final ExecutorService executor = checkExecutor();
         if ( logger.isDebugEnabled() ) {
             logOperation("Submitting callable: ", callable);
         }
@@ -236,32 +588,387 @@ public class DefaultThreadPool
      * @see org.apache.sling.commons.threads.ThreadPool#submit(java.lang.Runnable)
      */
     public Future<?> submit(final Runnable runnable) {
-        checkExecutor();
+        final ExecutorService executor = checkExecutor();
         if ( logger.isDebugEnabled() ) {
             logOperation("Submitting runnable: ", runnable);
         }
         return executor.submit(runnable);
     }
 
+    /**
+     * @see org.apache.sling.commons.threads.ThreadPool#submitAll(java.util.Collection)
+     */
+    public <T> List<Future<T>> submitAll(final Collection<? extends Callable<T>> tasks) {
+        final ExecutorService executor = checkExecutor();
+        final List<Future<T>> futures = new ArrayList<>(tasks.size());
+        final RunnableFuture<?>[] batch = new RunnableFuture<?>[tasks.size()];
+        for (final Callable<T> task : tasks) {
+            final RunnableFuture<T> future = new BatchTask<>(task);
+            batch[futures.size()] = future;
+            futures.add(future);
+        }
+        if ( logger.isDebugEnabled() ) {
+            logOperation("Submitting batch of callables: ", batch.length);
+        }
+        if ( batch.length > 0 ) {
+            if ( executor instanceof ThreadPerTaskExecutor ) {
+                // each task gets a fresh thread without thread locals, the executor limits the concurrency
+                executeEach(executor, batch);
+            } else {
+                executeBatch(executor, batch);
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * Passes each task of the batch to the executor on its own.
+     * If a task is rejected, it and the tasks not passed to the executor yet are cancelled.
+     */
+    private void executeEach(final ExecutorService executor, final RunnableFuture<?>[] batch) {
+        for (int i = 0; i < batch.length; i++) {
+            try {
+                executor.execute(batch[i]);
+            } catch (final RejectedExecutionException e) {
+                for (int j = i; j < batch.length; j++) {
+                    batch[j].cancel(false);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Enqueues a batch runner once per thread which may run it in parallel.
+     * A runner which is run by the block policy in the calling thread only runs a single task,
+     * like a single task which is rejected, and the next runner is tried for the remaining tasks.
+     * If all runners are dropped by the block policy, the remaining tasks are cancelled.
+     */
+    private void executeBatch(final ExecutorService executor, final RunnableFuture<?>[] batch) {
+        final AtomicInteger next = new AtomicInteger();
+        // the calling thread counts as a runner until all runners are passed to the executor
+        final AtomicInteger runnersLeft = new AtomicInteger(1);
+        final int runners = Math.min(batch.length, batchParallelism(executor));
+        int enqueued = 0;
+        try {
+            while ( enqueued < runners && next.get() < batch.length ) {
+                final BatchRunner runner = new BatchRunner(batch, next, runnersLeft, executor, Thread.currentThread());
+                runnersLeft.incrementAndGet();
+                try {
+                    executor.execute(runner);
+                } catch (final RejectedExecutionException e) {
+                    runnersLeft.decrementAndGet();
+                    if ( enqueued == 0 ) {
+                        for (final RunnableFuture<?> future : batch) {
+                            future.cancel(false);
+                        }
+                        throw e;
+                    }
+                    // the runners already enqueued run the remaining tasks
+                    break;
+                }
+                if ( !runner.submitted() ) {
+                    enqueued++;
+                }
+            }
+        } finally {
+            BatchRunner.release(batch, next, runnersLeft);
+        }
+    }
+
+    /**
+     * @return the number of threads which run a batch, the threads the executor keeps or already runs
+     *         for a thread pool executor, as further threads would only be started for the runners
+     *         if the queue is full, or the maximum pool size if the executor starts threads instead
+     *         of queueing tasks
+     */
+    private int batchParallelism(final ExecutorService executor) {
+        if ( executor instanceof ThreadPoolExecutor ) {
+            final ThreadPoolExecutor tpe = (ThreadPoolExecutor) executor;
+            if ( tpe.getQueue() instanceof SynchronousQueue || tpe.getQueue() instanceof EagerThreadGrowthQueue ) {
+                return Math.max(1, tpe.getMaximumPoolSize());
+            }
+            return Math.max(1, Math.max(tpe.getCorePoolSize(), tpe.getPoolSize()));
+        }
+        if ( executor instanceof ForkJoinPool ) {
+            return ((ForkJoinPool) executor).getParallelism();
+        }
+        final int maxPoolSize = this.configuration.getMaxPoolSize();
+        return maxPoolSize == Integer.MAX_VALUE ? Runtime.getRuntime().availableProcessors() : Math.max(1, maxPoolSize);
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ThreadPool#invokeAll(java.util.Collection, long, java.util.concurrent.TimeUnit)
+     */
+    public <T> List<Future<T>> invokeAll(final Collection<? extends Callable<T>> tasks, final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        final List<Future<T>> futures = submitAll(tasks);
+        boolean done = false;
+        try {
+            for (final Future<T> future : futures) {
+                if ( !future.isDone() ) {
+                    final long remaining = deadline - System.nanoTime();
+                    if ( remaining <= 0 ) {
+                        return futures;
+                    }
+                    try {
+                        future.get(remaining, TimeUnit.NANOSECONDS);
+                    } catch (final ExecutionException | CancellationException e) {
+                        // reported by the future
+                    } catch (final TimeoutException e) {
+                        return futures;
+                    }
+                }
+            }
+            done = true;
+            return futures;
+        } finally {
+            if ( !done ) {
+                for (final Future<T> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * A task of a batch, which is cancelled if it is dropped by the block policy, as nobody waits for it
+     * to be run otherwise.
+     */
+    private static final class BatchTask<T> extends FutureTask<T> {
+
+        BatchTask(final Callable<T> callable) {
+            super(callable);
+        }
+    }
+
+    /**
+     * Runs the tasks of a batch, the runners of a batch are executed by several threads
+     * which take the next task of the batch until all have been taken.
+     */
+    private static final class BatchRunner implements Runnable {
+
+        private final RunnableFuture<?>[] batch;
+
+        /** The index of the next task, shared by the runners of the batch */
+        private final AtomicInteger next;
+
+        /** The number of runners of the batch which might still run tasks, shared by the runners of the batch */
+        private final AtomicInteger runnersLeft;
+
+        /** The executor running this runner, changed if the runner is handed over to another executor */
+        private volatile ExecutorService executor;
+
+        /** The thread passing this runner to the executor */
+        private final Thread caller;
+
+        /** Whether the executor has accepted or rejected the runner */
+        private volatile boolean submitted;
+
+        /** Whether the runner has been run by the calling thread while it was passed to the executor */
+        private boolean ranInCaller;
+
+        BatchRunner(final RunnableFuture<?>[] batch, final AtomicInteger next, final AtomicInteger runnersLeft,
+                final ExecutorService executor, final Thread caller) {
+            this.batch = batch;
+            this.next = next;
+            this.runnersLeft = runnersLeft;
+            this.executor = executor;
+            this.caller = caller;
+        }
+
+        void setExecutor(final ExecutorService executor) {
+            this.executor = executor;
+        }
+
+        /**
+         * Called by the calling thread once the executor has returned.
+         * @return {@code true} if the block policy has run the runner in the calling thread
+         */
+        boolean submitted() {
+            this.submitted = true;
+            return this.ranInCaller;
+        }
+
+        /**
+         * Called if the runner is dropped by the block policy and never runs.
+         */
+        void discard() {
+            release(batch, next, runnersLeft);
+        }
+
+        /**
+         * Releases a runner of the batch, if it has been the last one the tasks nobody has taken are cancelled.
+         */
+        static void release(final RunnableFuture<?>[] batch, final AtomicInteger next, final AtomicInteger runnersLeft) {
+            if ( runnersLeft.decrementAndGet() == 0 ) {
+                int index;
+                while ( (index = next.getAndIncrement()) < batch.length ) {
+                    batch[index].cancel(false);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                this.runTasks();
+            } finally {
+                release(batch, next, runnersLeft);
+            }
+        }
+
+        private void runTasks() {
+            if ( !this.submitted && Thread.currentThread() == this.caller ) {
+                // rejected and run by the block policy, which would run a single rejected task
+                this.ranInCaller = true;
+                final int index = next.getAndIncrement();
+                if ( index < batch.length ) {
+                    batch[index].run();
+                }
+                return;
+            }
+            boolean first = true;
+            int index;
+            while ( (index = next.getAndIncrement()) < batch.length ) {
+                if ( !first ) {
+                    final ExecutorService current = this.executor;
+                    if ( current instanceof ThreadLocalCleaningExecutor ) {
+                        ((ThreadLocalCleaningExecutor) current).cleanupBetweenTasks();
+                    }
+                    // like between the tasks of a worker, the interrupt of a cancelled task must not
+                    // reach the next task, unless the executor is shut down and interrupts its threads
+                    if ( Thread.interrupted() && current != null && current.isShutdown() ) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                first = false;
+                batch[index].run();
+            }
+        }
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ThreadPool#submitAsync(java.util.function.Supplier)
+     */
+    public <T> CompletableFuture<T> submitAsync(final Supplier<T> supplier) {
+        return this.submitAsync(supplier, this);
+    }
+
+    /**
+     * @param supplier the supplier
+     * @param defaultExecutor the executor for the dependent async stages
+     * @return the future completed with the result of the supplier
+     */
+    <T> CompletableFuture<T> submitAsync(final Supplier<T> supplier, final Executor defaultExecutor) {
+        if ( supplier == null ) {
+            throw new NullPointerException();
+        }
+        final ExecutorService executor = checkExecutor();
+        if ( logger.isDebugEnabled() ) {
+            logOperation("Submitting supplier: ", supplier);
+        }
+        final CompletableFuture<T> future = new ThreadPoolCompletableFuture<>(defaultExecutor);
+        executor.execute(() -> {
+            // the future might have been cancelled in the meantime
+            if ( !future.isDone() ) {
+                try {
+                    future.complete(supplier.get());
+                } catch (final Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ThreadPool#runAsync(java.lang.Runnable)
+     */
+    public CompletableFuture<Void> runAsync(final Runnable runnable) {
+        return this.runAsync(runnable, this);
+    }
+
+    /**
+     * @param runnable the runnable
+     * @param defaultExecutor the executor for the dependent async stages
+     * @return the future completed once the runnable has run
+     */
+    CompletableFuture<Void> runAsync(final Runnable runnable, final Executor defaultExecutor) {
+        if ( runnable == null ) {
+            throw new NullPointerException();
+        }
+        return this.submitAsync(() -> {
+            runnable.run();
+            return null;
+        }, defaultExecutor);
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ScheduledThreadPool#schedule(java.lang.Runnable, long, java.util.concurrent.TimeUnit)
+     */
+    public ScheduledFuture<?> schedule(final Runnable runnable, final long delay, final TimeUnit unit) {
+        final ScheduledExecutorService scheduledExecutor = checkScheduledExecutor();
+        if ( logger.isDebugEnabled() ) {
+            logOperation("Scheduling runnable: ", runnable);
+        }
+        return scheduledExecutor.schedule(runnable, delay, unit);
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ScheduledThreadPool#schedule(java.util.concurrent.Callable, long, java.util.concurrent.TimeUnit)
+     */
+    public <T> ScheduledFuture<T> schedule(final Callable<T> callable, final long delay, final TimeUnit unit) {
+        final ScheduledExecutorService scheduledExecutor = checkScheduledExecutor();
+        if ( logger.isDebugEnabled() ) {
+            logOperation("Scheduling callable: ", callable);
+        }
+        return scheduledExecutor.schedule(callable, delay, unit);
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ScheduledThreadPool#scheduleAtFixedRate(java.lang.Runnable, long, long, java.util.concurrent.TimeUnit)
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(final Runnable runnable, final long initialDelay, final long period, final TimeUnit unit) {
+        final ScheduledExecutorService scheduledExecutor = checkScheduledExecutor();
+        if ( logger.isDebugEnabled() ) {
+            logOperation("Scheduling runnable at fixed rate: ", runnable);
+        }
+        return scheduledExecutor.scheduleAtFixedRate(runnable, initialDelay, period, unit);
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ScheduledThreadPool#scheduleWithFixedDelay(java.lang.Runnable, long, long, java.util.concurrent.TimeUnit)
+     */
+    public ScheduledFuture<?> scheduleWithFixedDelay(final Runnable runnable, final long initialDelay, final long delay, final TimeUnit unit) {
+        final ScheduledExecutorService scheduledExecutor = checkScheduledExecutor();
+        if ( logger.isDebugEnabled() ) {
+            logOperation("Scheduling runnable with fixed delay: ", runnable);
+        }
+        return scheduledExecutor.scheduleWithFixedDelay(runnable, initialDelay, delay, unit);
+    }
+
     /**
      * Shut down the threadpool.
      */
     public void shutdown() {
         this.logger.info("Shutting down thread pool [{}] ...", name);
-        if ( this.executor != null ) {
+        final ExecutorService executor = this.markShutdown();
+        if ( executor != null ) {
             if (this.configuration.isShutdownGraceful()) {
-                this.executor.shutdown();
+                executor.shutdown();
             } else {
-                this.executor.shutdownNow();
+                executor.shutdownNow();
             }
 
             try {
                 if (this.configuration.getShutdownWaitTimeMs() > 0) {
-                    if (!this.executor.awaitTermination(this.configuration.getShutdownWaitTimeMs(), TimeUnit.MILLISECONDS)) {
+                    if (!executor.awaitTermination(this.configuration.getShutdownWaitTimeMs(), TimeUnit.MILLISECONDS)) {
                         logger.warn("Running commands have not terminated within "
                             + this.configuration.getShutdownWaitTimeMs()
                             + "ms. Will shut them down by interruption");
-                        this.executor.shutdownNow(); // TODO: shouldn't this be outside the if statement?!
+                        executor.shutdownNow(); // TODO: shouldn't this be outside the if statement?!
                     }
                 }
             } catch (final InterruptedException ie) {
@@ -272,22 +979,371 @@ public class DefaultThreadPool
         this.logger.info("Thread pool [{}] is shut down.", this.name);
     }
 
+    /**
+     * Prevents the executor from being created from now on.
+     * @return the executor, {@code null} if it has not been created
+     */
+    private ExecutorService markShutdown() {
+        synchronized ( this.creationLock ) {
+            this.shutdown = true;
+            return this.executor;
+        }
+    }
+
+    /**
+     * Shuts down this pool and hands the queued tasks over to the given pool,
+     * so this pool only finishes its running tasks.
+     * <p>
+     * The workers of this pool stop taking tasks from the queue before it is drained, so each queued task
+     * is either handed over or, if a worker was just about to take it, run by this pool. The running tasks
+     * are neither interrupted nor waited for, regardless of the shutdown settings, the workers terminate
+     * once they have finished them.
+     * <p>
+     * The tasks of a scheduled thread pool are bound to their schedule and are not handed over,
+     * neither are the tasks of executors which are no thread pool executors, these pools are shut down as usual.
+     * The handed over tasks are not subject to the block policy of the given pool, see
+     * {@link #handOver(List, DefaultThreadPool, ExecutorService)}, only if the given pool is shut down
+     * their futures are cancelled.
+     * @param successor the pool replacing this pool
+     */
+    void shutdown(final DefaultThreadPool successor) {
+        // the tasks passed to this pool from now on are passed on to the successor once the executor is shut down
+        this.successor = successor;
+        final ThreadPoolExecutor tpe = getCreatedExecutor();
+        // the successor of a used pool will most likely be used as well
+        final ExecutorService successorExecutor = tpe == null || tpe instanceof ScheduledThreadPoolExecutor
+                ? null : successor.getExecutorService();
+        if ( successorExecutor == null ) {
+            this.shutdown();
+            return;
+        }
+        this.logger.info("Shutting down thread pool [{}] and handing over its queued tasks ...", name);
+        this.markShutdown();
+        final List<Runnable> tasks = new ArrayList<>();
+        // a synchronous queue never holds tasks
+        final HandOverQueue queue = this.handOverQueue;
+        if ( queue != null ) {
+            // the workers don't take queued tasks anymore, they only finish their running tasks
+            queue.close();
+        }
+        tpe.shutdown();
+        if ( queue != null ) {
+            queue.drainTo(tasks);
+        }
+        if ( !tasks.isEmpty() ) {
+            this.logger.info("Handing over {} queued tasks from thread pool [{}] to its successor.", tasks.size(), this.name);
+            this.handOver(tasks, successor, successorExecutor);
+        }
+        this.executor = null;
+        this.logger.info("Thread pool [{}] is shut down, its running tasks are finished in the background.", this.name);
+    }
+
+    /**
+     * Passes the tasks to the executor of the successor without applying its block policy, as the calling
+     * thread usually holds the locks of the thread pool manager and must neither run the tasks nor drop them.
+     * <p>
+     * The tasks are put into the queue of a thread pool executor directly. The tasks which don't fit into it
+     * are handed over by a separate thread, which waits for room in the queue. A thread per task executor
+     * queues the tasks beyond its queue size, the other executors only reject tasks once they are shut down.
+     * @param tasks the queued tasks of this pool
+     * @param successor the pool replacing this pool
+     * @param successorExecutor the executor of the successor
+     */
+    private void handOver(final List<Runnable> tasks, final DefaultThreadPool successor, final ExecutorService successorExecutor) {
+        for (final Runnable task : tasks) {
+            if ( task instanceof BatchRunner ) {
+                // cleans up the thread locals with the executor now running it
+                ((BatchRunner) task).setExecutor(successorExecutor);
+            }
+        }
+        if ( !(successorExecutor instanceof ThreadPoolExecutor) || successorExecutor instanceof ScheduledThreadPoolExecutor ) {
+            for (final Runnable task : tasks) {
+                try {
+                    if ( successorExecutor instanceof ThreadPerTaskExecutor ) {
+                        ((ThreadPerTaskExecutor) successorExecutor).handOver(task);
+                    } else {
+                        successorExecutor.execute(task);
+                    }
+                } catch (final RejectedExecutionException e) {
+                    this.rejectedBySuccessor(task, e);
+                }
+            }
+            return;
+        }
+        final ThreadPoolExecutor successorTpe = (ThreadPoolExecutor) successorExecutor;
+        // the queue itself, an eager thread growth queue would refuse tasks to start threads for them
+        final HandOverQueue handOverQueue = successor.handOverQueue;
+        final BlockingQueue<Runnable> queue = handOverQueue != null ? handOverQueue : successorTpe.getQueue();
+        // a synchronous queue only accepts a task if a thread is waiting for it
+        successor.startWorkers(successorTpe);
+        int queued = 0;
+        while ( queued < tasks.size() && queue.offer(tasks.get(queued)) ) {
+            queued++;
+        }
+        successor.startWorkers(successorTpe);
+        if ( queued < tasks.size() ) {
+            final List<Runnable> overflow = new ArrayList<>(tasks.subList(queued, tasks.size()));
+            this.logger.info("Handing over {} queued tasks from thread pool [{}] to its successor in the background.",
+                    overflow.size(), this.name);
+            final ThreadFactory factory = new ExtendedThreadFactory(Executors.defaultThreadFactory(),
+                    this.name + "-handover", ThreadPoolConfig.ThreadPriority.NORM, true);
+            factory.newThread(() -> this.handOverOverflow(overflow, successor, successorTpe, queue)).start();
+        }
+    }
+
+    /**
+     * Puts the tasks into the queue of the successor once there is room for them, in the order they were queued.
+     * If the successor is shut down in the meantime, the remaining tasks are rejected.
+     */
+    private void handOverOverflow(final List<Runnable> tasks, final DefaultThreadPool successor,
+            final ThreadPoolExecutor successorTpe, final BlockingQueue<Runnable> queue) {
+        int index = 0;
+        try {
+            while ( index < tasks.size() ) {
+                final Runnable task = tasks.get(index);
+                if ( successorTpe.isShutdown() ) {
+                    break;
+                }
+                if ( queue.offer(task, HAND_OVER_WAIT_TIME, TimeUnit.MILLISECONDS) ) {
+                    if ( successorTpe.isShutdown() && queue.remove(task) ) {
+                        // shut down before the task could be drained from the queue or run
+                        break;
+                    }
+                    index++;
+                }
+                successor.startWorkers(successorTpe);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if ( index < tasks.size() ) {
+            final RejectedExecutionException e = new RejectedExecutionException("Thread pool " + successor.getName() + " is already shutdown.");
+            for (final Runnable task : tasks.subList(index, tasks.size())) {
+                this.rejectedBySuccessor(task, e);
+            }
+        } else {
+            this.logger.debug("Handed over all queued tasks from thread pool [{}] to its successor.", this.name);
+        }
+    }
+
+    private void rejectedBySuccessor(final Runnable task, final RejectedExecutionException e) {
+        this.logger.warn("Queued task {} of thread pool [{}] has been rejected by its successor.", task, this.name, e);
+        if ( task instanceof Future ) {
+            ((Future<?>) task).cancel(false);
+        }
+        discarded(task);
+    }
+
+    /**
+     * Starts the threads taking handed over tasks from the queue of the executor.
+     */
+    private void startWorkers(final ThreadPoolExecutor tpe) {
+        this.prestartCoreThreads(tpe);
+        if ( tpe.getPoolSize() == 0 ) {
+            try {
+                tpe.execute(NOOP);
+            } catch (final RejectedExecutionException e) {
+                // shut down
+            }
+        }
+    }
+
+    /**
+     * Gets the executor, which is created if no task has been passed to the pool yet.
+     * @return the executor if it is a {@link ThreadPoolExecutor}, otherwise {@code null}
+     */
     public ThreadPoolExecutor getExecutor() {
+        final ExecutorService executor = this.getExecutorService();
+        return executor instanceof ThreadPoolExecutor ? (ThreadPoolExecutor) executor : null;
+    }
+
+    /**
+     * Gets the executor, which is created if no task has been passed to the pool yet.
+     * @return the executor or {@code null} if the pool has been shut down
+     */
+    public ExecutorService getExecutorService() {
+        final ExecutorService executor = this.executor;
+        if ( executor != null ) {
+            return executor;
+        }
+        synchronized ( this.creationLock ) {
+            if ( this.executor == null && !this.shutdown ) {
+                final ExecutorService created = this.createExecutor();
+                this.executor = created;
+                if ( this.configuration.isPrestartCoreThreads() ) {
+                    this.prestartCoreThreads(created);
+                }
+            }
+            return this.executor;
+        }
+    }
+
+    /**
+     * Starts all core threads of the executor, which run the warm-up task first if configured,
+     * so the thread local cleanup and the classes used by the tasks are initialized before the first task.
+     */
+    private void prestartCoreThreads(final ExecutorService executor) {
+        if ( !(executor instanceof ThreadPoolExecutor) ) {
+            return;
+        }
+        final ThreadPoolExecutor tpe = (ThreadPoolExecutor) executor;
+        final WarmUpThreadFactory warmUpFactory = this.warmUpThreadFactory;
+        final int started = warmUpFactory != null ? warmUpFactory.prestartAllCoreThreads(tpe) : tpe.prestartAllCoreThreads();
+        this.logger.debug("Thread pool [{}] ; Prestarted {} core threads", name, started);
+    }
+
+    /**
+     * Gets the executor without creating it, for monitoring the pool.
+     * @return the executor if it has been created and is a {@link ThreadPoolExecutor}, otherwise {@code null}
+     */
+    ThreadPoolExecutor getCreatedExecutor() {
+        final ExecutorService executor = this.executor;
+        return executor instanceof ThreadPoolExecutor ? (ThreadPoolExecutor) executor : null;
+    }
+
+    /**
+     * Gets the executor without creating it, for monitoring the pool.
+     * @return the executor or {@code null} if it has not been created yet or the pool has been shut down
+     */
+    ExecutorService getCreatedExecutorService() {
         return this.executor;
     }
 
-    private void checkExecutor() {
-        if ( this.executor == null ) {
+    /**
+     * @return the statistics about the thread locals changed by tasks, {@code null} if not enabled
+     */
+    public ThreadLocalStatistics getThreadLocalStatistics() {
+        return this.threadLocalStatistics;
+    }
+
+    private ExecutorService checkExecutor() {
+        final ExecutorService executor = this.getExecutorService();
+        if ( executor == null ) {
+            final DefaultThreadPool next = this.successor;
+            if ( next != null ) {
+                // the pool has been replaced while the task was passed to it
+                return next.checkExecutor();
+            }
             throw new RejectedExecutionException("Thread pool " + this.name + " is already shutdown.");
         }
+        if ( this.configuration.getHibernationTime() > 0 ) {
+            // recorded before checking whether the pool hibernates, see hibernate(long)
+            final long now = System.nanoTime();
+            if ( now - this.lastSubmitNanos >= SUBMIT_TIME_RESOLUTION ) {
+                this.lastSubmitNanos = now;
+            }
+        }
+        this.wakeUp();
+        return executor;
+    }
+
+    /**
+     * Releases all threads of the executor, including the core threads, if it is idle.
+     * The threads terminate once they have finished their current task, new threads
+     * are started for the next tasks. Only supported by a {@link ThreadPoolExecutor}
+     * which is not a scheduled executor.
+     * <p>
+     * A task passed to the pool concurrently has already been woken up for, so the pool is marked
+     * as hibernating before checking for tasks. A task passed to the pool then either sees the mark
+     * and waits for this method to finish before waking the pool up, or it has recorded its time
+     * of submission, which is checked here as it might not be queued yet.
+     * @param idleTime the time in milliseconds no task must have been passed to the pool
+     * @return {@code true} if the pool hibernates now
+     */
+    boolean hibernate(final long idleTime) {
+        synchronized ( this.hibernationLock ) {
+            final ThreadPoolExecutor tpe = getCreatedExecutor();
+            if ( this.hibernating || tpe == null || tpe instanceof ScheduledThreadPoolExecutor || tpe.isShutdown() ) {
+                return false;
+            }
+            this.hibernating = true;
+            if ( tpe.getActiveCount() > 0 || !tpe.getQueue().isEmpty()
+                    || System.nanoTime() - this.lastSubmitNanos < TimeUnit.MILLISECONDS.toNanos(idleTime) + SUBMIT_TIME_RESOLUTION ) {
+                this.hibernating = false;
+                return false;
+            }
+            this.hibernationCount++;
+            // the idle threads are interrupted and time out at once
+            tpe.setKeepAliveTime(HIBERNATION_KEEP_ALIVE_TIME, TimeUnit.MILLISECONDS);
+            tpe.allowCoreThreadTimeOut(true);
+            this.logger.debug("Thread pool [{}] hibernates.", this.name);
+            return true;
+        }
+    }
+
+    /**
+     * Keeps the core threads of a hibernating pool again, and starts them at once
+     * if configured. Does nothing if the pool doesn't hibernate.
+     */
+    void wakeUp() {
+        if ( !this.hibernating ) {
+            return;
+        }
+        synchronized ( this.hibernationLock ) {
+            if ( !this.hibernating ) {
+                return;
+            }
+            this.hibernating = false;
+            this.wakeUpCount++;
+            final ThreadPoolExecutor tpe = getCreatedExecutor();
+            if ( tpe != null ) {
+                tpe.allowCoreThreadTimeOut(false);
+                tpe.setKeepAliveTime(this.configuration.getKeepAliveTime(), TimeUnit.MILLISECONDS);
+                if ( this.configuration.isPrestartCoreThreads() ) {
+                    tpe.prestartAllCoreThreads();
+                }
+            }
+            this.logger.debug("Thread pool [{}] woke up.", this.name);
+        }
+    }
+
+    /**
+     * @return whether the pool has released all its threads
+     */
+    boolean isHibernating() {
+        return this.hibernating;
+    }
+
+    /**
+     * @return the number of times the pool hibernated
+     */
+    long getHibernationCount() {
+        return this.hibernationCount;
+    }
+
+    /**
+     * @return the number of times the pool woke up from hibernation
+     */
+    long getWakeUpCount() {
+        return this.wakeUpCount;
+    }
+
+    private ScheduledExecutorService checkScheduledExecutor() {
+        final ExecutorService executor = this.getExecutorService();
+        if ( executor == null ) {
+            final DefaultThreadPool next = this.successor;
+            if ( next != null ) {
+                return next.checkScheduledExecutor();
+            }
+            throw new RejectedExecutionException("Thread pool " + this.name + " is already shutdown.");
+        }
+        if ( !(executor instanceof ScheduledExecutorService) ) {
+            throw new RejectedExecutionException("Thread pool " + this.name + " is not a scheduled thread pool.");
+        }
+        return (ScheduledExecutorService) executor;
     }
 
     private void logOperation(final String msg, final Object obj) {
-        logger.debug("{} {}, pool={}, active={}, corePoolSize={}, maxPoolSize={}, queueSize={}",
-                new Object[] {msg, obj, name,
-                        executor.getActiveCount(),
-                        executor.getCorePoolSize(),
-                        executor.getMaximumPoolSize(),
-                        executor.getQueue().size()});
+        final ThreadPoolExecutor tpe = getCreatedExecutor();
+        if ( tpe != null ) {
+            logger.debug("{} {}, pool={}, active={}, corePoolSize={}, maxPoolSize={}, queueSize={}",
+                    new Object[] {msg, obj, name,
+                            tpe.getActiveCount(),
+                            tpe.getCorePoolSize(),
+                            tpe.getMaximumPoolSize(),
+                            tpe.getQueue().size()});
+        } else {
+            logger.debug("{} {}, pool={}", msg, obj, name);
+        }
     }
 }
@@ -23,15 +23,30 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import org.apache.sling.commons.metrics.Gauge;
 import org.apache.sling.commons.threads.ModifiableThreadPoolConfig;
+import org.apache.sling.commons.threads.ScheduledThreadPool;
 import org.apache.sling.commons.threads.ThreadPool;
 import org.apache.sling.commons.threads.ThreadPoolConfig;
+import org.apache.sling.commons.threads.ThreadPoolConfig.ExecutorType;
+import org.apache.sling.commons.threads.ThreadPoolConfig.QueueType;
+import org.apache.sling.commons.threads.ThreadPoolConfig.ThreadLocalCleanupMode;
 import org.apache.sling.commons.threads.ThreadPoolConfig.ThreadPoolPolicy;
 import org.apache.sling.commons.threads.ThreadPoolConfig.ThreadPriority;
 import org.apache.sling.commons.threads.ThreadPoolManager;
+import org.apache.sling.commons.threads.Timer;
 import org.apache.sling.commons.threads.jmx.ThreadPoolMBean;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
@@ -51,8 +66,14 @@ public class DefaultThreadPoolManager
     /** By default we use the logger for this class. */
     protected final Logger logger = LoggerFactory.getLogger(this.getClass().getName());
 
-    /** The managed thread pools */
-    protected final Map<String, Entry> pools = new HashMap<String, Entry>();
+    /**
+     * The managed thread pools by name, read without locking.
+     * Changes to this map and to {@link #poolsByPid} are synchronized on this map.
+     */
+    protected final ConcurrentMap<String, Entry> pools = new ConcurrentHashMap<String, Entry>();
+
+    /** The configured thread pools by pid */
+    private final ConcurrentMap<String, Entry> poolsByPid = new ConcurrentHashMap<String, Entry>();
 
     /** The properties. */
     protected final Dictionary<String, Object> properties;
@@ -60,29 +81,80 @@ public class DefaultThreadPoolManager
     /** The bundle context. */
     protected final BundleContext bundleContext;
 
+    /** The framework property for the duration of a tick of the shared timer in milliseconds. */
+    static final String PROPERTY_TIMER_TICK_DURATION = "org.apache.sling.commons.threads.timer.tickDuration";
+
+    /** The framework property for the number of buckets of the wheel of the shared timer. */
+    static final String PROPERTY_TIMER_WHEEL_SIZE = "org.apache.sling.commons.threads.timer.wheelSize";
+
+    /** The timer shared by all {@link Timer}s, the timer thread is started on first use. */
+    private final HashedWheelTimer timer;
+
+    /**
+     * Shuts down the pools unused for their linger time, so waiting for their termination
+     * doesn't block the timer thread. Its thread is only kept while pools are shut down.
+     */
+    private final ThreadPoolExecutor lingerExecutor;
+
+    /**
+     * Runs the expired tasks of {@link Timer}s whose thread pool would run them in the timer thread,
+     * as it is saturated and runs rejected tasks in the caller. Its thread is only kept while it is used.
+     */
+    private final ThreadPoolExecutor timerFallbackExecutor;
+
     /**
      * Constructor and activate this component.
      */
     public DefaultThreadPoolManager(final BundleContext bc, final Dictionary<String, Object> props) {
         this.properties = props;
         this.bundleContext = bc;
+        this.timer = new HashedWheelTimer(
+                new ExtendedThreadFactory(Executors.defaultThreadFactory(), "timer", ThreadPriority.NORM, true),
+                this.getLongProperty(PROPERTY_TIMER_TICK_DURATION, HashedWheelTimer.DEFAULT_TICK_DURATION),
+                TimeUnit.MILLISECONDS,
+                (int) this.getLongProperty(PROPERTY_TIMER_WHEEL_SIZE, HashedWheelTimer.DEFAULT_WHEEL_SIZE));
+        this.lingerExecutor = new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ExtendedThreadFactory(Executors.defaultThreadFactory(), "linger", ThreadPriority.NORM, true));
+        this.timerFallbackExecutor = new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ExtendedThreadFactory(Executors.defaultThreadFactory(), "timer-fallback", ThreadPriority.NORM, true));
         this.logger.info("Started Apache Sling Thread Pool Manager");
     }
 
+    private long getLongProperty(final String name, final long defaultValue) {
+        final String value = this.bundleContext.getProperty(name);
+        if ( value != null ) {
+            try {
+                final long result = Long.parseLong(value.trim());
+                if ( result > 0 && result <= Integer.MAX_VALUE ) {
+                    return result;
+                }
+            } catch (final NumberFormatException e) {
+                // fall through
+            }
+            this.logger.warn("Invalid value {} for framework property {}, using {}", value, name, defaultValue);
+        }
+        return defaultValue;
+    }
+
     /**
      * Deactivate this component.
      */
     public void destroy() {
         this.logger.debug("Disposing all thread pools");
+        this.timer.stop();
+        // pending discards find their entries discarded below
+        this.lingerExecutor.shutdown();
+        this.timerFallbackExecutor.shutdown();
 
         final Map<String, Entry> localCopy = new HashMap<String, Entry>(this.pools.size());
         synchronized ( this.pools ) {
             localCopy.putAll(this.pools);
             this.pools.clear();
+            this.poolsByPid.clear();
         }
         for (final Entry entry : localCopy.values()) {
             entry.unregisterMBeanAndMetrics();
-            entry.shutdown();
+            entry.discard();
         }
         this.logger.info("Stopped Apache Sling Thread Pool Manager");
     }
@@ -119,6 +191,48 @@ public class DefaultThreadPoolManager
         if ( props.get(ModifiableThreadPoolConfig.PROPERTY_DAEMON) != null ) {
             config.setDaemon((Boolean)props.get(ModifiableThreadPoolConfig.PROPERTY_DAEMON));
         }
+        if ( props.get(ModifiableThreadPoolConfig.PROPERTY_EXECUTOR_TYPE) != null ) {
+            config.setExecutorType(ExecutorType.valueOf(props.get(ModifiableThreadPoolConfig.PROPERTY_EXECUTOR_TYPE).toString()));
+        }
+        if ( props.get(ModifiableThreadPoolConfig.PROPERTY_QUEUE_TYPE) != null ) {
+            config.setQueueType(QueueType.valueOf(props.get(ModifiableThreadPoolConfig.PROPERTY_QUEUE_TYPE).toString()));
+        }
+        if ( props.get(ModifiableThreadPoolConfig.PROPERTY_EAGER_THREAD_GROWTH) != null ) {
+            config.setEagerThreadGrowth((Boolean)props.get(ModifiableThreadPoolConfig.PROPERTY_EAGER_THREAD_GROWTH));
+        }
+        if ( props.get(ModifiableThreadPoolConfig.PROPERTY_AUTO_SCALING) != null ) {
+            config.setAutoScaling((Boolean)props.get(ModifiableThreadPoolConfig.PROPERTY_AUTO_SCALING));
+        }
+        if ( props.get(ModifiableThreadPoolConfig.PROPERTY_AUTO_SCALING_MAX_POOL_SIZE) != null ) {
+            config.setAutoScalingMaxPoolSize((Integer)props.get(ModifiableThreadPoolConfig.PROPERTY_AUTO_SCALING_MAX_POOL_SIZE));
+        }
+        if ( props.get(ModifiableThreadPoolConfig.PROPERTY_LINGER_TIME) != null ) {
+            config.setLingerTime((Long)props.get(ModifiableThreadPoolConfig.PROPERTY_LINGER_TIME));
+        }
+        if ( props.get(ModifiableThreadPoolConfig.PROPERTY_HIBERNATION_TIME) != null ) {
+            config.setHibernationTime((Long)props.get(ModifiableThreadPoolConfig.PROPERTY_HIBERNATION_TIME));
+        }
+        if ( props.get(ModifiableThreadPoolConfig.PROPERTY_PRESTART_CORE_THREADS) != null ) {
+            config.setPrestartCoreThreads((Boolean)props.get(ModifiableThreadPoolConfig.PROPERTY_PRESTART_CORE_THREADS));
+        }
+        if ( props.get(ModifiableThreadPoolConfig.PROPERTY_WARM_UP_THREADS) != null ) {
+            config.setWarmUpThreads((Boolean)props.get(ModifiableThreadPoolConfig.PROPERTY_WARM_UP_THREADS));
+        }
+        if ( props.get(ModifiableThreadPoolConfig.PROPERTY_THREAD_LOCAL_CLEANUP_MODE) != null ) {
+            config.setThreadLocalCleanupMode(ThreadLocalCleanupMode.valueOf(props.get(ModifiableThreadPoolConfig.PROPERTY_THREAD_LOCAL_CLEANUP_MODE).toString()));
+        }
+        if ( props.get(ModifiableThreadPoolConfig.PROPERTY_THREAD_LOCAL_CLEANUP_INTERVAL) != null ) {
+            config.setThreadLocalCleanupInterval((Integer)props.get(ModifiableThreadPoolConfig.PROPERTY_THREAD_LOCAL_CLEANUP_INTERVAL));
+        }
+        if ( props.get(ModifiableThreadPoolConfig.PROPERTY_THREAD_LOCAL_STATISTICS) != null ) {
+            config.setThreadLocalStatistics((Boolean)props.get(ModifiableThreadPoolConfig.PROPERTY_THREAD_LOCAL_STATISTICS));
+        }
+        final Object allowlist = props.get(ModifiableThreadPoolConfig.PROPERTY_THREAD_LOCAL_ALLOWLIST);
+        if ( allowlist instanceof String[] ) {
+            config.setThreadLocalAllowlist((String[])allowlist);
+        } else if ( allowlist != null ) {
+            config.setThreadLocalAllowlist(allowlist.toString());
+        }
         return config;
     }
 
@@ -127,20 +241,24 @@ public class DefaultThreadPoolManager
      */
     public ThreadPool get(final String name) {
         final String poolName = (name == null ? DEFAULT_THREADPOOL_NAME : name);
-        Entry entry = null;
+        Entry entry = this.pools.get(poolName);
+        ThreadPool threadPool = entry == null ? null : entry.incUsage();
+        if ( threadPool != null ) {
+            return threadPool;
+        }
         boolean created = false;
-        ThreadPool threadPool = null;
         synchronized (this.pools) {
             entry = this.pools.get(poolName);
-            if ( entry == null ) {
+            threadPool = entry == null ? null : entry.incUsage();
+            if ( threadPool == null ) {
                 this.logger.debug("Creating new pool with name {}", poolName);
                 final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
-                entry = new Entry(null, config, poolName, bundleContext);
+                entry = new Entry(null, config, poolName, bundleContext, this.timer, this.lingerExecutor, this::removeDiscarded, false);
                 created = true;
 
+                threadPool = entry.incUsage();
                 this.pools.put(poolName, entry);
             }
-            threadPool = entry.incUsage();
         }
         if (created) {
             entry.registerMBeanAndMetrics();
@@ -153,24 +271,53 @@ public class DefaultThreadPoolManager
      */
     public void release(ThreadPool pool) {
         if ( pool instanceof ThreadPoolFacade ) {
-            Entry removedEntry = null;
-            synchronized ( this.pools ) {
-                final Entry entry = this.pools.get(pool.getName());
-                if ( entry != null ) {
-                    entry.decUsage();
-                    if ( !entry.isUsed() ) {
-                        removedEntry = entry;
-                        this.pools.remove(pool.getName());
-                    }
-                }
+            final Entry entry = this.pools.get(pool.getName());
+            if ( entry != null && entry.decUsage() ) {
+                this.removeDiscarded(entry);
             }
-            if ( removedEntry != null ) {
-                removedEntry.unregisterMBeanAndMetrics();
+        }
+    }
+
+    /**
+     * Removes an entry which has been discarded after its last usage.
+     */
+    private void removeDiscarded(final Entry entry) {
+        synchronized ( this.pools ) {
+            this.pools.remove(entry.getName(), entry);
+            if ( entry.getPid() != null ) {
+                this.poolsByPid.remove(entry.getPid(), entry);
             }
         }
+        entry.unregisterMBeanAndMetrics();
 
     }
 
+    /**
+     * @see org.apache.sling.commons.threads.ThreadPoolManager#getTimer(java.lang.String)
+     */
+    public Timer getTimer(final String name) {
+        return new TimerFacade(this.timer, this.get(name), this.timerFallbackExecutor);
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ThreadPoolManager#release(org.apache.sling.commons.threads.Timer)
+     */
+    public void release(final Timer timer) {
+        if ( timer instanceof TimerFacade ) {
+            final TimerFacade facade = (TimerFacade) timer;
+            if ( facade.release() ) {
+                this.release(facade.getThreadPool());
+            }
+        }
+    }
+
+    /**
+     * Return the shared timer for the web console printer
+     */
+    HashedWheelTimer getSharedTimer() {
+        return this.timer;
+    }
+
     /**
      * @see org.apache.sling.commons.threads.ThreadPoolManager#create(org.apache.sling.commons.threads.ThreadPoolConfig)
      */
@@ -179,6 +326,71 @@ public class DefaultThreadPoolManager
     }
 
     public ThreadPool create(ThreadPoolConfig config, String label) {
+        return this.createEntry(config, label, false);
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ThreadPoolManager#getScheduled(java.lang.String)
+     */
+    public ScheduledThreadPool getScheduled(final String name) {
+        if ( name == null ) {
+            throw new IllegalArgumentException("Name must not be null.");
+        }
+        Entry entry = this.pools.get(name);
+        ThreadPoolFacade threadPool = null;
+        if ( entry != null && entry.useAsScheduled() ) {
+            threadPool = entry.incUsage();
+            if ( threadPool != null ) {
+                return this.asScheduled(threadPool);
+            }
+        }
+        boolean created = false;
+        synchronized (this.pools) {
+            entry = this.pools.get(name);
+            if ( entry != null && !entry.isDiscarded() ) {
+                if ( !entry.useAsScheduled() ) {
+                    throw new IllegalStateException("Thread pool " + name + " is not a scheduled thread pool.");
+                }
+                threadPool = entry.incUsage();
+            }
+            if ( threadPool == null ) {
+                this.logger.debug("Creating new scheduled pool with name {}", name);
+                entry = new Entry(null, new ModifiableThreadPoolConfig(), name, bundleContext, this.timer, this.lingerExecutor, this::removeDiscarded, true);
+                created = true;
+
+                threadPool = entry.incUsage();
+                this.pools.put(name, entry);
+            }
+        }
+        if (created) {
+            entry.registerMBeanAndMetrics();
+        }
+        return this.asScheduled(threadPool);
+    }
+
+    /**
+     * @return the pool as scheduled thread pool
+     * @throws IllegalStateException if the pool has been created before it has been configured as scheduled
+     *         thread pool, the usage of the pool is released in this case
+     */
+    private ScheduledThreadPool asScheduled(final ThreadPoolFacade pool) {
+        if ( pool instanceof ScheduledThreadPoolFacade ) {
+            return (ScheduledThreadPoolFacade) pool;
+        }
+        // the pool is still used with its previous executor type
+        this.release(pool);
+        throw new IllegalStateException("Thread pool " + pool.getName() + " is not a scheduled thread pool yet.");
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ThreadPoolManager#createScheduled(org.apache.sling.commons.threads.ThreadPoolConfig, java.lang.String)
+     */
+    public ScheduledThreadPool createScheduled(ThreadPoolConfig config, String label) {
+        // the effective executor type of a scheduled entry is always scheduled
+        return (ScheduledThreadPoolFacade) this.createEntry(config, label, true);
+    }
+
+    private ThreadPoolFacade createEntry(final ThreadPoolConfig config, String label, final boolean scheduled) {
         if ( config == null ) {
             throw new IllegalArgumentException("Config must not be null.");
         }
@@ -186,22 +398,22 @@ public class DefaultThreadPoolManager
         if ( label == null ) {
             // generate the label by taking the first external frame off the stack trace
             final StackTraceElement[] stackTrace = new Exception().getStackTrace();
-            if ( stackTrace != null && stackTrace.length > 1 ) {
-                if ( stackTrace[1].getClassName().equals( this.getClass().getName() ) ) {
-                    label = stackTrace[2].getClassName();
-                } else {
-                    label = stackTrace[1].getClassName();
+            if ( stackTrace != null ) {
+                for(final StackTraceElement element : stackTrace) {
+                    if ( !element.getClassName().equals( DefaultThreadPoolManager.class.getName() ) ) {
+                        label = element.getClassName();
+                        break;
+                    }
                 }
             }
         }
 
         final String name = "ThreadPool-" + UUID.randomUUID().toString() +
              (label == null ? "" : " (" + label + ")");
-        final Entry entry = new Entry(null, config, name, bundleContext);
-        ThreadPool threadPool = null;
+        final Entry entry = new Entry(null, config, name, bundleContext, this.timer, this.lingerExecutor, this::removeDiscarded, scheduled);
+        final ThreadPoolFacade threadPool = entry.incUsage();
         synchronized ( this.pools ) {
             this.pools.put(name, entry);
-            threadPool = entry.incUsage();
         }
         entry.registerMBeanAndMetrics();
         return threadPool;
@@ -218,9 +430,7 @@ public class DefaultThreadPoolManager
      * Return all configurations for the web console printer
      */
     public Entry[] getConfigurations() {
-        synchronized ( this.pools ) {
-            return this.pools.values().toArray(new Entry[this.pools.size()]);
-        }
+        return this.pools.values().toArray(new Entry[0]);
     }
 
     /**
@@ -238,36 +448,34 @@ public class DefaultThreadPoolManager
         synchronized ( this.pools ) {
             final ThreadPoolConfig config = this.createConfig(properties);
 
-            Entry foundEntry = null;
             // we have to search the config by using the pid first!
-            for (final Entry entry : this.pools.values()) {
-                if ( pid.equals(entry.getPid()) ) {
-                    foundEntry = entry;
-                    break;
-                }
-            }
+            Entry foundEntry = this.poolsByPid.get(pid);
             // if we haven't found it by pid we search by name
             if ( foundEntry == null ) {
-                for (final Entry entry : this.pools.values()) {
-                    if ( name.equals(entry.getName()) ) {
-                        foundEntry = entry;
-                        break;
-                    }
-                }
+                foundEntry = this.pools.get(name);
+            }
+            // an entry discarded with its last usage is about to be removed by the releasing thread
+            if ( foundEntry != null && foundEntry.isDiscarded() ) {
+                foundEntry = null;
             }
 
             if ( foundEntry != null ) {
                 // if the name changed - we have to reregister(!)
                 if ( !name.equals(foundEntry.getName()) ) {
-                    this.pools.remove(foundEntry.getName());
+                    this.pools.remove(foundEntry.getName(), foundEntry);
                     this.pools.put(name, foundEntry);
                 }
+                if ( foundEntry.getPid() != null && !pid.equals(foundEntry.getPid()) ) {
+                    this.poolsByPid.remove(foundEntry.getPid(), foundEntry);
+                }
+                this.poolsByPid.put(pid, foundEntry);
                 // update
                 foundEntry.update(config, name, pid);
             } else {
                 // create
-                createdEntry = new Entry(pid, config, name, bundleContext);
+                createdEntry = new Entry(pid, config, name, bundleContext, this.timer, this.lingerExecutor, this::removeDiscarded, false);
                 this.pools.put(name, createdEntry);
+                this.poolsByPid.put(pid, createdEntry);
             }
         }
         if ( createdEntry != null ) {
@@ -283,17 +491,11 @@ public class DefaultThreadPoolManager
         // we just remove the thread pool from our list of pools and readd it
         // as an anonymous pool with default config(!) if it is used
         synchronized ( this.pools ) {
-            Entry foundEntry = null;
             // we have to search the config by using the pid!
-            for (final Entry entry : this.pools.values()) {
-                if ( pid.equals(entry.getPid()) ) {
-                    foundEntry = entry;
-                    break;
-                }
-            }
+            final Entry foundEntry = this.poolsByPid.remove(pid);
             if ( foundEntry != null ) {
-                this.pools.remove(foundEntry.getName());
-                if ( foundEntry.isUsed() ) {
+                this.pools.remove(foundEntry.getName(), foundEntry);
+                if ( !foundEntry.discardIfUnused() ) {
                     // we register this with a new name
                     final String name = "ThreadPool-" + UUID.randomUUID().toString();
                     foundEntry.update(new ModifiableThreadPoolConfig(), name, null);
@@ -317,7 +519,7 @@ public class DefaultThreadPoolManager
         private volatile String pid;
 
         /** Usage count. */
-        private volatile int count;
+        private final AtomicInteger count = new AtomicInteger();
 
         /** The configuration for the pool. */
         private volatile ThreadPoolConfig config;
@@ -336,23 +538,97 @@ public class DefaultThreadPoolManager
         private BundleContext bundleContext;
 
         /**
-         * This lock protects the counter which is volatile so must be
-         * protected.
+         * Whether the pool has been obtained as scheduled thread pool and must stay one,
+         * only set under the usage lock.
          */
-        private Object usagelock = new Object();
+        private volatile boolean scheduled;
 
-        public Entry(final String pid, final ThreadPoolConfig config, final String name, final BundleContext bundleContext) {
+        /** The timer sampling the pool for auto scaling. */
+        private final HashedWheelTimer timer;
+
+        /** Shuts down the pool at the end of the linger time, off the timer thread. */
+        private final Executor lingerExecutor;
+
+        /** Removes the entry from the manager once it has been discarded after lingering. */
+        private final Consumer<Entry> discardHandler;
+
+        /** The timeout shutting down the unused pool after the linger time, guarded by the usage lock. */
+        private HashedWheelTimer.WheelTimeout lingerTimeout;
+
+        /** The auto scaling controller, null if auto scaling is disabled or the pool is not used. */
+        private volatile AutoScalingController autoScalingController;
+
+        /** The hibernation controller, null if hibernation is disabled or the pool is not used. */
+        private volatile HibernationController hibernationController;
+
+        /**
+         * This lock protects the transitions of the usage count from and to 0,
+         * which create and shut down the pool, and the changes of the pool.
+         */
+        private final Object usagelock = new Object();
+
+        /** Whether the entry has been discarded and must not be used anymore, guarded by the usage lock. */
+        private boolean discarded;
+
+        public Entry(final String pid, final ThreadPoolConfig config, final String name, final BundleContext bundleContext,
+                final HashedWheelTimer timer, final Executor lingerExecutor, final Consumer<Entry> discardHandler,
+                final boolean scheduled) {
             this.pid = pid;
-            this.config = config;
+            this.timer = timer;
+            this.lingerExecutor = lingerExecutor;
+            this.discardHandler = discardHandler;
+            this.scheduled = scheduled;
+            this.config = this.toEffectiveConfig(config);
             this.name = name;
             this.bundleContext = bundleContext;
         }
 
+        /**
+         * A scheduled thread pool must keep the scheduled executor type, whatever is configured.
+         */
+        private ThreadPoolConfig toEffectiveConfig(final ThreadPoolConfig config) {
+            if ( this.scheduled && config.getExecutorType() != ExecutorType.SCHEDULED ) {
+                final ModifiableThreadPoolConfig scheduledConfig = new ModifiableThreadPoolConfig(config);
+                scheduledConfig.setExecutorType(ExecutorType.SCHEDULED);
+                return scheduledConfig;
+            }
+            return config;
+        }
+
+        /**
+         * @return whether the pool supports scheduling tasks
+         */
+        public boolean isScheduled() {
+            return this.config.getExecutorType() == ExecutorType.SCHEDULED;
+        }
+
+        /**
+         * Keeps a pool configured as scheduled a scheduled thread pool for the users of the scheduled pool.
+         * The flag is set under the usage lock, so a concurrent update can't change the executor type
+         * between the check and setting the flag.
+         * @return whether the pool supports scheduling tasks
+         */
+        public boolean useAsScheduled() {
+            if ( this.scheduled ) {
+                return true;
+            }
+            synchronized ( this.usagelock ) {
+                if ( !this.isScheduled() ) {
+                    return false;
+                }
+                this.scheduled = true;
+                return true;
+            }
+        }
+
         public String getPid() {
             return this.pid;
         }
 
         public void shutdown() {
+            this.cancelLinger();
+            this.stopAutoScaling();
+            this.stopHibernation();
             if ( this.pool != null ) {
                 this.pool.shutdown();
                 this.pool = null;
@@ -361,41 +637,275 @@ public class DefaultThreadPoolManager
 
         /**
          * Increments a usage counter and gets the ThreadPoolFacade inside the Entry.
-         * Note this method is not thread safe and must at all time be protected from
-         * multiple threads accessing it at the same time. The counter is volatile and 
-         * hence not atomic in updates.
-         * @return the thread pool Facade instance after reference counting the usage.
+         * While the entry is used the counter is incremented without locking, only the
+         * first usage which creates the pool is synchronized.
+         * @return the thread pool Facade instance after reference counting the usage,
+         *         {@code null} if the entry has been discarded.
          */
         public ThreadPoolFacade incUsage() {
-            if ( pool == null ) {
-                pool = new ThreadPoolFacade(new DefaultThreadPool(name, this.config));
+            for(;;) {
+                final int current = this.count.get();
+                if ( current <= 0 ) {
+                    break;
+                }
+                if ( this.count.compareAndSet(current, current + 1) ) {
+                    return this.pool;
+                }
+            }
+            synchronized ( this.usagelock ) {
+                if ( this.discarded ) {
+                    return null;
+                }
+                if ( this.cancelLinger() ) {
+                    logger.debug("Reusing unused thread pool {}", this.name);
+                }
+                if ( pool == null ) {
+                    final DefaultThreadPool created = new DefaultThreadPool(name, this.config);
+                    // only scheduled pools get a facade with the scheduling methods
+                    pool = this.isScheduled() ? new ScheduledThreadPoolFacade(created) : new ThreadPoolFacade(created);
+                    this.updateAutoScaling();
+                    this.updateHibernation();
+                }
+                this.count.incrementAndGet();
+                return pool;
+            }
+        }
+
+        /**
+         * Decrement the usage counter, and if its zero discard the entry and shut down the thread pool,
+         * unless the pool is kept for the configured linger time. Only the last usage is synchronized.
+         * @return {@code true} if the entry has been discarded
+         */
+        public boolean decUsage() {
+            for(;;) {
+                final int current = this.count.get();
+                if ( current <= 1 ) {
+                    break;
+                }
+                if ( this.count.compareAndSet(current, current - 1) ) {
+                    return false;
+                }
+            }
+            synchronized ( this.usagelock ) {
+                for(;;) {
+                    final int current = this.count.get();
+                    if ( current <= 0 ) {
+                        return false;
+                    }
+                    if ( this.count.compareAndSet(current, current - 1) ) {
+                        if ( current > 1 || this.linger() ) {
+                            return false;
+                        }
+                        this.discarded = true;
+                        this.shutdown();
+                        return true;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Keeps the unused pool for the linger time, so it can be reused if it is requested again.
+         * Note: this method must be called with the usage lock held.
+         * @return {@code true} if the pool is kept, {@code false} if it must be shut down at once
+         */
+        private boolean linger() {
+            final long lingerTime = this.config.getLingerTime();
+            if ( lingerTime <= 0 || this.pool == null ) {
+                return false;
+            }
+            try {
+                // the shutdown might wait for the termination of the pool, which must not block the timer thread
+                this.lingerTimeout = this.timer.newTimeout(this::lingerExpired, this.lingerExecutor,
+                        lingerTime, TimeUnit.MILLISECONDS);
+                return true;
+            } catch (final RejectedExecutionException e) {
+                // the timer is stopped as the manager is shut down
+                return false;
+            }
+        }
+
+        /**
+         * Cancels keeping the unused pool.
+         * Note: this method must be called with the usage lock held.
+         * @return {@code true} if the pool has been kept
+         */
+        private boolean cancelLinger() {
+            final HashedWheelTimer.WheelTimeout timeout = this.lingerTimeout;
+            if ( timeout == null ) {
+                return false;
+            }
+            timeout.cancel();
+            this.lingerTimeout = null;
+            return true;
+        }
+
+        /**
+         * Discards the entry and shuts down the thread pool if it is still unused at the end of the linger time.
+         */
+        private void lingerExpired() {
+            synchronized ( this.usagelock ) {
+                final HashedWheelTimer.WheelTimeout timeout = this.lingerTimeout;
+                // the pool might have been reused and released again in the meantime
+                if ( this.discarded || this.count.get() > 0 || timeout == null || !timeout.isExpired() ) {
+                    return;
+                }
+                logger.debug("Shutting down thread pool {} unused for {} ms", this.name, this.config.getLingerTime());
+                this.discarded = true;
+                this.shutdown();
+            }
+            this.discardHandler.accept(this);
+        }
+
+        /**
+         * Discards the entry and shuts down the thread pool if the entry is not used.
+         * @return {@code true} if the entry has been discarded
+         */
+        public boolean discardIfUnused() {
+            synchronized ( this.usagelock ) {
+                if ( this.count.get() > 0 ) {
+                    return false;
+                }
+                this.discarded = true;
+                this.shutdown();
+                return true;
             }
-            this.count++;
-            return pool;
         }
 
         /**
-         * Decrement the usage counter, and if its zero initiate a shutdown the entry (and the thread pool). 
-         * Note: this method is not thread safe and must at all time be protected from multiple threads
-         * accessing it at the same time. The counter is volatile and hence not atomic in updates.
+         * Discards the entry and shuts down the thread pool.
          */
-        public void decUsage() {
-            this.count--;
-            if ( this.count == 0 ) {
+        public void discard() {
+            synchronized ( this.usagelock ) {
+                this.discarded = true;
                 this.shutdown();
             }
         }
 
-        public void update(final ThreadPoolConfig config, final String name, final String pid) {
+        /**
+         * @return whether the entry has been discarded and must not be used anymore
+         */
+        public boolean isDiscarded() {
+            synchronized ( this.usagelock ) {
+                return this.discarded;
+            }
+        }
+
+        public void update(final ThreadPoolConfig newConfig, final String name, final String pid) {
+            synchronized ( this.usagelock ) {
+                this.doUpdate(newConfig, name, pid);
+            }
+        }
+
+        private void doUpdate(final ThreadPoolConfig newConfig, final String name, final String pid) {
+            final ThreadPoolConfig config = this.toEffectiveConfig(newConfig);
+            if ( config != newConfig ) {
+                logger.debug("Thread pool {} is used as scheduled thread pool, ignoring executor type {}.",
+                        name, newConfig.getExecutorType());
+            }
             if ( this.pool != null ) {
                 this.pool.setName(name);
                 if ( !this.config.equals(config) ) {
-                    this.pool.setPool(new DefaultThreadPool(name, config));
+                    this.pool.setConfiguration(config);
                 }
             }
             this.config = config;
             this.name = name;
             this.pid = pid;
+            this.updateAutoScaling();
+            this.updateHibernation();
+        }
+
+        /**
+         * Starts, updates or stops the auto scaling controller according to the configuration.
+         * Note: this method must be called with the usage lock held.
+         */
+        private void updateAutoScaling() {
+            final ThreadPoolConfig current = this.config;
+            if ( this.pool == null || !current.isAutoScaling() || current.getExecutorType() != ExecutorType.THREAD_POOL ) {
+                this.stopAutoScaling();
+            } else if ( this.autoScalingController != null ) {
+                this.autoScalingController.setBounds(current.getMinPoolSize(), current.getMaxPoolSize(),
+                        current.getAutoScalingMaxPoolSize());
+            } else {
+                final AutoScalingController controller = new AutoScalingController(this.name, this::getExecutor,
+                        current.getMinPoolSize(), current.getMaxPoolSize(), current.getAutoScalingMaxPoolSize());
+                try {
+                    controller.start(this.timer, AutoScalingController.DEFAULT_INTERVAL);
+                    this.autoScalingController = controller;
+                } catch (final RejectedExecutionException e) {
+                    logger.warn("Unable to start auto scaling of thread pool {}", this.name, e);
+                }
+            }
+        }
+
+        private void stopAutoScaling() {
+            final AutoScalingController controller = this.autoScalingController;
+            if ( controller != null ) {
+                controller.stop();
+                this.autoScalingController = null;
+            }
+        }
+
+        /**
+         * Starts, updates or stops the hibernation controller according to the configuration.
+         * Note: this method must be called with the usage lock held.
+         */
+        private void updateHibernation() {
+            final ThreadPoolConfig current = this.config;
+            if ( this.pool == null || current.getHibernationTime() <= 0 || current.getExecutorType() != ExecutorType.THREAD_POOL ) {
+                this.stopHibernation();
+            } else if ( this.hibernationController != null ) {
+                this.hibernationController.setHibernationTime(current.getHibernationTime());
+            } else {
+                final HibernationController controller = new HibernationController(this.name, () -> this.pool,
+                        current.getHibernationTime());
+                try {
+                    controller.start(this.timer);
+                    this.hibernationController = controller;
+                } catch (final RejectedExecutionException e) {
+                    logger.warn("Unable to start hibernation of thread pool {}", this.name, e);
+                }
+            }
+        }
+
+        private void stopHibernation() {
+            final HibernationController controller = this.hibernationController;
+            if ( controller != null ) {
+                controller.stop();
+                this.hibernationController = null;
+            }
+        }
+
+        /**
+         * @return whether the pool has released all its threads after the hibernation time without tasks
+         */
+        public boolean isHibernating() {
+            final ThreadPoolFacade current = this.pool;
+            return current != null && current.isHibernating();
+        }
+
+        /**
+         * @return the number of times the current pool hibernated, -1 if the pool is not used
+         */
+        public long getHibernationCount() {
+            final ThreadPoolFacade current = this.pool;
+            return current != null ? current.getHibernationCount() : -1;
+        }
+
+        /**
+         * @return the number of times the current pool woke up from hibernation, -1 if the pool is not used
+         */
+        public long getWakeUpCount() {
+            final ThreadPoolFacade current = this.pool;
+            return current != null ? current.getWakeUpCount() : -1;
+        }
+
+        /**
+         * @return the auto scaling controller, {@code null} if auto scaling is disabled or the pool is not used
+         */
+        public AutoScalingController getAutoScalingController() {
+            return this.autoScalingController;
         }
 
         public String getName() {
@@ -411,16 +921,39 @@ public class DefaultThreadPoolManager
         }
 
         public boolean isUsed() {
-            return this.count > 0;
+            return this.count.get() > 0;
         }
 
         public ThreadPoolConfig getConfig() {
             return this.config;
         }
 
+        /**
+         * @return the executor of the pool, {@code null} if the pool is not used, has not been used
+         *         for a task yet or is not a {@link ThreadPoolExecutor}
+         */
         public ThreadPoolExecutor getExecutor() {
+            final ThreadPoolFacade current = this.pool;
+            if ( current != null ) {
+                return current.getCreatedExecutor();
+            }
+            return null;
+        }
+
+        /**
+         * @return the executor of the pool, {@code null} if the pool is not used or has not been used for a task yet
+         */
+        public ExecutorService getExecutorService() {
+            final ThreadPoolFacade current = this.pool;
+            if ( current != null ) {
+                return current.getCreatedExecutorService();
+            }
+            return null;
+        }
+
+        public ThreadLocalStatistics getThreadLocalStatistics() {
             if ( this.pool != null ) {
-                return this.pool.getExecutor();
+                return this.pool.getThreadLocalStatistics();
             }
             return null;
         }
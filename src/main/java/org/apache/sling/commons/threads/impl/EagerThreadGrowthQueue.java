@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A work queue which makes a {@link ThreadPoolExecutor} start new threads up to its maximum pool size
+ * before tasks are queued.
+ * <p>
+ * The executor only starts threads above its core pool size if the queue refuses a task, therefore this
+ * queue refuses tasks as long as no thread is idle and the maximum pool size has not been reached.
+ * If the executor can't start a thread after all, because another thread has been started in the meantime,
+ * the rejection handler returned by {@link #wrap(RejectedExecutionHandler)} puts the task into the queue.
+ * <p>
+ * The worker threads are counted by the thread factory returned by {@link #wrap(ThreadFactory)}
+ * and the idle threads while they are waiting in {@link #take()} or {@link #poll(long, TimeUnit)},
+ * so neither requires the lock of the executor. The queue must be bound to the executor
+ * with {@link #setExecutor(ThreadPoolExecutor)}, until then it behaves like the wrapped queue.
+ */
+final class EagerThreadGrowthQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    private final BlockingQueue<Runnable> queue;
+
+    /** the number of running worker threads */
+    private final AtomicInteger threads = new AtomicInteger();
+
+    /** the number of worker threads waiting for a task */
+    private final AtomicInteger idleThreads = new AtomicInteger();
+
+    private volatile ThreadPoolExecutor executor;
+
+    /**
+     * @param queue the queue holding the tasks
+     */
+    EagerThreadGrowthQueue(final BlockingQueue<Runnable> queue) {
+        this.queue = queue;
+    }
+
+    /**
+     * @param executor the executor using this queue
+     */
+    void setExecutor(final ThreadPoolExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param threadFactory the thread factory of the executor
+     * @return a thread factory counting the running worker threads
+     */
+    ThreadFactory wrap(final ThreadFactory threadFactory) {
+        return worker -> threadFactory.newThread(() -> {
+            threads.incrementAndGet();
+            try {
+                worker.run();
+            } finally {
+                threads.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * @param handler the rejection handler of the executor
+     * @return a rejection handler which queues the tasks refused by {@link #offer(Runnable)}
+     *         if no thread could be started for them, and only passes them on to the given handler
+     *         if the executor is shut down or the queue is full
+     */
+    RejectedExecutionHandler wrap(final RejectedExecutionHandler handler) {
+        return (task, executor) -> {
+            if ( executor.isShutdown() || !queue.offer(task) ) {
+                handler.rejectedExecution(task, executor);
+            }
+        };
+    }
+
+    /**
+     * @return the number of running worker threads
+     */
+    int getThreadCount() {
+        return threads.get();
+    }
+
+    /**
+     * Refuses the task if the executor should start a new thread for it instead.
+     */
+    @Override
+    public boolean offer(final Runnable task) {
+        final ThreadPoolExecutor current = this.executor;
+        if ( current != null
+                && idleThreads.get() <= queue.size()
+                && threads.get() < current.getMaximumPoolSize() ) {
+            return false;
+        }
+        return queue.offer(task);
+    }
+
+    @Override
+    public boolean offer(final Runnable task, final long timeout, final TimeUnit unit) throws InterruptedException {
+        return queue.offer(task, timeout, unit);
+    }
+
+    @Override
+    public void put(final Runnable task) throws InterruptedException {
+        queue.put(task);
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        final Runnable task = queue.poll();
+        if ( task != null ) {
+            return task;
+        }
+        idleThreads.incrementAndGet();
+        try {
+            return queue.take();
+        } finally {
+            idleThreads.decrementAndGet();
+        }
+    }
+
+    @Override
+    public Runnable poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final Runnable task = queue.poll();
+        if ( task != null ) {
+            return task;
+        }
+        idleThreads.incrementAndGet();
+        try {
+            return queue.poll(timeout, unit);
+        } finally {
+            idleThreads.decrementAndGet();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        return queue.poll();
+    }
+
+    @Override
+    public Runnable peek() {
+        return queue.peek();
+    }
+
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return queue.remainingCapacity();
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        return queue.remove(o);
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        return queue.contains(o);
+    }
+
+    @Override
+    public Object[] toArray() {
+        return queue.toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(final T[] a) {
+        return queue.toArray(a);
+    }
+
+    @Override
+    public int drainTo(final Collection<? super Runnable> c) {
+        return queue.drainTo(c);
+    }
+
+    @Override
+    public int drainTo(final Collection<? super Runnable> c, final int maxElements) {
+        return queue.drainTo(c, maxElements);
+    }
+
+    @Override
+    public Iterator<Runnable> iterator() {
+        return queue.iterator();
+    }
+
+    @Override
+    public String toString() {
+        return queue.toString();
+    }
+}
@@ -17,6 +17,8 @@
 package org.apache.sling.commons.threads.impl;
 
 import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -26,6 +28,9 @@ import org.apache.sling.commons.threads.ThreadPoolConfig;
 /**
  * This class is responsible to create new Thread instances.
  * It's a very basic implementation.
+ * <p>
+ * It also provides a factory for the worker threads of a {@link ForkJoinPool} with the same
+ * naming, priority and daemon settings, see {@link #asForkJoinWorkerThreadFactory()}.
  *
  */
 public final class ExtendedThreadFactory implements ThreadFactory {
@@ -66,7 +71,16 @@ public final class ExtendedThreadFactory implements ThreadFactory {
         this.threadCounter = new AtomicInteger(1);
     }
 
-    private String normalizeName(final String name) {
+    /**
+     * @param name The name of the thread pool.
+     * @return the prefix of the names of the threads of the pool, followed by a counter.
+     */
+    static String getThreadNamePrefix(final String name) {
+        // same as THREAD_NAME_TEMPLATE without the counter
+        return "sling-" + normalizeName(name) + "-";
+    }
+
+    private static String normalizeName(final String name) {
         final String n = name.toLowerCase(Locale.ENGLISH).replaceAll("\\s+", "-");
         return stripPrefixes(n, "apache-sling-", "sling-");
     }
@@ -91,7 +105,19 @@ public final class ExtendedThreadFactory implements ThreadFactory {
      * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
      */
     public Thread newThread( final Runnable command ) {
-        final Thread thread = this.factory.newThread(command);
+        return configure(this.factory.newThread(command));
+    }
+
+    /**
+     * Returns a factory for fork join worker threads with the name, daemon flag and priority
+     * of this factory. The real factory is not used for these threads.
+     * @return the fork join worker thread factory
+     */
+    public ForkJoinPool.ForkJoinWorkerThreadFactory asForkJoinWorkerThreadFactory() {
+        return pool -> configure(new ForkJoinWorkerThread(pool) {});
+    }
+
+    private <T extends Thread> T configure(final T thread) {
         thread.setName(nextThreadName());
         thread.setPriority( this.priority );
         thread.setDaemon( this.isDaemon );
@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A work queue whose tasks can be handed over to another executor.
+ * <p>
+ * Once the queue is {@link #close() closed}, the worker threads of the {@link ThreadPoolExecutor}
+ * don't get any tasks from it anymore and the queue appears empty to them, so a shut down executor
+ * lets its workers terminate after their running task while the queued tasks are drained with
+ * {@link #drainTo(Collection)}. A worker which is just about to take a task when the queue is closed
+ * may still get it and runs it, the task is not lost.
+ */
+final class HandOverQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    private final BlockingQueue<Runnable> queue;
+
+    private volatile boolean closed;
+
+    /**
+     * @param queue the queue holding the tasks
+     */
+    HandOverQueue(final BlockingQueue<Runnable> queue) {
+        this.queue = queue;
+    }
+
+    /**
+     * @return the queue holding the tasks
+     */
+    BlockingQueue<Runnable> getQueue() {
+        return queue;
+    }
+
+    /**
+     * Stops handing out tasks to the worker threads.
+     */
+    void close() {
+        this.closed = true;
+    }
+
+    @Override
+    public boolean offer(final Runnable task) {
+        return queue.offer(task);
+    }
+
+    @Override
+    public boolean offer(final Runnable task, final long timeout, final TimeUnit unit) throws InterruptedException {
+        return queue.offer(task, timeout, unit);
+    }
+
+    @Override
+    public void put(final Runnable task) throws InterruptedException {
+        queue.put(task);
+    }
+
+    /**
+     * @return the next task, {@code null} once the queue is closed
+     */
+    @Override
+    public Runnable take() throws InterruptedException {
+        return closed ? null : queue.take();
+    }
+
+    @Override
+    public Runnable poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return closed ? null : queue.poll(timeout, unit);
+    }
+
+    @Override
+    public Runnable poll() {
+        return closed ? null : queue.poll();
+    }
+
+    @Override
+    public Runnable peek() {
+        return closed ? null : queue.peek();
+    }
+
+    @Override
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * @return {@code true} if no task is queued or the queue is closed, so the workers of
+     *         a shut down executor terminate
+     */
+    @Override
+    public boolean isEmpty() {
+        return closed || queue.isEmpty();
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return queue.remainingCapacity();
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        return queue.remove(o);
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        return queue.contains(o);
+    }
+
+    @Override
+    public Object[] toArray() {
+        return queue.toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(final T[] a) {
+        return queue.toArray(a);
+    }
+
+    /**
+     * Drains the queued tasks, also once the queue is closed.
+     */
+    @Override
+    public int drainTo(final Collection<? super Runnable> c) {
+        return queue.drainTo(c);
+    }
+
+    @Override
+    public int drainTo(final Collection<? super Runnable> c, final int maxElements) {
+        return queue.drainTo(c, maxElements);
+    }
+
+    @Override
+    public Iterator<Runnable> iterator() {
+        return queue.iterator();
+    }
+
+    @Override
+    public String toString() {
+        return queue.toString();
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.sling.commons.threads.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A hashed wheel timer, scheduling and cancelling a timeout takes constant time.
+ * <p>
+ * The wheel is an array of buckets, each covering one tick. A timeout is put into the bucket
+ * of its deadline together with the number of rounds the wheel has to turn before it expires.
+ * A single worker thread advances the wheel once per tick and hands the expired timeouts
+ * over to their executor, so the tasks never run on the worker thread itself.
+ * <p>
+ * New and cancelled timeouts are passed to the worker thread through lock free queues,
+ * the buckets are only accessed by the worker thread. The worker thread is started
+ * with the first timeout.
+ */
+final class HashedWheelTimer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    /** The default duration of a tick in milliseconds. */
+    static final long DEFAULT_TICK_DURATION = 100;
+
+    /** The default number of buckets of the wheel. */
+    static final int DEFAULT_WHEEL_SIZE = 512;
+
+    /** The maximum number of new timeouts put into the wheel per tick, to keep the ticks short. */
+    private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+    private static final int MAX_WHEEL_SIZE = 1 << 30;
+
+    private final long tickNanos;
+
+    private final Bucket[] wheel;
+
+    private final int mask;
+
+    private final ThreadFactory threadFactory;
+
+    private final Queue<WheelTimeout> newTimeouts = new ConcurrentLinkedQueue<>();
+
+    private final Queue<WheelTimeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong pendingTimeouts = new AtomicLong();
+
+    /** The worker thread, guarded by {@code this}. */
+    private Thread worker;
+
+    /** The start time of the worker thread, the deadlines are relative to it. */
+    private volatile long startTime;
+
+    private volatile boolean stopped;
+
+    /**
+     * @param threadFactory the factory for the worker thread
+     * @param tickDuration the duration of a tick
+     * @param unit the unit of the tick duration
+     * @param wheelSize the number of buckets of the wheel, rounded up to a power of two
+     */
+    HashedWheelTimer(final ThreadFactory threadFactory, final long tickDuration, final TimeUnit unit, final int wheelSize) {
+        if ( tickDuration <= 0 ) {
+            throw new IllegalArgumentException("Tick duration must be greater than 0: " + tickDuration);
+        }
+        if ( wheelSize <= 0 || wheelSize > MAX_WHEEL_SIZE ) {
+            throw new IllegalArgumentException("Wheel size must be between 1 and " + MAX_WHEEL_SIZE + ": " + wheelSize);
+        }
+        this.threadFactory = threadFactory;
+        this.tickNanos = unit.toNanos(tickDuration);
+        final int size = wheelSize == 1 ? 1 : Integer.highestOneBit(wheelSize - 1) << 1;
+        this.wheel = new Bucket[size];
+        for(int i = 0; i < size; i++) {
+            this.wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return the duration of a tick in nanoseconds
+     */
+    long getTickNanos() {
+        return this.tickNanos;
+    }
+
+    /**
+     * @return the number of buckets of the wheel
+     */
+    int getWheelSize() {
+        return this.wheel.length;
+    }
+
+    /**
+     * @return the number of timeouts which have neither expired nor been cancelled
+     */
+    long getPendingTimeouts() {
+        return this.pendingTimeouts.get();
+    }
+
+    /**
+     * Schedules a task.
+     * @param task the task
+     * @param executor the executor running the task once the timeout expires
+     * @param delay the delay
+     * @param unit the unit of the delay
+     * @return the timeout
+     * @throws RejectedExecutionException if the timer is stopped
+     */
+    WheelTimeout newTimeout(final Runnable task, final Executor executor, final long delay, final TimeUnit unit) {
+        if ( task == null || executor == null || unit == null ) {
+            throw new NullPointerException();
+        }
+        start();
+        long deadline = System.nanoTime() + unit.toNanos(delay) - this.startTime;
+        if ( delay > 0 && deadline < 0 ) {
+            // overflow
+            deadline = Long.MAX_VALUE;
+        }
+        final WheelTimeout timeout = new WheelTimeout(this, task, executor, deadline);
+        this.pendingTimeouts.incrementAndGet();
+        this.newTimeouts.add(timeout);
+        return timeout;
+    }
+
+    private synchronized void start() {
+        if ( this.stopped ) {
+            throw new RejectedExecutionException("Timer is stopped.");
+        }
+        if ( this.worker == null ) {
+            this.startTime = System.nanoTime();
+            this.worker = this.threadFactory.newThread(this::run);
+            this.worker.start();
+        }
+    }
+
+    /**
+     * Stops the timer, the pending timeouts do not expire anymore.
+     */
+    void stop() {
+        final Thread thread;
+        synchronized ( this ) {
+            this.stopped = true;
+            thread = this.worker;
+        }
+        if ( thread != null && thread != Thread.currentThread() ) {
+            thread.interrupt();
+            try {
+                thread.join(TimeUnit.NANOSECONDS.toMillis(this.tickNanos) + 1000);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void run() {
+        long tick = 0;
+        while ( !this.stopped ) {
+            final long now = waitForNextTick(tick);
+            if ( now < 0 ) {
+                break;
+            }
+            removeCancelledTimeouts();
+            transferNewTimeouts(tick);
+            this.wheel[(int) (tick & this.mask)].expire(now);
+            tick++;
+        }
+        this.newTimeouts.clear();
+        this.cancelledTimeouts.clear();
+        this.pendingTimeouts.set(0);
+    }
+
+    /**
+     * @return the time relative to the start time, or -1 if the timer has been stopped
+     */
+    private long waitForNextTick(final long tick) {
+        final long deadline = this.tickNanos * (tick + 1);
+        for(;;) {
+            final long now = System.nanoTime() - this.startTime;
+            final long sleepNanos = deadline - now;
+            if ( sleepNanos <= 0 ) {
+                return now;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            } catch (final InterruptedException e) {
+                if ( this.stopped ) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    private void removeCancelledTimeouts() {
+        WheelTimeout timeout;
+        while ( (timeout = this.cancelledTimeouts.poll()) != null ) {
+            if ( timeout.bucket != null ) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferNewTimeouts(final long tick) {
+        for(int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            final WheelTimeout timeout = this.newTimeouts.poll();
+            if ( timeout == null ) {
+                break;
+            }
+            if ( timeout.isCancelled() ) {
+                continue;
+            }
+            final long expiryTick = timeout.deadline / this.tickNanos;
+            timeout.remainingRounds = (expiryTick - tick) / this.wheel.length;
+            // timeouts which are already due expire with the current tick
+            this.wheel[(int) (Math.max(expiryTick, tick) & this.mask)].add(timeout);
+        }
+    }
+
+    /**
+     * A timeout, the linked list fields are only accessed by the worker thread.
+     */
+    static final class WheelTimeout implements Timer.Timeout {
+
+        private static final int STATE_PENDING = 0;
+        private static final int STATE_CANCELLED = 1;
+        private static final int STATE_EXPIRED = 2;
+
+        private static final AtomicIntegerFieldUpdater<WheelTimeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(WheelTimeout.class, "state");
+
+        private final HashedWheelTimer timer;
+
+        private final Runnable task;
+
+        private final Executor executor;
+
+        private final long deadline;
+
+        private volatile int state;
+
+        private long remainingRounds;
+
+        private Bucket bucket;
+
+        private WheelTimeout next;
+
+        private WheelTimeout prev;
+
+        WheelTimeout(final HashedWheelTimer timer, final Runnable task, final Executor executor, final long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.executor = executor;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if ( !STATE.compareAndSet(this, STATE_PENDING, STATE_CANCELLED) ) {
+                return false;
+            }
+            this.timer.pendingTimeouts.decrementAndGet();
+            this.timer.cancelledTimeouts.add(this);
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return this.state == STATE_CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return this.state == STATE_EXPIRED;
+        }
+
+        private void expire() {
+            if ( !STATE.compareAndSet(this, STATE_PENDING, STATE_EXPIRED) ) {
+                return;
+            }
+            this.timer.pendingTimeouts.decrementAndGet();
+            try {
+                this.executor.execute(this.task);
+            } catch (final RejectedExecutionException e) {
+                LOGGER.warn("Unable to execute expired timer task {}", this.task, e);
+            } catch (final RuntimeException | Error e) {
+                LOGGER.error("Timer task {} failed", this.task, e);
+            }
+        }
+    }
+
+    /**
+     * A doubly linked list of timeouts, only accessed by the worker thread.
+     */
+    private static final class Bucket {
+
+        private WheelTimeout head;
+
+        private WheelTimeout tail;
+
+        void add(final WheelTimeout timeout) {
+            timeout.bucket = this;
+            if ( this.head == null ) {
+                this.head = this.tail = timeout;
+            } else {
+                this.tail.next = timeout;
+                timeout.prev = this.tail;
+                this.tail = timeout;
+            }
+        }
+
+        void remove(final WheelTimeout timeout) {
+            final WheelTimeout next = timeout.next;
+            if ( timeout.prev != null ) {
+                timeout.prev.next = next;
+            }
+            if ( next != null ) {
+                next.prev = timeout.prev;
+            }
+            if ( timeout == this.head ) {
+                this.head = next;
+            }
+            if ( timeout == this.tail ) {
+                this.tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        /**
+         * Expires all timeouts of this bucket which are due in the current round.
+         * @param now the current time relative to the start time
+         */
+        void expire(final long now) {
+            WheelTimeout timeout = this.head;
+            while ( timeout != null ) {
+                final WheelTimeout next = timeout.next;
+                if ( timeout.isCancelled() ) {
+                    remove(timeout);
+                } else if ( timeout.remainingRounds <= 0 && timeout.deadline <= now ) {
+                    remove(timeout);
+                    timeout.expire();
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+    }
+}
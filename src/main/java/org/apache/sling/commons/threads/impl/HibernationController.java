@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lets a pool hibernate once it has not received any task for the hibernation time.
+ * <p>
+ * The executor is sampled four times per hibernation time. A task has been received if the
+ * executor has completed tasks since the last sample, or if a thread is busy or tasks are queued.
+ * A hibernating pool wakes up when a task is passed to it, see {@link DefaultThreadPool#wakeUp()},
+ * or at the next sample if a task has been passed to its executor directly.
+ * <p>
+ * The samples are taken on the thread of the {@link HashedWheelTimer}, as they are short. The pool
+ * is obtained from a supplier for each sample, so it may be replaced between samples.
+ */
+final class HibernationController implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HibernationController.class);
+
+    /** The number of samples per hibernation time. */
+    private static final int SAMPLES_PER_HIBERNATION_TIME = 4;
+
+    private final String name;
+
+    private final Supplier<ThreadPoolFacade> poolSupplier;
+
+    private volatile long hibernationTime;
+
+    // the sampling state, only accessed by the sampling thread
+    private ThreadPoolExecutor lastExecutor;
+
+    private long lastCompletedTaskCount;
+
+    private long lastActivityNanos;
+
+    // the schedule
+    private HashedWheelTimer timer;
+
+    private volatile HashedWheelTimer.WheelTimeout timeout;
+
+    private volatile boolean stopped;
+
+    /**
+     * @param name the name of the pool
+     * @param poolSupplier supplies the current pool, possibly {@code null}
+     * @param hibernationTime the time without tasks before the pool hibernates in milliseconds
+     */
+    HibernationController(final String name, final Supplier<ThreadPoolFacade> poolSupplier, final long hibernationTime) {
+        this.name = name;
+        this.poolSupplier = poolSupplier;
+        this.hibernationTime = hibernationTime;
+    }
+
+    /**
+     * @param hibernationTime the time without tasks before the pool hibernates in milliseconds,
+     *                        applied from the next sample on
+     */
+    void setHibernationTime(final long hibernationTime) {
+        this.hibernationTime = hibernationTime;
+    }
+
+    /**
+     * Starts sampling the pool.
+     * @param timer the timer scheduling the samples
+     */
+    synchronized void start(final HashedWheelTimer timer) {
+        this.timer = timer;
+        this.stopped = false;
+        this.schedule();
+    }
+
+    /**
+     * Stops sampling the pool, a hibernating pool keeps hibernating until it receives a task.
+     */
+    synchronized void stop() {
+        this.stopped = true;
+        final HashedWheelTimer.WheelTimeout current = this.timeout;
+        if ( current != null ) {
+            current.cancel();
+            this.timeout = null;
+        }
+    }
+
+    private void schedule() {
+        final long interval = Math.max(1, this.hibernationTime / SAMPLES_PER_HIBERNATION_TIME);
+        // the sample is short, so it runs directly on the timer thread
+        this.timeout = this.timer.newTimeout(this, Runnable::run, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void run() {
+        try {
+            this.sample();
+        } catch (final RuntimeException e) {
+            LOGGER.warn("Unable to sample thread pool [{}]", this.name, e);
+        }
+        synchronized ( this ) {
+            if ( !this.stopped ) {
+                try {
+                    this.schedule();
+                } catch (final RuntimeException e) {
+                    // the timer has been stopped
+                    LOGGER.debug("Stopped hibernation of thread pool [{}]", this.name, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes a sample of the pool and lets it hibernate or wake up if needed.
+     */
+    void sample() {
+        final ThreadPoolFacade pool = this.poolSupplier.get();
+        final ThreadPoolExecutor executor = pool == null ? null : pool.getCreatedExecutor();
+        if ( executor == null || executor.isShutdown() || executor instanceof ScheduledThreadPoolExecutor ) {
+            this.lastExecutor = null;
+            return;
+        }
+        final long now = System.nanoTime();
+        final long completedTaskCount = executor.getCompletedTaskCount();
+        if ( executor != this.lastExecutor || completedTaskCount != this.lastCompletedTaskCount
+                || executor.getActiveCount() > 0 || !executor.getQueue().isEmpty() ) {
+            if ( executor == this.lastExecutor ) {
+                // the task might have been passed to the executor directly
+                pool.wakeUp();
+            }
+            this.lastExecutor = executor;
+            this.lastCompletedTaskCount = completedTaskCount;
+            this.lastActivityNanos = now;
+            return;
+        }
+        if ( !pool.isHibernating() && now - this.lastActivityNanos >= TimeUnit.MILLISECONDS.toNanos(this.hibernationTime) ) {
+            pool.hibernate(this.hibernationTime);
+        }
+    }
+}
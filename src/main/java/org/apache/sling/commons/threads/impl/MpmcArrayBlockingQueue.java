@@ -0,0 +1,435 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded blocking queue for multiple producers and consumers based on a lock free ring buffer.
+ * <p>
+ * Each slot of the ring buffer has a sequence number, which tells producers and consumers whether
+ * the slot is free for the lap of the ring buffer they want to use. A producer claims a slot with
+ * a CAS on the tail counter and publishes the element by advancing the sequence number of the slot,
+ * a consumer does the same with the head counter. Producers and consumers only contend on their own
+ * counter, and {@link #offer(Object)} and {@link #poll()} never block.
+ * <p>
+ * The lock is only used to park consumers while the queue is empty and producers while it is full,
+ * it is only acquired by the other side if there are parked threads.
+ * <p>
+ * Elements other than the head are removed by replacing them with {@code null} in their slot, which consumers
+ * skip. As a consumer claims the element of its slot atomically, an element is either removed or taken,
+ * never both. The slot of a removed element is only freed once the consumers reach it, until then it counts
+ * against the remaining capacity but not against the size. The iterator is a snapshot, removing an element
+ * through it removes the element from its slot if it is still queued.
+ */
+public final class MpmcArrayBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    private final int capacity;
+
+    /** The number of slots, at least two as the sequence numbers can't tell a free from a full slot otherwise */
+    private final int slots;
+
+    private final AtomicReferenceArray<E> elements;
+
+    /** The sequence numbers of the slots */
+    private final AtomicLongArray sequences;
+
+    /** The next position to take from, padded against false sharing with the tail */
+    private final PaddedAtomicLong head = new PaddedAtomicLong();
+
+    /** The next position to put to */
+    private final PaddedAtomicLong tail = new PaddedAtomicLong();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    private final Condition notFull = lock.newCondition();
+
+    private final AtomicInteger waitingConsumers = new AtomicInteger();
+
+    private final AtomicInteger waitingProducers = new AtomicInteger();
+
+    /** The number of removed elements whose slots have not been freed yet */
+    private final AtomicInteger removed = new AtomicInteger();
+
+    /**
+     * @param capacity the capacity of the queue
+     */
+    public MpmcArrayBlockingQueue(final int capacity) {
+        if ( capacity <= 0 ) {
+            throw new IllegalArgumentException("Capacity must be greater than 0: " + capacity);
+        }
+        this.capacity = capacity;
+        this.slots = Math.max(2, capacity);
+        this.elements = new AtomicReferenceArray<>(slots);
+        this.sequences = new AtomicLongArray(slots);
+        for (int i = 0; i < slots; i++) {
+            this.sequences.set(i, i);
+        }
+    }
+
+    @Override
+    public boolean offer(final E e) {
+        if ( e == null ) {
+            throw new NullPointerException();
+        }
+        if ( !enqueue(e) ) {
+            return false;
+        }
+        signal(waitingConsumers, notEmpty);
+        return true;
+    }
+
+    @Override
+    public E poll() {
+        final E e = dequeue();
+        if ( e != null ) {
+            signal(waitingProducers, notFull);
+        }
+        return e;
+    }
+
+    private boolean enqueue(final E e) {
+        long pos = tail.get();
+        for (;;) {
+            final int index = (int) (pos % slots);
+            final long diff = sequences.get(index) - pos;
+            if ( diff == 0 ) {
+                if ( slots != capacity && pos - head.get() >= capacity ) {
+                    // full, only checked if there are more slots than the capacity
+                    return false;
+                }
+                if ( tail.compareAndSet(pos, pos + 1) ) {
+                    elements.lazySet(index, e);
+                    // publishes the element
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if ( diff < 0 ) {
+                // the slot still holds the element of the previous lap, unless it has been removed
+                if ( !skipRemoved() ) {
+                    return false;
+                }
+                pos = tail.get();
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    private E dequeue() {
+        long pos = head.get();
+        for (;;) {
+            final int index = (int) (pos % slots);
+            final long diff = sequences.get(index) - (pos + 1);
+            if ( diff == 0 ) {
+                if ( head.compareAndSet(pos, pos + 1) ) {
+                    // claims the element against concurrent removal
+                    final E e = elements.getAndSet(index, null);
+                    // frees the slot for the next lap
+                    sequences.set(index, pos + slots);
+                    if ( e != null ) {
+                        return e;
+                    }
+                    removed.decrementAndGet();
+                    signal(waitingProducers, notFull);
+                }
+                pos = head.get();
+            } else if ( diff < 0 ) {
+                // empty
+                return null;
+            } else {
+                pos = head.get();
+            }
+        }
+    }
+
+    /**
+     * Frees the slots of removed elements at the head of the queue.
+     * @return {@code true} if at least one slot has been freed
+     */
+    private boolean skipRemoved() {
+        boolean skipped = false;
+        for (;;) {
+            final long pos = head.get();
+            final int index = (int) (pos % slots);
+            // a published slot without element only holds a removed element while the head is not moved
+            if ( sequences.get(index) != pos + 1 || elements.get(index) != null ) {
+                break;
+            }
+            if ( head.compareAndSet(pos, pos + 1) ) {
+                sequences.set(index, pos + slots);
+                removed.decrementAndGet();
+                skipped = true;
+            }
+        }
+        if ( skipped ) {
+            signal(waitingProducers, notFull);
+        }
+        return skipped;
+    }
+
+    /**
+     * Removes the element at the given position if it is still queued.
+     */
+    private boolean removeAt(final long pos, final E e) {
+        final int index = (int) (pos % slots);
+        if ( sequences.get(index) == pos + 1 && elements.compareAndSet(index, e, null) ) {
+            removed.incrementAndGet();
+            skipRemoved();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Wakes up a parked thread of the other side, if there is any.
+     * The counter of parked threads is incremented before they check the queue again,
+     * so either they see the change or this method sees them.
+     */
+    private void signal(final AtomicInteger waiting, final Condition condition) {
+        if ( waiting.get() > 0 ) {
+            lock.lock();
+            try {
+                condition.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void put(final E e) throws InterruptedException {
+        if ( !offer(e) ) {
+            offer(e, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Override
+    public boolean offer(final E e, final long timeout, final TimeUnit unit) throws InterruptedException {
+        if ( offer(e) ) {
+            return true;
+        }
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        waitingProducers.incrementAndGet();
+        try {
+            while ( !enqueue(e) ) {
+                if ( nanos <= 0 ) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+        } finally {
+            waitingProducers.decrementAndGet();
+            lock.unlock();
+        }
+        signal(waitingConsumers, notEmpty);
+        return true;
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        final E e = poll();
+        if ( e != null ) {
+            return e;
+        }
+        return poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public E poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        E e = poll();
+        if ( e != null ) {
+            return e;
+        }
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        waitingConsumers.incrementAndGet();
+        try {
+            while ( (e = dequeue()) == null ) {
+                if ( nanos <= 0 ) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+        } finally {
+            waitingConsumers.decrementAndGet();
+            lock.unlock();
+        }
+        signal(waitingProducers, notFull);
+        return e;
+    }
+
+    @Override
+    public E peek() {
+        for (;;) {
+            final long pos = head.get();
+            final int index = (int) (pos % slots);
+            if ( sequences.get(index) - (pos + 1) < 0 ) {
+                return null;
+            }
+            final E e = elements.get(index);
+            if ( e != null ) {
+                if ( head.get() == pos ) {
+                    return e;
+                }
+            } else {
+                skipRemoved();
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        for (;;) {
+            final long h = head.get();
+            final long t = tail.get();
+            final int r = removed.get();
+            if ( h == head.get() ) {
+                return (int) Math.max(0, Math.min(capacity, t - h - r));
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        // the size may miss an element while a consumer skips a removed one
+        return peek() == null;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        for (;;) {
+            final long h = head.get();
+            final long t = tail.get();
+            if ( h == head.get() ) {
+                return capacity - (int) Math.max(0, Math.min(capacity, t - h));
+            }
+        }
+    }
+
+    @Override
+    public boolean remove(final Object o) {
+        if ( o == null ) {
+            return false;
+        }
+        final long t = tail.get();
+        for (long pos = Math.max(head.get(), t - capacity); pos < t; pos++) {
+            final E e = elements.get((int) (pos % slots));
+            if ( e != null && o.equals(e) && removeAt(pos, e) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int drainTo(final Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(final Collection<? super E> c, final int maxElements) {
+        if ( c == this ) {
+            throw new IllegalArgumentException();
+        }
+        int n = 0;
+        E e;
+        while ( n < maxElements && (e = poll()) != null ) {
+            c.add(e);
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * @return a snapshot of the queued elements, removing an element removes it from its slot if it is still queued
+     */
+    @Override
+    public Iterator<E> iterator() {
+        final List<E> snapshot = new ArrayList<>(size());
+        final List<Long> positions = new ArrayList<>(size());
+        final long t = tail.get();
+        for (long pos = Math.max(head.get(), t - capacity); pos < t; pos++) {
+            final int index = (int) (pos % slots);
+            // only elements which are still in the slot for this position
+            if ( sequences.get(index) == pos + 1 ) {
+                final E e = elements.get(index);
+                if ( e != null ) {
+                    snapshot.add(e);
+                    positions.add(pos);
+                }
+            }
+        }
+        return new Iterator<E>() {
+
+            private int next;
+
+            private int last = -1;
+
+            @Override
+            public boolean hasNext() {
+                return next < snapshot.size();
+            }
+
+            @Override
+            public E next() {
+                if ( !hasNext() ) {
+                    throw new NoSuchElementException();
+                }
+                last = next++;
+                return snapshot.get(last);
+            }
+
+            @Override
+            public void remove() {
+                if ( last < 0 ) {
+                    throw new IllegalStateException();
+                }
+                removeAt(positions.get(last), snapshot.get(last));
+                last = -1;
+            }
+        };
+    }
+
+    /**
+     * A counter on its own cache line.
+     */
+    @SuppressWarnings("unused")
+    private static final class PaddedAtomicLong extends AtomicLong {
+
+        private static final long serialVersionUID = 1L;
+
+        private long p1, p2, p3, p4, p5, p6, p7;
+    }
+}
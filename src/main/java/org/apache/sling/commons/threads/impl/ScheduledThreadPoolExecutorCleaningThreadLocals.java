@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.sling.commons.threads.ThreadPoolConfig.ThreadLocalCleanupMode;
+
+/**
+ * An extension of ScheduledThreadPoolExecutor which automatically gets rid of all {@link ThreadLocal} references
+ * before a thread is going to be reused, like {@link ThreadPoolExecutorCleaningThreadLocals}.
+ * <p>
+ * Each run of a periodic task is treated as a separate task.
+ * @see WorkerThreadLocalCleaners
+ */
+public class ScheduledThreadPoolExecutorCleaningThreadLocals extends ScheduledThreadPoolExecutor implements ThreadLocalCleaningExecutor {
+    private final WorkerThreadLocalCleaners cleaners;
+
+    /**
+     * @param cleanupMode the mode for cleaning up the thread locals, must not be {@link ThreadLocalCleanupMode#NEVER}
+     * @param cleanupInterval the number of tasks between cleanups for {@link ThreadLocalCleanupMode#EVERY_N_TASKS}
+     * @param allowlist the thread locals which survive the cleanup, possibly {@code null}
+     */
+    public ScheduledThreadPoolExecutorCleaningThreadLocals(int corePoolSize,
+            ThreadFactory threadFactory,
+            RejectedExecutionHandler handler,
+            ThreadLocalChangeListener listener,
+            ThreadLocalCleanupMode cleanupMode,
+            int cleanupInterval,
+            ThreadLocalAllowlist allowlist) {
+        super(corePoolSize, threadFactory, handler);
+        this.cleaners = new WorkerThreadLocalCleaners(listener, cleanupMode, cleanupInterval, allowlist);
+        this.setThreadFactory(threadFactory);
+    }
+
+    /**
+     * @return the mode for cleaning up the thread locals
+     */
+    public ThreadLocalCleanupMode getCleanupMode() {
+        return cleaners.getCleanupMode();
+    }
+
+    @Override
+    public void setThreadFactory(ThreadFactory threadFactory) {
+        super.setThreadFactory(cleaners.wrap(threadFactory));
+    }
+
+    @Override
+    public void cleanupBetweenTasks() {
+        cleaners.betweenTasks();
+    }
+
+    @Override
+    public void runAsTask(Runnable task) {
+        cleaners.runAsTask(task);
+    }
+
+    protected void beforeExecute(Thread t, Runnable r) {
+        cleaners.beforeExecute(t);
+        super.beforeExecute(t, r);
+    }
+
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        cleaners.afterExecute();
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.commons.threads.ScheduledThreadPool;
+
+/**
+ * The facade of a scheduled thread pool. It is only created for pools
+ * of the executor type {@link org.apache.sling.commons.threads.ThreadPoolConfig.ExecutorType#SCHEDULED},
+ * which keep this type as long as they are used as scheduled thread pool.
+ */
+public final class ScheduledThreadPoolFacade extends ThreadPoolFacade implements ScheduledThreadPool {
+
+    public ScheduledThreadPoolFacade(final DefaultThreadPool pool) {
+        super(pool);
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ScheduledThreadPool#schedule(java.lang.Runnable, long, java.util.concurrent.TimeUnit)
+     */
+    public ScheduledFuture<?> schedule(final Runnable runnable, final long delay, final TimeUnit unit) {
+        return this.getPool().schedule(runnable, delay, unit);
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ScheduledThreadPool#schedule(java.util.concurrent.Callable, long, java.util.concurrent.TimeUnit)
+     */
+    public <T> ScheduledFuture<T> schedule(final Callable<T> callable, final long delay, final TimeUnit unit) {
+        return this.getPool().schedule(callable, delay, unit);
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ScheduledThreadPool#scheduleAtFixedRate(java.lang.Runnable, long, long, java.util.concurrent.TimeUnit)
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(final Runnable runnable, final long initialDelay, final long period, final TimeUnit unit) {
+        return this.getPool().scheduleAtFixedRate(runnable, initialDelay, period, unit);
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ScheduledThreadPool#scheduleWithFixedDelay(java.lang.Runnable, long, long, java.util.concurrent.TimeUnit)
+     */
+    public ScheduledFuture<?> scheduleWithFixedDelay(final Runnable runnable, final long initialDelay, final long delay, final TimeUnit unit) {
+        return this.getPool().scheduleWithFixedDelay(runnable, initialDelay, delay, unit);
+    }
+}
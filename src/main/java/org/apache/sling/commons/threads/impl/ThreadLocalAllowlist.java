@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides which thread locals added by a task survive the cleanup, e.g. deliberate per thread caches.
+ * <p>
+ * An entry of the allowlist is either a fully qualified class name or a package name followed by {@code .*},
+ * which includes all sub packages. A thread local matches if the class of the thread local, the class of the
+ * supplier of a thread local created with {@link ThreadLocal#withInitial(java.util.function.Supplier)} or the
+ * class of its value matches one of the entries.
+ */
+public final class ThreadLocalAllowlist {
+
+    private final Set<String> classNames = new HashSet<>();
+
+    private final List<String> packagePrefixes = new ArrayList<>();
+
+    /**
+     * @param entries the allowlist entries, {@code null} or empty entries are ignored
+     */
+    public ThreadLocalAllowlist(final String[] entries) {
+        if (entries != null) {
+            for (final String entry : entries) {
+                final String e = entry == null ? "" : entry.trim();
+                if (e.endsWith(".*")) {
+                    packagePrefixes.add(e.substring(0, e.length() - 1));
+                } else if (!e.isEmpty()) {
+                    classNames.add(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if no thread locals are preserved
+     */
+    public boolean isEmpty() {
+        return classNames.isEmpty() && packagePrefixes.isEmpty();
+    }
+
+    /**
+     * @param threadLocal the thread local, possibly {@code null}
+     * @param value the value, possibly {@code null}
+     * @return {@code true} if the thread local should be preserved
+     */
+    public boolean matches(final ThreadLocal<?> threadLocal, final Object value) {
+        if (threadLocal == null) {
+            // stale entry, nothing to preserve
+            return false;
+        }
+        if (matches(threadLocal.getClass())) {
+            return true;
+        }
+        final Object supplier = ThreadLocalMapAccess.supplier(threadLocal);
+        if (supplier != null && matches(supplier.getClass())) {
+            return true;
+        }
+        return value != null && matches(value.getClass());
+    }
+
+    private boolean matches(final Class<?> clazz) {
+        final String name = clazz.getName();
+        if (classNames.contains(name)) {
+            return true;
+        }
+        // lambdas are matched by the class declaring them
+        final int lambda = name.indexOf("$$Lambda");
+        if (lambda > 0 && classNames.contains(name.substring(0, lambda))) {
+            return true;
+        }
+        for (final String prefix : packagePrefixes) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
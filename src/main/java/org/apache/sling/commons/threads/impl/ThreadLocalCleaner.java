@@ -17,8 +17,11 @@
 package org.apache.sling.commons.threads.impl;
 
 import java.lang.ref.Reference;
-import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.apache.sling.commons.threads.impl.ThreadLocalChangeListener.Mode;
 import org.slf4j.Logger;
@@ -26,252 +29,415 @@ import org.slf4j.LoggerFactory;
 
 /** Notifies a {@link ThreadLocalChangeListener} about changes on a thread local storage. In addition it removes all references to variables
  * being added to the thread local storage while the cleaner was running with its {@link cleanup} method.
- * 
+ * <p>
+ * Most tasks never touch a thread local, therefore {@link #cleanup()} first checks whether the thread local maps are
+ * still the same as when they were saved and only diffs and restores them if they have been modified. Empty maps
+ * are not copied at all, restoring them just means clearing them again.
+ * <p>
+ * A cleaner is meant to be reused for many {@link #save()}/{@link #cleanup()} cycles on the same thread, e.g. once per
+ * worker thread of a pool. The copies of the thread local maps are kept in buffers which only grow when a bigger table
+ * needs to be copied, so a cycle does not allocate any objects. It is still linear in the size of the tables: a thread
+ * local map can't tell whether it has been modified, so {@link #save()} copies the table of a non empty map and
+ * {@link #cleanup()} compares it entry by entry.
+ * <p>
+ * Thread locals matching the {@link ThreadLocalAllowlist} are set again after the maps have been restored, so intentional
+ * per thread caches survive the cleanup.
+ *
  * @see <a href="http://www.javaspecialists.eu/archive/Issue229.html">JavaSpecialist.eu - Cleaning ThreadLocals</a> */
 public class ThreadLocalCleaner {
-    
+
     private static final Logger LOG = LoggerFactory.getLogger(ThreadLocalCleaner.class);
-    
-    /* Reflection fields */
-    /** this field is in class {@link ThreadLocal} and is of type {@code ThreadLocal.ThreadLocalMap} */
-    private static final Field threadLocalsField;
-    /** this field is in class {@link ThreadLocal} and is of type {@code ThreadLocal.ThreadLocalMap} */
-    private static final Field inheritableThreadLocalsField;
-    private static final Class<?> threadLocalMapClass;
-    /** this field is in class {@code ThreadLocal.ThreadLocalMap} and contains an array of {@code ThreadLocal.ThreadLocalMap.Entry's} */
-    private static final Field tableField;
-    private static final Class<?> threadLocalMapEntryClass;
-    /** this field is in class {@code ThreadLocal.ThreadLocalMap.Entry} and contains an object referencing the actual thread local
-     * variable */
-    private static final Field threadLocalEntryValueField;
-    /** this field is in the class {@code ThreadLocal.ThreadLocalMap} and contains the number of the entries */
-    private static final Field threadLocalMapSizeField;
-    /** this field is in the class {@code ThreadLocal.ThreadLocalMap} and next resize threshold */
-    private static final Field threadLocalMapThresholdField;
 
-    static  {
-        try {
-            threadLocalsField = field(Thread.class, "threadLocals");
-            inheritableThreadLocalsField = field(Thread.class, "inheritableThreadLocals");
-            threadLocalMapClass = inner(ThreadLocal.class, "ThreadLocalMap");
-            tableField = field(threadLocalMapClass, "table");
-            threadLocalMapEntryClass = inner(threadLocalMapClass, "Entry");
-            threadLocalEntryValueField = field(threadLocalMapEntryClass, "value");
-            threadLocalMapSizeField = field(threadLocalMapClass, "size");
-            threadLocalMapThresholdField = field(threadLocalMapClass, "threshold");
-        } catch (NoSuchFieldException e) {
-            ExceptionInInitializerError error = new ExceptionInInitializerError(
-                    "Unable to access ThreadLocal class information using reflection");
-            error.initCause(e);
-            throw error;
-        }
-    }
-    
     static void validate() {
         LOG.info("Validating reflective access is permitted... ");
-        Reference<?>[] threadLocals = copy(threadLocalsField);
+        Reference<?>[] threadLocals = copy(false);
         if ( threadLocals == null )
             LOG.info("Accessed thread locals of current thread, found none");
         else
             LOG.info("Accessed thread locals of current thread, found {}", threadLocals.length);
     }
 
-    /** @param c the class containing the field
-     * @param name the name of the field
-     * @return the field from the given class with the given name (made accessible)
-     * @throws NoSuchFieldException */
-    private static Field field(Class<?> c, String name)
-            throws NoSuchFieldException {
-        Field field = c.getDeclaredField(name);
-        field.setAccessible(true);
-        return field;
+    private static String name(boolean inheritable) {
+        return inheritable ? "inheritableThreadLocals" : "threadLocals";
     }
 
-    /** @param clazz the class containing the inner class
-     * @param name the name of the inner class
-     * @return the class with the given name, declared as inner class of the given class */
-    private static Class<?> inner(Class<?> clazz, String name) {
-        for (Class<?> c : clazz.getDeclaredClasses()) {
-            if (c.getSimpleName().equals(name)) {
-                return c;
-            }
-        }
-        throw new IllegalStateException(
-                "Could not find inner class " + name + " in " + clazz);
+    private static Reference<?>[] copy(boolean inheritable) {
+        Object threadLocals = ThreadLocalMapAccess.map(Thread.currentThread(), inheritable);
+        if (threadLocals == null)
+            return null;
+        Reference<?>[] table = ThreadLocalMapAccess.table(threadLocals);
+        return Arrays.copyOf(table, table.length);
     }
-    
-    private static Reference<?>[] copy(Field field) {
-        try {
-            Thread thread = Thread.currentThread();
-            Object threadLocals = field.get(thread);
-            if (threadLocals == null)
-                return null;
-            Reference<?>[] table = (Reference<?>[]) tableField.get(threadLocals);
-            return Arrays.copyOf(table, table.length);
-        } catch (IllegalAccessException e) {
-            throw new IllegalStateException("Access denied", e);
-        }
+
+    private final ThreadLocalChangeListener listener;
+    /** the thread locals which survive the cleanup, {@code null} if all are removed */
+    private final ThreadLocalAllowlist allowlist;
+    private final ThreadLocalMapCopy threadLocalsCopy = new ThreadLocalMapCopy(false);
+    private final ThreadLocalMapCopy inheritableThreadLocalsCopy = new ThreadLocalMapCopy(true);
+    private boolean saved;
+    /** reused identity based set of the saved entries for {@link #diff(boolean, Reference[], int)} */
+    private Map<Reference<?>, Boolean> savedEntries;
+    /** the changes collected for a {@link BatchThreadLocalChangeListener} during a cleanup */
+    private List<BatchThreadLocalChangeListener.Change> batch;
+    /** reused list of the thread locals and their values to set again after restoring the maps */
+    private final List<Object> preserved = new ArrayList<>();
+
+    /** Creates a cleaner, {@link #save()} has to be called before the thread locals should be tracked.
+     *
+     * @param listener the listener to notify about changes */
+    public ThreadLocalCleaner(ThreadLocalChangeListener listener) {
+        this(listener, null);
     }
 
-    private static Integer size(Field field, Field sizeField) {
-        try {
-            Thread thread = Thread.currentThread();
-            Object threadLocals = field.get(thread);
-            if (threadLocals == null)
-                return null;
-            return (Integer) sizeField.get(threadLocals);
-        } catch (IllegalAccessException e) {
-            throw new IllegalStateException("Access denied", e);
-        }
+    /** Creates a cleaner, {@link #save()} has to be called before the thread locals should be tracked.
+     *
+     * @param listener the listener to notify about changes
+     * @param allowlist the thread locals which are not removed by a cleanup, possibly {@code null} */
+    public ThreadLocalCleaner(ThreadLocalChangeListener listener, ThreadLocalAllowlist allowlist) {
+        this.listener = listener;
+        this.allowlist = allowlist == null || allowlist.isEmpty() ? null : allowlist;
     }
 
-    private static void restore(Field field, Object[] value, Integer size, Integer threshold) {
-        try {
-            Thread thread = Thread.currentThread();
-            if (value == null) {
-                field.set(thread, null);
-                LOG.debug("Restored {} to a null value", field.getName());
-            } else {
-                final Object threadLocals = field.get(thread);
-                tableField.set(threadLocals, value);
-                threadLocalMapSizeField.set(threadLocals, size);
-                threadLocalMapThresholdField.set(threadLocals, threshold);
-                LOG.debug("Restored {} with to {} references, size {}, threshold {}" ,field.getName(), value.length, size, threshold);
-            }
-        } catch (IllegalAccessException e) {
-            throw new IllegalStateException("Access denied", e);
-        }
+    /** Saves the current state of the thread locals of the current thread, the state is restored by the next call
+     * to {@link #cleanup()} which must happen on the same thread. */
+    public void save() {
+        threadLocalsCopy.save();
+        threadLocalsCopy.debug("saved");
+
+        inheritableThreadLocalsCopy.save();
+        inheritableThreadLocalsCopy.debug("saved");
+        saved = true;
     }
 
-    private final ThreadLocalChangeListener listener;
-    private ThreadLocalMapCopy threadLocalsCopy;
-    private ThreadLocalMapCopy inheritableThreadLocalsCopy;
-    
-    public ThreadLocalCleaner(ThreadLocalChangeListener listener) {
-        this.listener = listener;
-        saveOldThreadLocals();
+    /** @return {@code true} if the thread locals have been saved and not been cleaned up by {@link #cleanup()} yet */
+    public boolean isSaved() {
+        return saved;
     }
 
+    /** Restores the state of the thread locals of the current thread saved by the last call to {@link #save()}. */
     public void cleanup() {
-        // the first two diff calls are only to notify the listener, the actual cleanup is done by restoreOldThreadLocals
+        if ( !saved ) {
+            LOG.warn("Could not clean up thread locals in thread {} as they have not been saved", Thread.currentThread());
+            return;
+        }
+        saved = false;
+        restoreIfChanged(true);
+    }
+
+    /** Restores the state of the thread locals of the current thread saved by the last call to {@link #save()}
+     * only if the thread local maps have been replaced or their size has changed. Other than {@link #cleanup()}
+     * this does not compare the entries, so replaced entries are not detected, and the saved state is kept
+     * for the next call. */
+    public void cleanupIfResized() {
+        if ( !saved ) {
+            LOG.warn("Could not clean up thread locals in thread {} as they have not been saved", Thread.currentThread());
+            return;
+        }
+        if ( restoreIfChanged(false) ) {
+            // the preserved thread locals have been set again, they belong to the saved state from now on
+            save();
+        }
+    }
+
+    /** @return {@code true} if thread locals from the allowlist have been preserved */
+    private boolean restoreIfChanged(boolean compareEntries) {
+        final boolean threadLocalsChanged = threadLocalsCopy.isChanged(compareEntries);
+        final boolean inheritableThreadLocalsChanged = inheritableThreadLocalsCopy.isChanged(compareEntries);
+        if ( !threadLocalsChanged && !inheritableThreadLocalsChanged ) {
+            LOG.debug("Thread locals have not been changed, nothing to clean up");
+            return false;
+        }
+        // the diff calls are only to notify the listener, the actual cleanup is done by restoreOldThreadLocals
         if ( listener.isEnabled() ) {
-            diff(threadLocalsField, threadLocalsCopy.references);
-            diff(inheritableThreadLocalsField, inheritableThreadLocalsCopy.references);
+            if ( listener instanceof BatchThreadLocalChangeListener ) {
+                batch = new ArrayList<>();
+            }
+            try {
+                if ( threadLocalsChanged ) {
+                    diff(false, threadLocalsCopy.references(), threadLocalsCopy.length());
+                }
+                if ( inheritableThreadLocalsChanged ) {
+                    diff(true, inheritableThreadLocalsCopy.references(), inheritableThreadLocalsCopy.length());
+                }
+                if ( batch != null && !batch.isEmpty() ) {
+                    ((BatchThreadLocalChangeListener) listener).changed(Thread.currentThread(), batch);
+                }
+            } finally {
+                batch = null;
+            }
+        }
+        if ( allowlist != null ) {
+            if ( threadLocalsChanged ) {
+                collectPreserved(false, threadLocalsCopy.references(), threadLocalsCopy.length());
+            }
+            if ( inheritableThreadLocalsChanged ) {
+                collectPreserved(true, inheritableThreadLocalsCopy.references(), inheritableThreadLocalsCopy.length());
+            }
         }
-        restoreOldThreadLocals();
+        restoreOldThreadLocals(threadLocalsChanged, inheritableThreadLocalsChanged);
+        return restorePreserved();
     }
 
-    /** Notifies the {@link ThreadLocalChangeListener} about changes on thread local variables for the current thread.
-     * 
-     * @param field is a field containing a ThreadLocalMap
-     * @param backup */
-    private void diff(Field field, Reference<?>[] backup) {
+    /** Collects the thread locals added since the last save which are on the allowlist.
+     *
+     * @param inheritable whether to check the inheritable thread locals
+     * @param backup the saved entries, may be longer than the saved table
+     * @param length the number of saved entries in backup */
+    private void collectPreserved(boolean inheritable, Reference<?>[] backup, int length) {
+        Object threadLocals = ThreadLocalMapAccess.map(Thread.currentThread(), inheritable);
+        if (threadLocals == null) {
+            return;
+        }
+        if (savedEntries == null) {
+            savedEntries = new IdentityHashMap<>(length);
+        }
         try {
-            Thread thread = Thread.currentThread();
-            Object threadLocals = field.get(thread);
-            if (threadLocals == null) {
-                if (backup != null) {
-                    for (Reference<?> reference : backup) {
-                        changed(thread, reference, Mode.REMOVED);
+            for (int i = 0; i < length; i++) {
+                if (backup[i] != null) {
+                    savedEntries.put(backup[i], Boolean.TRUE);
+                }
+            }
+            for (Reference<?> curRef : ThreadLocalMapAccess.table(threadLocals)) {
+                if (curRef != null && !savedEntries.containsKey(curRef)) {
+                    final ThreadLocal<?> threadLocal = (ThreadLocal<?>) curRef.get();
+                    final Object value = ThreadLocalMapAccess.value(curRef);
+                    if (allowlist.matches(threadLocal, value)) {
+                        preserved.add(threadLocal);
+                        preserved.add(value);
                     }
                 }
-                return;
             }
+        } finally {
+            savedEntries.clear();
+        }
+    }
+
+    /** Sets the collected thread locals again after the maps have been restored.
+     *
+     * @return {@code true} if any thread locals have been set */
+    @SuppressWarnings("unchecked")
+    private boolean restorePreserved() {
+        if (preserved.isEmpty()) {
+            return false;
+        }
+        try {
+            for (int i = 0; i < preserved.size(); i += 2) {
+                ((ThreadLocal<Object>) preserved.get(i)).set(preserved.get(i + 1));
+            }
+            LOG.debug("Preserved {} thread locals", preserved.size() / 2);
+        } finally {
+            preserved.clear();
+        }
+        return true;
+    }
+
+    /** Notifies the {@link ThreadLocalChangeListener} about changes on thread local variables for the current thread.
+     * <p>
+     * The saved entries are put into an identity based set, so the diff is linear in the size of the tables.
+     *
+     * @param inheritable whether to diff the inheritable thread locals
+     * @param backup the saved entries, may be longer than the saved table
+     * @param length the number of saved entries in backup */
+    private void diff(boolean inheritable, Reference<?>[] backup, int length) {
+        Thread thread = Thread.currentThread();
+        Object threadLocals = ThreadLocalMapAccess.map(thread, inheritable);
+        if (threadLocals == null) {
+            for (int i = 0; i < length; i++) {
+                changed(thread, backup[i], Mode.REMOVED);
+            }
+            return;
+        }
 
-            Reference<?>[] current = (Reference<?>[]) tableField.get(threadLocals);
-            if (backup == null) {
-                for (Reference<?> reference : current) {
-                    changed(thread, reference, Mode.ADDED);
+        Reference<?>[] current = ThreadLocalMapAccess.table(threadLocals);
+        if (length == 0) {
+            for (Reference<?> reference : current) {
+                changed(thread, reference, Mode.ADDED);
+            }
+            return;
+        }
+        if (savedEntries == null) {
+            savedEntries = new IdentityHashMap<>(length);
+        }
+        try {
+            for (int i = 0; i < length; i++) {
+                if (backup[i] != null) {
+                    savedEntries.put(backup[i], Boolean.TRUE);
                 }
-            } else {
-                // nested loop - both arrays *should* be relatively small
-                next: for (Reference<?> curRef : current) {
-                    if (curRef != null) {
-                        if (curRef.get() == this.threadLocalsCopy ||
-                                curRef.get() == this.inheritableThreadLocalsCopy) {
-                            continue next;
-                        }
-                        for (Reference<?> backupRef : backup) {
-                            if (curRef == backupRef)
-                                continue next;
-                        }
-                        // could not find it in backup - added
-                        changed(thread, curRef, Mode.ADDED);
-                    }
+            }
+            for (Reference<?> curRef : current) {
+                if (curRef != null && savedEntries.remove(curRef) == null) {
+                    // could not find it in backup - added
+                    changed(thread, curRef, Mode.ADDED);
                 }
-                next: for (Reference<?> backupRef : backup) {
-                    for (Reference<?> curRef : current) {
-                        if (curRef == backupRef)
-                            continue next;
+            }
+            if (!savedEntries.isEmpty()) {
+                // all entries which are still in the set could not be found in current - removed
+                for (int i = 0; i < length; i++) {
+                    if (backup[i] != null && savedEntries.containsKey(backup[i])) {
+                        changed(thread, backup[i], Mode.REMOVED);
                     }
-                    // could not find it in current - removed
-                    changed(thread, backupRef, Mode.REMOVED);
                 }
             }
-        } catch (IllegalAccessException e) {
-            throw new IllegalStateException("Access denied", e);
+        } finally {
+            savedEntries.clear();
         }
     }
 
     private void changed(Thread thread, Reference<?> reference,
-            ThreadLocalChangeListener.Mode mode)
-            throws IllegalAccessException {
+            ThreadLocalChangeListener.Mode mode) {
         // just skip null reference entries (may happen if array has been resized)
         if (reference != null) {
-            listener.changed(mode,
-                    thread, (ThreadLocal<?>) reference.get(),
-                    threadLocalEntryValueField.get(reference));
+            final ThreadLocal<?> threadLocal = (ThreadLocal<?>) reference.get();
+            final Object value = ThreadLocalMapAccess.value(reference);
+            if (mode == Mode.ADDED && allowlist != null && allowlist.matches(threadLocal, value)) {
+                // not a leak, the thread local survives the cleanup
+                return;
+            }
+            if (batch != null) {
+                batch.add(new BatchThreadLocalChangeListener.Change(mode, threadLocal, value));
+            } else {
+                listener.changed(mode, thread, threadLocal, value);
+            }
         }
     }
 
-    private void saveOldThreadLocals() {
-        
-        threadLocalsCopy = new ThreadLocalMapCopy(copy(threadLocalsField), 
-                size(threadLocalsField, threadLocalMapSizeField),
-                size(threadLocalsField, threadLocalMapThresholdField));
-        threadLocalsCopy.debug("saved", "Thread locals");
-        
-        inheritableThreadLocalsCopy = new ThreadLocalMapCopy(copy(inheritableThreadLocalsField),
-                size(inheritableThreadLocalsField, threadLocalMapSizeField),
-                size(inheritableThreadLocalsField, threadLocalMapThresholdField));
-        inheritableThreadLocalsCopy.debug("saved", "Inheritable thread locals");
-    }
-
-    private void restoreOldThreadLocals() {
-        try {
-            restore(inheritableThreadLocalsField, inheritableThreadLocalsCopy.references,
-                inheritableThreadLocalsCopy.size, inheritableThreadLocalsCopy.threshold);
-            restore(threadLocalsField, threadLocalsCopy.references,
-                threadLocalsCopy.size, threadLocalsCopy.threshold);
-        } finally {
-            threadLocalsCopy = null;
-            inheritableThreadLocalsCopy = null;
+    private void restoreOldThreadLocals(boolean threadLocalsChanged, boolean inheritableThreadLocalsChanged) {
+        if ( inheritableThreadLocalsChanged ) {
+            inheritableThreadLocalsCopy.restore();
+        }
+        if ( threadLocalsChanged ) {
+            threadLocalsCopy.restore();
         }
     }
 
     /**
-     * Helper class that encapsulates the state from a <tt>ThreadLocalMap</tt>
-     *
+     * Helper class that encapsulates the state from a <tt>ThreadLocalMap</tt>.
+     * <p>
+     * The copy is reused for subsequent saves, the entries are copied into a buffer which is only replaced
+     * if the table of the map has grown beyond its length. The entries are copied with each save, as the
+     * original entries can't be reconstructed once the map has been modified.
      */
     static class ThreadLocalMapCopy {
-        
-        private final Reference<?>[] references;
-        private final Integer size;
-        private final Integer threshold;
-        
-        private ThreadLocalMapCopy(Reference<?>[] references, Integer size, Integer threshold) {
-            this.references = references;
-            this.size = size;
-            this.threshold = threshold;
+
+        private final boolean inheritable;
+        /** the map itself, {@code null} if the thread did not have one */
+        private Object map;
+        /** the table of the map, is restored in place to keep the map's identity */
+        private Reference<?>[] table;
+        /** buffer with a copy of the entries of the table, only the first {@link #length} entries are valid */
+        private Reference<?>[] references;
+        /** the number of entries copied to {@link #references}, {@code 0} if the map was empty or did not exist */
+        private int length;
+        private int size;
+        private int threshold;
+
+        ThreadLocalMapCopy(boolean inheritable) {
+            this.inheritable = inheritable;
         }
-        
-        void debug(String event, String mapName) {
-            if ( references != null ) {
-                ThreadLocalCleaner.LOG.debug("{}: {} {} references, size: {}, threshold: {}",
-                    mapName, event, references.length, size, threshold);
+
+        /** Copies the state of the current thread's map, the entries only if the map is not empty */
+        void save() {
+            final Object threadLocals = ThreadLocalMapAccess.map(Thread.currentThread(), inheritable);
+            final int previousLength = length;
+            map = threadLocals;
+            if (threadLocals == null) {
+                table = null;
+                length = 0;
+                size = 0;
+                threshold = 0;
+            } else {
+                table = ThreadLocalMapAccess.table(threadLocals);
+                size = ThreadLocalMapAccess.size(threadLocals);
+                threshold = ThreadLocalMapAccess.threshold(threadLocals);
+                // the size includes stale entries, so an empty map contains null entries only
+                length = size == 0 ? 0 : table.length;
+                if (length > 0) {
+                    if (references == null || references.length < length) {
+                        references = new Reference<?>[length];
+                    }
+                    System.arraycopy(table, 0, references, 0, length);
+                }
+            }
+            if (previousLength > length) {
+                // don't keep entries of a previous save alive
+                Arrays.fill(references, length, previousLength, null);
+            }
+        }
+
+        /** @return the buffer with the entries of the map when it was saved, only the first {@link #length()} entries are valid */
+        Reference<?>[] references() {
+            return references;
+        }
+
+        /** @return the number of saved entries, {@code 0} if the map was empty or did not exist */
+        int length() {
+            return length;
+        }
+
+        /** @param compareEntries whether to compare the entries if map, table and size are unchanged
+         * @return {@code true} if the map of the current thread has been changed since it has been saved */
+        boolean isChanged(boolean compareEntries) {
+            final Object threadLocals = ThreadLocalMapAccess.map(Thread.currentThread(), inheritable);
+            if (threadLocals != map) {
+                return true;
+            }
+            if (map == null) {
+                return false;
+            }
+            final Reference<?>[] current = ThreadLocalMapAccess.table(map);
+            if (current != table
+                    || ThreadLocalMapAccess.size(map) != size
+                    || ThreadLocalMapAccess.threshold(map) != threshold) {
+                return true;
+            }
+            if (!compareEntries) {
+                return false;
+            }
+            // same table and size, but a stale entry might have been replaced
+            for (int i = 0; i < length; i++) {
+                if (references[i] != current[i]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Restores the map of the current thread to the saved state */
+        void restore() {
+            final Thread thread = Thread.currentThread();
+            if (map == null) {
+                ThreadLocalMapAccess.setMap(thread, inheritable, null);
+                LOG.debug("Restored {} to a null value", name(inheritable));
+                return;
+            }
+            if (ThreadLocalMapAccess.map(thread, inheritable) != map) {
+                ThreadLocalMapAccess.setMap(thread, inheritable, map);
+            }
+            if (ThreadLocalMapAccess.table(map) != table) {
+                // the map has been resized, the old table has not been modified afterwards
+                ThreadLocalMapAccess.setTable(map, table);
+            }
+            if (length > 0) {
+                System.arraycopy(references, 0, table, 0, length);
+            } else {
+                Arrays.fill(table, null);
+            }
+            ThreadLocalMapAccess.setSize(map, size);
+            ThreadLocalMapAccess.setThreshold(map, threshold);
+            debug("restored");
+        }
+
+        void debug(String event) {
+            if ( !LOG.isDebugEnabled() ) {
+                return;
+            }
+            final String mapName = inheritable ? "Inheritable thread locals" : "Thread locals";
+            if ( map != null ) {
+                LOG.debug("{}: {} {} references, size: {}, threshold: {}",
+                    mapName, event, table.length, size, threshold);
             } else {
-                ThreadLocalCleaner.LOG.debug("{}: {} null references", mapName, event);
+                LOG.debug("{}: {} null references", mapName, event);
             }
         }
     }
-}
\ No newline at end of file
+}
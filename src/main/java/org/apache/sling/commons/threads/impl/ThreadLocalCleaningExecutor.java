@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+/**
+ * An executor cleaning up the thread locals of its worker threads after each task.
+ */
+interface ThreadLocalCleaningExecutor {
+
+    /**
+     * Called by a worker thread which runs several tasks as part of a single task of
+     * the executor, after each but the last of these tasks. The thread locals are cleaned
+     * up as if the tasks had been executed separately. Calls from threads which have not
+     * been created by the executor are ignored.
+     */
+    void cleanupBetweenTasks();
+
+    /**
+     * Called by a worker thread of the executor to run a task outside of the tasks of the executor,
+     * for example before it takes the first task. The thread locals changed by the task are cleaned up
+     * afterwards, whatever the cleanup mode of the executor.
+     * @param task the task to run
+     */
+    void runAsTask(Runnable task);
+}
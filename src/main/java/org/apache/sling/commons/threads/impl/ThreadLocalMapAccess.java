@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+
+/**
+ * Low level access to the thread local maps of a {@link Thread} and their internal state.
+ * <p>
+ * This is the Java 8 implementation based on reflection. On Java 9 and later the variant
+ * from {@code META-INF/versions/9} is used instead, which is based on {@code VarHandle}s.
+ */
+final class ThreadLocalMapAccess {
+
+    /** this field is in class {@link Thread} and is of type {@code ThreadLocal.ThreadLocalMap} */
+    private static final Field threadLocalsField;
+    /** this field is in class {@link Thread} and is of type {@code ThreadLocal.ThreadLocalMap} */
+    private static final Field inheritableThreadLocalsField;
+    /** this field is in class {@code ThreadLocal.ThreadLocalMap} and contains an array of {@code ThreadLocal.ThreadLocalMap.Entry's} */
+    private static final Field tableField;
+    /** this field is in class {@code ThreadLocal.ThreadLocalMap.Entry} and contains an object referencing the actual thread local
+     * variable */
+    private static final Field threadLocalEntryValueField;
+    /** this field is in the class {@code ThreadLocal.ThreadLocalMap} and contains the number of the entries */
+    private static final Field threadLocalMapSizeField;
+    /** this field is in the class {@code ThreadLocal.ThreadLocalMap} and next resize threshold */
+    private static final Field threadLocalMapThresholdField;
+    /** this field is in the class {@code ThreadLocal.SuppliedThreadLocal} and contains the supplier of the initial value */
+    private static final Field suppliedThreadLocalSupplierField;
+    private static final Class<?> suppliedThreadLocalClass;
+
+    static {
+        try {
+            threadLocalsField = field(Thread.class, "threadLocals");
+            inheritableThreadLocalsField = field(Thread.class, "inheritableThreadLocals");
+            final Class<?> threadLocalMapClass = inner(ThreadLocal.class, "ThreadLocalMap");
+            tableField = field(threadLocalMapClass, "table");
+            final Class<?> threadLocalMapEntryClass = inner(threadLocalMapClass, "Entry");
+            threadLocalEntryValueField = field(threadLocalMapEntryClass, "value");
+            threadLocalMapSizeField = field(threadLocalMapClass, "size");
+            threadLocalMapThresholdField = field(threadLocalMapClass, "threshold");
+            suppliedThreadLocalClass = inner(ThreadLocal.class, "SuppliedThreadLocal");
+            suppliedThreadLocalSupplierField = field(suppliedThreadLocalClass, "supplier");
+        } catch (NoSuchFieldException e) {
+            ExceptionInInitializerError error = new ExceptionInInitializerError(
+                    "Unable to access ThreadLocal class information using reflection");
+            error.initCause(e);
+            throw error;
+        }
+    }
+
+    private ThreadLocalMapAccess() {
+        // static methods only
+    }
+
+    /** @param c the class containing the field
+     * @param name the name of the field
+     * @return the field from the given class with the given name (made accessible)
+     * @throws NoSuchFieldException */
+    private static Field field(Class<?> c, String name)
+            throws NoSuchFieldException {
+        Field field = c.getDeclaredField(name);
+        field.setAccessible(true);
+        return field;
+    }
+
+    /** @param clazz the class containing the inner class
+     * @param name the name of the inner class
+     * @return the class with the given name, declared as inner class of the given class */
+    private static Class<?> inner(Class<?> clazz, String name) {
+        for (Class<?> c : clazz.getDeclaredClasses()) {
+            if (c.getSimpleName().equals(name)) {
+                return c;
+            }
+        }
+        throw new IllegalStateException(
+                "Could not find inner class " + name + " in " + clazz);
+    }
+
+    /** @param thread the thread
+     * @param inheritable whether to return the map of the inheritable thread locals
+     * @return the {@code ThreadLocal.ThreadLocalMap} of the thread, possibly {@code null} */
+    static Object map(Thread thread, boolean inheritable) {
+        try {
+            return (inheritable ? inheritableThreadLocalsField : threadLocalsField).get(thread);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Access denied", e);
+        }
+    }
+
+    /** @param thread the thread
+     * @param inheritable whether to set the map of the inheritable thread locals
+     * @param map the {@code ThreadLocal.ThreadLocalMap}, possibly {@code null} */
+    static void setMap(Thread thread, boolean inheritable, Object map) {
+        try {
+            (inheritable ? inheritableThreadLocalsField : threadLocalsField).set(thread, map);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Access denied", e);
+        }
+    }
+
+    /** @param map a {@code ThreadLocal.ThreadLocalMap}
+     * @return the entry table of the map */
+    static Reference<?>[] table(Object map) {
+        try {
+            return (Reference<?>[]) tableField.get(map);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Access denied", e);
+        }
+    }
+
+    /** @param map a {@code ThreadLocal.ThreadLocalMap}
+     * @param table the new entry table, must have been obtained from {@link #table(Object)} */
+    static void setTable(Object map, Reference<?>[] table) {
+        try {
+            tableField.set(map, table);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Access denied", e);
+        }
+    }
+
+    /** @param map a {@code ThreadLocal.ThreadLocalMap}
+     * @return the number of entries of the map */
+    static int size(Object map) {
+        try {
+            return threadLocalMapSizeField.getInt(map);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Access denied", e);
+        }
+    }
+
+    /** @param map a {@code ThreadLocal.ThreadLocalMap}
+     * @param size the number of entries */
+    static void setSize(Object map, int size) {
+        try {
+            threadLocalMapSizeField.setInt(map, size);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Access denied", e);
+        }
+    }
+
+    /** @param map a {@code ThreadLocal.ThreadLocalMap}
+     * @return the resize threshold of the map */
+    static int threshold(Object map) {
+        try {
+            return threadLocalMapThresholdField.getInt(map);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Access denied", e);
+        }
+    }
+
+    /** @param map a {@code ThreadLocal.ThreadLocalMap}
+     * @param threshold the resize threshold */
+    static void setThreshold(Object map, int threshold) {
+        try {
+            threadLocalMapThresholdField.setInt(map, threshold);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Access denied", e);
+        }
+    }
+
+    /** @param entry a {@code ThreadLocal.ThreadLocalMap.Entry}
+     * @return the value of the entry */
+    static Object value(Reference<?> entry) {
+        try {
+            return threadLocalEntryValueField.get(entry);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Access denied", e);
+        }
+    }
+
+    /** @param threadLocal a thread local
+     * @return the supplier of a thread local created with {@link ThreadLocal#withInitial(java.util.function.Supplier)},
+     * otherwise {@code null} */
+    static Object supplier(ThreadLocal<?> threadLocal) {
+        if (threadLocal.getClass() != suppliedThreadLocalClass) {
+            return null;
+        }
+        try {
+            return suppliedThreadLocalSupplierField.get(threadLocal);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Access denied", e);
+        }
+    }
+}
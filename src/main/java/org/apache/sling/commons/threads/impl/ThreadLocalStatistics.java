@@ -0,0 +1,325 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates the thread locals which have been added or removed by the tasks of a pool,
+ * keyed by the class of the thread local and the class of its value.
+ * <p>
+ * The counters are {@link LongAdder}s, so the worker threads of a pool hardly contend when updating them.
+ * The distinct thread locals are kept in a concurrent set, which is only written to when a thread local
+ * is added for the first time, so re-adding a thread local doesn't need a lock either.
+ * An entry is <em>re-added</em> if the same thread local instance has been added by an earlier task
+ * already, i.e. it is initialized again after each cleanup.
+ */
+public class ThreadLocalStatistics implements BatchThreadLocalChangeListener {
+
+    private final ConcurrentMap<Key, Counters> counters = new ConcurrentHashMap<>();
+
+    /** the number of tasks which changed thread locals */
+    private final LongAdder tasks = new LongAdder();
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void changed(final Thread thread, final List<Change> changes) {
+        tasks.increment();
+        for (final Change change : changes) {
+            final Key key = new Key(change.getThreadLocal(), change.getValue());
+            Counters c = counters.get(key);
+            if (c == null) {
+                c = counters.computeIfAbsent(key, k -> new Counters());
+            }
+            if (change.getMode() == Mode.ADDED) {
+                c.added(change.getThreadLocal());
+            } else {
+                c.removed.increment();
+            }
+        }
+    }
+
+    /**
+     * @return the number of tasks which changed thread locals
+     */
+    public long getTaskCount() {
+        return tasks.sum();
+    }
+
+    /**
+     * @return the number of thread locals added by tasks
+     */
+    public long getAddedCount() {
+        long sum = 0;
+        for (final Counters c : counters.values()) {
+            sum += c.added.sum();
+        }
+        return sum;
+    }
+
+    /**
+     * @return the number of thread locals removed by tasks
+     */
+    public long getRemovedCount() {
+        long sum = 0;
+        for (final Counters c : counters.values()) {
+            sum += c.removed.sum();
+        }
+        return sum;
+    }
+
+    /**
+     * @return the number of thread locals added by tasks which have been added by an earlier task already
+     */
+    public long getReAddedCount() {
+        long sum = 0;
+        for (final Counters c : counters.values()) {
+            sum += c.getReAdded();
+        }
+        return sum;
+    }
+
+    /**
+     * @param poolSize the number of threads of the pool
+     * @return the estimated number of entries the threads of the pool would retain without cleanup,
+     * which is the number of distinct thread locals added by tasks for each thread
+     */
+    public long getEstimatedRetainedEntries(final int poolSize) {
+        long sum = 0;
+        for (final Counters c : counters.values()) {
+            sum += c.getDistinct();
+        }
+        return sum * Math.max(poolSize, 0);
+    }
+
+    /**
+     * @param limit the maximum number of entries
+     * @return the entries with the most added thread locals, most added first
+     */
+    public List<Entry> getTopEntries(final int limit) {
+        final List<Entry> entries = new ArrayList<>();
+        for (final Map.Entry<Key, Counters> e : counters.entrySet()) {
+            entries.add(new Entry(e.getKey(), e.getValue()));
+        }
+        Collections.sort(entries, Comparator.comparingLong(Entry::getAdded).reversed());
+        return entries.size() > limit ? entries.subList(0, limit) : entries;
+    }
+
+    /**
+     * Resets all counters.
+     */
+    public void reset() {
+        counters.clear();
+        tasks.reset();
+    }
+
+    private static final class Key {
+
+        private final String threadLocalClass;
+        private final String valueClass;
+
+        Key(final ThreadLocal<?> threadLocal, final Object value) {
+            this.threadLocalClass = threadLocal == null ? "<null>" : threadLocal.getClass().getName();
+            this.valueClass = value == null ? "<null>" : value.getClass().getName();
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * threadLocalClass.hashCode() + valueClass.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key o = (Key) obj;
+            return threadLocalClass.equals(o.threadLocalClass) && valueClass.equals(o.valueClass);
+        }
+    }
+
+    private static final class Counters {
+
+        final LongAdder added = new LongAdder();
+        final LongAdder removed = new LongAdder();
+        /** the thread locals added so far, weakly referenced and compared by identity */
+        private final ConcurrentMap<ThreadLocalKey, Boolean> threadLocals = new ConcurrentHashMap<>();
+        /** the keys of the thread locals which have been garbage collected */
+        private final ReferenceQueue<ThreadLocal<?>> collected = new ReferenceQueue<>();
+
+        void added(final ThreadLocal<?> threadLocal) {
+            added.increment();
+            // the lookup doesn't lock, only the first occurrence is put into the map
+            if (threadLocal != null && !threadLocals.containsKey(new StrongThreadLocalKey(threadLocal))) {
+                expungeCollected();
+                threadLocals.putIfAbsent(new WeakThreadLocalKey(threadLocal, collected), Boolean.TRUE);
+            }
+        }
+
+        long getDistinct() {
+            expungeCollected();
+            return threadLocals.size();
+        }
+
+        long getReAdded() {
+            return Math.max(added.sum() - getDistinct(), 0);
+        }
+
+        private void expungeCollected() {
+            Reference<?> key;
+            while ((key = collected.poll()) != null) {
+                threadLocals.remove(key);
+            }
+        }
+    }
+
+    /**
+     * A key comparing thread locals by identity, the weak keys are stored in the map
+     * and the strong keys are used for the lookups.
+     */
+    private interface ThreadLocalKey {
+
+        ThreadLocal<?> threadLocal();
+
+        static boolean equals(final ThreadLocalKey key, final Object obj) {
+            if (obj == key) {
+                return true;
+            }
+            if (!(obj instanceof ThreadLocalKey)) {
+                return false;
+            }
+            final ThreadLocal<?> threadLocal = key.threadLocal();
+            return threadLocal != null && threadLocal == ((ThreadLocalKey) obj).threadLocal();
+        }
+    }
+
+    private static final class StrongThreadLocalKey implements ThreadLocalKey {
+
+        private final ThreadLocal<?> threadLocal;
+
+        StrongThreadLocalKey(final ThreadLocal<?> threadLocal) {
+            this.threadLocal = threadLocal;
+        }
+
+        @Override
+        public ThreadLocal<?> threadLocal() {
+            return threadLocal;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(threadLocal);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return ThreadLocalKey.equals(this, obj);
+        }
+    }
+
+    private static final class WeakThreadLocalKey extends WeakReference<ThreadLocal<?>> implements ThreadLocalKey {
+
+        private final int hash;
+
+        WeakThreadLocalKey(final ThreadLocal<?> threadLocal, final ReferenceQueue<ThreadLocal<?>> queue) {
+            super(threadLocal, queue);
+            this.hash = System.identityHashCode(threadLocal);
+        }
+
+        @Override
+        public ThreadLocal<?> threadLocal() {
+            return get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return ThreadLocalKey.equals(this, obj);
+        }
+    }
+
+    /**
+     * The statistics for a combination of thread local class and value class.
+     */
+    public static final class Entry {
+
+        private final String threadLocalClass;
+        private final String valueClass;
+        private final long added;
+        private final long removed;
+        private final long reAdded;
+        private final long distinct;
+
+        Entry(final Key key, final Counters counters) {
+            this.threadLocalClass = key.threadLocalClass;
+            this.valueClass = key.valueClass;
+            this.added = counters.added.sum();
+            this.removed = counters.removed.sum();
+            this.distinct = counters.getDistinct();
+            this.reAdded = Math.max(added - distinct, 0);
+        }
+
+        public String getThreadLocalClass() {
+            return threadLocalClass;
+        }
+
+        public String getValueClass() {
+            return valueClass;
+        }
+
+        public long getAdded() {
+            return added;
+        }
+
+        public long getRemoved() {
+            return removed;
+        }
+
+        public long getReAdded() {
+            return reAdded;
+        }
+
+        /** @return the number of distinct thread locals which have been added */
+        public long getDistinct() {
+            return distinct;
+        }
+
+        @Override
+        public String toString() {
+            return threadLocalClass + " (value " + valueClass + "): added=" + added + ", removed=" + removed
+                    + ", re-added=" + reAdded + ", distinct=" + distinct;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.sling.commons.threads.ThreadPoolConfig.ThreadPoolPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An executor which starts a new thread for each task, meant to be used with virtual threads.
+ * <p>
+ * The number of concurrently running tasks is limited to the max pool size, further tasks are queued
+ * up to the queue size (a negative size means unbounded). If the queue is full the block policy is applied.
+ * As each task gets a fresh thread, thread locals don't have to be cleaned up.
+ */
+public class ThreadPerTaskExecutor extends AbstractExecutorService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ThreadPerTaskExecutor.class);
+
+    private final ThreadFactory threadFactory;
+
+    private final ThreadPoolPolicy blockPolicy;
+
+    /** the permits for running tasks */
+    private final Semaphore permits;
+
+    private final int maxConcurrency;
+
+    /** the maximum number of queued tasks, negative for unbounded */
+    private final int queueSize;
+
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final Set<Thread> running = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder completed = new LongAdder();
+
+    private final AtomicInteger largest = new AtomicInteger();
+
+    private final Object terminationLock = new Object();
+
+    private volatile boolean shutdown;
+
+    /**
+     * @param threadFactory the factory creating a thread per task
+     * @param maxConcurrency the maximum number of concurrently running tasks
+     * @param queueSize the maximum number of waiting tasks, negative for unbounded
+     * @param blockPolicy the policy if a task can neither be run nor queued
+     */
+    public ThreadPerTaskExecutor(final ThreadFactory threadFactory,
+            final int maxConcurrency,
+            final int queueSize,
+            final ThreadPoolPolicy blockPolicy) {
+        this.threadFactory = threadFactory;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.permits = new Semaphore(this.maxConcurrency);
+        this.queueSize = queueSize;
+        this.blockPolicy = blockPolicy;
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        if (shutdown) {
+            throw new RejectedExecutionException("Executor has been shut down");
+        }
+        if (permits.tryAcquire()) {
+            start(command);
+        } else if (offer(command)) {
+            // a task might have finished in between
+            drain();
+        } else {
+            reject(command);
+        }
+    }
+
+    /**
+     * Queues a task handed over from another executor without applying the block policy,
+     * even if the queue is full, so the task is neither run by the calling thread nor dropped.
+     * @param command the handed over task
+     */
+    void handOver(final Runnable command) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Executor has been shut down");
+        }
+        queued.incrementAndGet();
+        queue.offer(command);
+        drain();
+    }
+
+    private boolean offer(final Runnable command) {
+        if (queueSize < 0) {
+            queued.incrementAndGet();
+        } else {
+            int current;
+            do {
+                current = queued.get();
+                if (current >= queueSize) {
+                    return false;
+                }
+            } while (!queued.compareAndSet(current, current + 1));
+        }
+        queue.offer(command);
+        return true;
+    }
+
+    private Runnable poll() {
+        final Runnable command = queue.poll();
+        if (command != null) {
+            queued.decrementAndGet();
+        }
+        return command;
+    }
+
+    private void reject(final Runnable command) {
+        switch (blockPolicy) {
+            case DISCARD :
+                DefaultThreadPool.discarded(command);
+                break;
+            case DISCARDOLDEST :
+                // without a queued task there is nothing to make room for, so the task is discarded
+                final Runnable oldest = poll();
+                if (oldest != null) {
+                    DefaultThreadPool.discarded(oldest);
+                    execute(command);
+                } else {
+                    DefaultThreadPool.discarded(command);
+                }
+                break;
+            case RUN :
+                command.run();
+                break;
+            case ABORT :
+            default :
+                throw new RejectedExecutionException("Task " + command + " rejected from " + this);
+        }
+    }
+
+    /**
+     * Starts queued tasks as long as permits are available. A queued task whose thread can't be started
+     * is dropped and its future is cancelled, as the caller which queued it has already returned.
+     * The remaining tasks are only tried if no task is running anymore, which would drain the queue later.
+     */
+    private void drain() {
+        while (!queue.isEmpty() && permits.tryAcquire()) {
+            final Runnable command = poll();
+            if (command == null) {
+                permits.release();
+            } else {
+                try {
+                    start(command);
+                } catch (RuntimeException | Error e) {
+                    LOGGER.warn("Could not start a thread for queued task {}, the task is dropped.", command, e);
+                    if (command instanceof Future) {
+                        ((Future<?>) command).cancel(false);
+                    }
+                    DefaultThreadPool.discarded(command);
+                    if (!running.isEmpty()) {
+                        // a running task drains the queue again once it has finished
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Starts a thread for the command, a permit must have been acquired before */
+    private void start(final Runnable command) {
+        Thread thread = null;
+        try {
+            thread = threadFactory.newThread(() -> run(command));
+            if (thread == null) {
+                throw new RejectedExecutionException("Thread factory did not create a thread");
+            }
+            running.add(thread);
+            thread.start();
+        } catch (RuntimeException | Error e) {
+            // a thread which could not be started never removes itself
+            if (thread != null) {
+                running.remove(thread);
+            }
+            permits.release();
+            throw e;
+        }
+        final int active = running.size();
+        largest.accumulateAndGet(active, Math::max);
+    }
+
+    private void run(final Runnable command) {
+        try {
+            command.run();
+        } finally {
+            try {
+                completed.increment();
+                running.remove(Thread.currentThread());
+                permits.release();
+                drain();
+            } finally {
+                synchronized (terminationLock) {
+                    terminationLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        synchronized (terminationLock) {
+            terminationLock.notifyAll();
+        }
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        final List<Runnable> pending = new ArrayList<>();
+        Runnable command;
+        while ((command = poll()) != null) {
+            pending.add(command);
+        }
+        for (final Thread thread : running) {
+            thread.interrupt();
+        }
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && running.isEmpty() && queue.isEmpty();
+    }
+
+    @Override
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (terminationLock) {
+            while (!isTerminated()) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(terminationLock, remaining);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return the number of running tasks
+     */
+    public int getActiveCount() {
+        return running.size();
+    }
+
+    /**
+     * @return the number of completed tasks
+     */
+    public long getCompletedTaskCount() {
+        return completed.sum();
+    }
+
+    /**
+     * @return the largest number of concurrently running tasks
+     */
+    public int getLargestPoolSize() {
+        return largest.get();
+    }
+
+    /**
+     * @return the maximum number of concurrently running tasks
+     */
+    public int getMaximumPoolSize() {
+        return maxConcurrency;
+    }
+
+    /**
+     * @return the number of queued tasks
+     */
+    public int getQueueSize() {
+        return queued.get();
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link CompletableFuture} whose dependent async stages run on a thread pool
+ * instead of the common fork join pool, if no executor is passed to them.
+ * <p>
+ * {@link #defaultExecutor()} and {@link #newIncompleteFuture()} override the methods
+ * introduced with Java 9, they can't be annotated with {@code @Override} as the bundle
+ * is compiled for Java 8. On Java 8 the dependent async stages run on the common
+ * fork join pool.
+ */
+final class ThreadPoolCompletableFuture<T> extends CompletableFuture<T> {
+
+    private final Executor defaultExecutor;
+
+    ThreadPoolCompletableFuture(final Executor defaultExecutor) {
+        this.defaultExecutor = defaultExecutor;
+    }
+
+    /**
+     * @return the thread pool running the dependent async stages
+     */
+    public Executor defaultExecutor() {
+        return this.defaultExecutor;
+    }
+
+    /**
+     * @return a new incomplete future for a dependent stage, using the same thread pool
+     */
+    public <U> CompletableFuture<U> newIncompleteFuture() {
+        return new ThreadPoolCompletableFuture<>(this.defaultExecutor);
+    }
+}
@@ -16,28 +16,27 @@
  */
 package org.apache.sling.commons.threads.impl;
 
-import java.lang.invoke.MethodHandles;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import org.apache.sling.commons.threads.ThreadPoolConfig.ThreadLocalCleanupMode;
 
 /** 
  * An extension of ThreadPoolExecutor which automatically gets rid of all {@link ThreadLocal} references before a thread is going to be reused.
+ * <p>
+ * Each worker thread gets its own {@link ThreadLocalCleaner} when it is started, which is reused for all tasks executed
+ * by that worker and dropped once the worker terminates. To achieve this the thread factory is wrapped,
+ * see {@link WorkerThreadLocalCleaners}.
+ * <p>
+ * How often the thread locals are cleaned up depends on the {@link ThreadLocalCleanupMode}, {@link ThreadLocalCleanupMode#NEVER}
+ * is not supported by this class, a plain {@link ThreadPoolExecutor} should be used instead.
  * @see ThreadLocalCleaner
  */
-public class ThreadPoolExecutorCleaningThreadLocals extends ThreadPoolExecutor {
-    private final ThreadLocalChangeListener listener;
-
-    private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
-
-    private final ConcurrentMap<Thread, ThreadLocalCleaner> cleaners = new ConcurrentHashMap<>();
+public class ThreadPoolExecutorCleaningThreadLocals extends ThreadPoolExecutor implements ThreadLocalCleaningExecutor {
+    private final WorkerThreadLocalCleaners cleaners;
     
     public ThreadPoolExecutorCleaningThreadLocals(int corePoolSize,
             int maximumPoolSize,
@@ -47,29 +46,61 @@ public class ThreadPoolExecutorCleaningThreadLocals extends ThreadPoolExecutor {
             ThreadFactory threadFactory,
             RejectedExecutionHandler handler,
             ThreadLocalChangeListener listener) {
+        this(corePoolSize, maximumPoolSize, keepAliveTime, unit,
+                workQueue, threadFactory, handler, listener, ThreadLocalCleanupMode.ALWAYS, 1, null);
+    }
+
+    /**
+     * @param cleanupMode the mode for cleaning up the thread locals, must not be {@link ThreadLocalCleanupMode#NEVER}
+     * @param cleanupInterval the number of tasks between cleanups for {@link ThreadLocalCleanupMode#EVERY_N_TASKS}
+     * @param allowlist the thread locals which survive the cleanup, possibly {@code null}
+     */
+    public ThreadPoolExecutorCleaningThreadLocals(int corePoolSize,
+            int maximumPoolSize,
+            long keepAliveTime,
+            TimeUnit unit,
+            BlockingQueue<Runnable> workQueue,
+            ThreadFactory threadFactory,
+            RejectedExecutionHandler handler,
+            ThreadLocalChangeListener listener,
+            ThreadLocalCleanupMode cleanupMode,
+            int cleanupInterval,
+            ThreadLocalAllowlist allowlist) {
         super(corePoolSize, maximumPoolSize, keepAliveTime, unit, 
                 workQueue, threadFactory, handler);
-        ThreadLocalCleaner.validate();
-        this.listener = listener;
+        this.cleaners = new WorkerThreadLocalCleaners(listener, cleanupMode, cleanupInterval, allowlist);
+        this.setThreadFactory(threadFactory);
+    }
+
+    /**
+     * @return the mode for cleaning up the thread locals
+     */
+    public ThreadLocalCleanupMode getCleanupMode() {
+        return cleaners.getCleanupMode();
+    }
+
+    @Override
+    public void setThreadFactory(ThreadFactory threadFactory) {
+        super.setThreadFactory(cleaners.wrap(threadFactory));
+    }
+
+    @Override
+    public void cleanupBetweenTasks() {
+        cleaners.betweenTasks();
+    }
+
+    @Override
+    public void runAsTask(Runnable task) {
+        cleaners.runAsTask(task);
     }
 
     protected void beforeExecute(Thread t, Runnable r) {
-        LOGGER.debug("Collecting changes to ThreadLocal for thread {} from now on...", t);
-        ThreadLocalCleaner cleaner = new ThreadLocalCleaner(listener);
-        cleaners.put(t, cleaner);
+        cleaners.beforeExecute(t);
         super.beforeExecute(t, r);
     }
 
     protected void afterExecute(Runnable r, Throwable t) {
         super.afterExecute(r, t);
-        
-        LOGGER.debug("Cleaning up thread locals for thread {}...", Thread.currentThread());
-        ThreadLocalCleaner cleaner = cleaners.remove(Thread.currentThread());
-
-        if (cleaner != null) {
-            cleaner.cleanup();
-        } else {
-            LOGGER.warn("Could not clean up thread locals in thread {} as the cleaner was not set up correctly", Thread.currentThread());
-        }
+        cleaners.afterExecute();
     }
 }
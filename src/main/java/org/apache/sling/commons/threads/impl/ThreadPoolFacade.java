@@ -16,9 +16,15 @@
  */
 package org.apache.sling.commons.threads.impl;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 import org.apache.sling.commons.threads.ThreadPool;
 import org.apache.sling.commons.threads.ThreadPoolConfig;
@@ -28,8 +34,10 @@ import org.apache.sling.commons.threads.ThreadPoolConfig;
  * This is a facade which is delivered to clients. It allows
  * to change the thread pool behind the facade without affecting
  * the client.
+ * <p>
+ * Scheduled thread pools are delivered as {@link ScheduledThreadPoolFacade}.
  */
-public final class ThreadPoolFacade implements ThreadPool {
+public class ThreadPoolFacade implements ThreadPool {
 
     /** The thread pool */
     private volatile DefaultThreadPool delegatee;
@@ -63,6 +71,37 @@ public final class ThreadPoolFacade implements ThreadPool {
         return this.delegatee.submit(runnable);
     }
 
+    /**
+     * @see org.apache.sling.commons.threads.ThreadPool#submitAll(java.util.Collection)
+     */
+    public <T> List<Future<T>> submitAll(final Collection<? extends Callable<T>> tasks) {
+        return this.delegatee.submitAll(tasks);
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.ThreadPool#invokeAll(java.util.Collection, long, java.util.concurrent.TimeUnit)
+     */
+    public <T> List<Future<T>> invokeAll(final Collection<? extends Callable<T>> tasks, final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        return this.delegatee.invokeAll(tasks, timeout, unit);
+    }
+
+    /**
+     * The dependent async stages run on this facade, so they use the current pool.
+     * @see org.apache.sling.commons.threads.ThreadPool#submitAsync(java.util.function.Supplier)
+     */
+    public <T> CompletableFuture<T> submitAsync(final Supplier<T> supplier) {
+        return this.delegatee.submitAsync(supplier, this);
+    }
+
+    /**
+     * The dependent async stages run on this facade, so they use the current pool.
+     * @see org.apache.sling.commons.threads.ThreadPool#runAsync(java.lang.Runnable)
+     */
+    public CompletableFuture<Void> runAsync(final Runnable runnable) {
+        return this.delegatee.runAsync(runnable, this);
+    }
+
     /**
      * @see org.apache.sling.commons.threads.ThreadPool#getConfiguration()
      */
@@ -92,15 +131,69 @@ public final class ThreadPoolFacade implements ThreadPool {
     }
 
     /**
-     * Update pool
+     * Update pool, the tasks queued in the old pool are handed over to the new pool.
      */
     public void setPool(final DefaultThreadPool pool) {
         final DefaultThreadPool oldPool = this.delegatee;
         this.delegatee = pool;
-        oldPool.shutdown();
+        oldPool.shutdown(pool);
+    }
+
+    /**
+     * Update the configuration of the pool, the pool is only replaced if the changes
+     * can't be applied to the running pool.
+     * @see DefaultThreadPool#reconfigure(ThreadPoolConfig)
+     */
+    public void setConfiguration(final ThreadPoolConfig config) {
+        if ( !this.delegatee.reconfigure(config) ) {
+            this.setPool(new DefaultThreadPool(this.name, config));
+        }
+    }
+
+    /**
+     * @return the current pool behind the facade
+     */
+    DefaultThreadPool getPool() {
+        return this.delegatee;
     }
 
     public ThreadPoolExecutor getExecutor() {
         return this.delegatee.getExecutor();
     }
+
+    public ExecutorService getExecutorService() {
+        return this.delegatee.getExecutorService();
+    }
+
+    ThreadPoolExecutor getCreatedExecutor() {
+        return this.delegatee.getCreatedExecutor();
+    }
+
+    ExecutorService getCreatedExecutorService() {
+        return this.delegatee.getCreatedExecutorService();
+    }
+
+    boolean hibernate(final long idleTime) {
+        return this.delegatee.hibernate(idleTime);
+    }
+
+    void wakeUp() {
+        this.delegatee.wakeUp();
+    }
+
+    boolean isHibernating() {
+        return this.delegatee.isHibernating();
+    }
+
+    long getHibernationCount() {
+        return this.delegatee.getHibernationCount();
+    }
+
+    long getWakeUpCount() {
+        return this.delegatee.getWakeUpCount();
+    }
+
+    public ThreadLocalStatistics getThreadLocalStatistics() {
+        return this.delegatee.getThreadLocalStatistics();
+    }
 }
@@ -16,6 +16,7 @@
  */
 package org.apache.sling.commons.threads.impl;
 
+import java.util.List;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import javax.management.NotCompliantMBeanException;
@@ -26,6 +27,9 @@ import org.apache.sling.commons.threads.jmx.ThreadPoolMBean;
 
 class ThreadPoolMBeanImpl extends StandardMBean implements ThreadPoolMBean {
     
+    /** the number of entries returned by {@link #getThreadLocalsTopAdded()} */
+    private static final int TOP_ENTRIES = 20;
+
     private final Entry entry;
 
     ThreadPoolMBeanImpl(Entry entry) throws NotCompliantMBeanException {
@@ -158,4 +162,133 @@ class ThreadPoolMBeanImpl extends StandardMBean implements ThreadPoolMBean {
         return this.entry.isUsed();
     }
 
+    public boolean isThreadLocalStatistics() {
+        return this.entry.getConfig().isThreadLocalStatistics();
+    }
+
+    public long getThreadLocalsAddedCount() {
+        final ThreadLocalStatistics statistics = this.entry.getThreadLocalStatistics();
+        if ( statistics != null ) {
+            return statistics.getAddedCount();
+        } else {
+            return -1;
+        }
+    }
+
+    public long getThreadLocalsRemovedCount() {
+        final ThreadLocalStatistics statistics = this.entry.getThreadLocalStatistics();
+        if ( statistics != null ) {
+            return statistics.getRemovedCount();
+        } else {
+            return -1;
+        }
+    }
+
+    public long getThreadLocalsReAddedCount() {
+        final ThreadLocalStatistics statistics = this.entry.getThreadLocalStatistics();
+        if ( statistics != null ) {
+            return statistics.getReAddedCount();
+        } else {
+            return -1;
+        }
+    }
+
+    public long getThreadLocalsEstimatedRetainedEntries() {
+        final ThreadLocalStatistics statistics = this.entry.getThreadLocalStatistics();
+        final ThreadPoolExecutor tpe = this.entry.getExecutor();
+        if ( statistics != null && tpe != null ) {
+            return statistics.getEstimatedRetainedEntries(tpe.getPoolSize());
+        } else {
+            return -1;
+        }
+    }
+
+    public String[] getThreadLocalsTopAdded() {
+        final ThreadLocalStatistics statistics = this.entry.getThreadLocalStatistics();
+        if ( statistics != null ) {
+            final List<ThreadLocalStatistics.Entry> entries = statistics.getTopEntries(TOP_ENTRIES);
+            final String[] result = new String[entries.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = entries.get(i).toString();
+            }
+            return result;
+        } else {
+            return new String[0];
+        }
+    }
+
+    public boolean isAutoScaling() {
+        return this.entry.getConfig().isAutoScaling();
+    }
+
+    public double getAutoScalingThroughput() {
+        final AutoScalingController controller = this.entry.getAutoScalingController();
+        if ( controller != null ) {
+            return controller.getThroughput();
+        } else {
+            return -1;
+        }
+    }
+
+    public double getAutoScalingUtilization() {
+        final AutoScalingController controller = this.entry.getAutoScalingController();
+        if ( controller != null ) {
+            return controller.getUtilization();
+        } else {
+            return -1;
+        }
+    }
+
+    public long getAutoScalingQueueWaitTime() {
+        final AutoScalingController controller = this.entry.getAutoScalingController();
+        if ( controller != null ) {
+            return controller.getQueueWaitTime();
+        } else {
+            return -1;
+        }
+    }
+
+    public int getAutoScalingTargetPoolSize() {
+        final AutoScalingController controller = this.entry.getAutoScalingController();
+        if ( controller != null ) {
+            return controller.getTargetPoolSize();
+        } else {
+            return -1;
+        }
+    }
+
+    public long getAutoScalingDecisionCount() {
+        final AutoScalingController controller = this.entry.getAutoScalingController();
+        if ( controller != null ) {
+            return controller.getDecisionCount();
+        } else {
+            return -1;
+        }
+    }
+
+    public String getAutoScalingLastDecision() {
+        final AutoScalingController controller = this.entry.getAutoScalingController();
+        if ( controller != null ) {
+            return controller.getLastDecision();
+        } else {
+            return null;
+        }
+    }
+
+    public long getHibernationTime() {
+        return this.entry.getConfig().getHibernationTime();
+    }
+
+    public boolean isHibernating() {
+        return this.entry.isHibernating();
+    }
+
+    public long getHibernationCount() {
+        return this.entry.getHibernationCount();
+    }
+
+    public long getWakeUpCount() {
+        return this.entry.getWakeUpCount();
+    }
+
 }
@@ -16,7 +16,7 @@
  */
 package org.apache.sling.commons.threads.impl;
 
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -34,14 +34,15 @@ class ThreadPoolMetricsGauges {
     private static final Logger LOGGER = LoggerFactory.getLogger(ThreadPoolMetricsGauges.class);
 
     // not exposing MaxThreadAge as bean.getMaxThreadAge() is deprecated due
-    // to SLING-6261 and always returns -1
-    private static final List<String> IGNORED_ATTRIBUTES = Collections.singletonList("MaxThreadAge");
+    // to SLING-6261 and always returns -1, ThreadLocalsTopAdded is not a single value
+    private static final List<String> IGNORED_ATTRIBUTES = Arrays.asList("MaxThreadAge", "ThreadLocalsTopAdded");
 
     private static final Map<Class<?>, Class<?>> WRAPPER_TO_PRIMITIVE = new HashMap<>();
 
     static {
         WRAPPER_TO_PRIMITIVE.put(Integer.class, int.class);
         WRAPPER_TO_PRIMITIVE.put(Long.class, long.class);
+        WRAPPER_TO_PRIMITIVE.put(Double.class, double.class);
         WRAPPER_TO_PRIMITIVE.put(Boolean.class, boolean.class);
     }
 
@@ -50,6 +51,7 @@ class ThreadPoolMetricsGauges {
     static {
         CLASS_TO_DEFAULT_VALUE.put(Integer.class, -1);
         CLASS_TO_DEFAULT_VALUE.put(Long.class, -1L);
+        CLASS_TO_DEFAULT_VALUE.put(Double.class, -1.0);
         CLASS_TO_DEFAULT_VALUE.put(Boolean.class, false);
         CLASS_TO_DEFAULT_VALUE.put(String.class, "");
     }
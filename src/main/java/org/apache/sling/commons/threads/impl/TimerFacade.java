@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.commons.threads.ThreadPool;
+import org.apache.sling.commons.threads.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This is the timer which is delivered to clients. It schedules the tasks
+ * with the shared {@link HashedWheelTimer} and executes the expired tasks
+ * with its thread pool, until it is released.
+ * <p>
+ * A saturated thread pool with the block policy {@code RUN} would run an expired task
+ * in the thread of the shared timer and delay all other timers, such a task is run by
+ * a fallback executor instead.
+ */
+public final class TimerFacade implements Timer, Executor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimerFacade.class);
+
+    /** The shared timer */
+    private final HashedWheelTimer timer;
+
+    /** The thread pool executing the expired tasks */
+    private final ThreadPool pool;
+
+    /** The executor running the expired tasks the thread pool would run in the timer thread */
+    private final Executor fallbackExecutor;
+
+    private volatile boolean released;
+
+    TimerFacade(final HashedWheelTimer timer, final ThreadPool pool, final Executor fallbackExecutor) {
+        this.timer = timer;
+        this.pool = pool;
+        this.fallbackExecutor = fallbackExecutor;
+    }
+
+    /**
+     * @see org.apache.sling.commons.threads.Timer#schedule(java.lang.Runnable, long, java.util.concurrent.TimeUnit)
+     */
+    public Timeout schedule(final Runnable task, final long delay, final TimeUnit unit) {
+        if ( this.released ) {
+            throw new IllegalStateException("Timer for thread pool " + this.pool.getName() + " has been released.");
+        }
+        return this.timer.newTimeout(task, this, delay, unit);
+    }
+
+    /**
+     * Executes an expired task with the thread pool unless the timer has been released.
+     * @see java.util.concurrent.Executor#execute(java.lang.Runnable)
+     */
+    public void execute(final Runnable task) {
+        if ( this.released ) {
+            LOGGER.debug("Dropping expired task {} of released timer for thread pool {}", task, this.pool.getName());
+        } else {
+            final Thread timerThread = Thread.currentThread();
+            this.pool.execute(() -> {
+                if ( Thread.currentThread() == timerThread ) {
+                    LOGGER.debug("Thread pool {} is saturated, running expired task {} in the fallback executor",
+                            this.pool.getName(), task);
+                    this.fallbackExecutor.execute(task);
+                } else {
+                    task.run();
+                }
+            });
+        }
+    }
+
+    /**
+     * @return the thread pool executing the expired tasks
+     */
+    public ThreadPool getThreadPool() {
+        return this.pool;
+    }
+
+    /**
+     * Release this timer.
+     * @return {@code true} if the timer has been released by this call
+     */
+    synchronized boolean release() {
+        if ( this.released ) {
+            return false;
+        }
+        this.released = true;
+        return true;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates factories for virtual threads.
+ * <p>
+ * Virtual threads are available from Java 21 on, while this bundle is compiled for Java 8. Therefore the
+ * {@code Thread.Builder} API is resolved once by reflection, the created factories are used directly.
+ */
+final class VirtualThreads {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreads.class);
+
+    /** {@code Thread.ofVirtual()}, null if not supported */
+    private static final Method OF_VIRTUAL;
+    /** {@code Thread.Builder.name(String, long)} */
+    private static final Method NAME;
+    /** {@code Thread.Builder.factory()} */
+    private static final Method FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            name = builderClass.getMethod("name", String.class, long.class);
+            factory = builderClass.getMethod("factory");
+            // fails if virtual threads are a preview feature which is not enabled
+            ofVirtual.invoke(null);
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            LOGGER.debug("Virtual threads are not supported by this JRE", e);
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+    }
+
+    private VirtualThreads() {
+        // static methods only
+    }
+
+    /**
+     * @return {@code true} if the JRE supports virtual threads
+     */
+    static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * @param namePrefix the prefix of the thread names, followed by a counter
+     * @return a factory creating virtual threads
+     * @throws UnsupportedOperationException If virtual threads are not supported
+     */
+    static ThreadFactory factory(final String namePrefix) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by this JRE");
+        }
+        try {
+            final Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 1L);
+            return (ThreadFactory) FACTORY.invoke(builder);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new UnsupportedOperationException("Unable to create virtual thread factory", e);
+        }
+    }
+}
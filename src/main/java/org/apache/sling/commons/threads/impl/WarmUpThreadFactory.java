@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A thread factory which lets each core thread prestarted with {@link #prestartAllCoreThreads(ThreadPoolExecutor)}
+ * run the warm-up task itself, before it takes its first task.
+ * <p>
+ * The warm-up doesn't pass the executor, so it is neither queued nor run by the caller if the executor
+ * has no capacity for it, and each prestarted thread is warmed up exactly once. Threads started later on
+ * for tasks are not warmed up. If the executor cleans up thread locals, the thread locals changed by
+ * the warm-up task are cleaned up before the first task.
+ */
+final class WarmUpThreadFactory implements ThreadFactory {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final ThreadFactory factory;
+
+    private final String poolName;
+
+    /** the warm-up task, null for an empty task */
+    private final Runnable task;
+
+    /** the thread prestarting the core threads, null if no threads are prestarted */
+    private volatile Thread prestarter;
+
+    /** the executor whose core threads are prestarted */
+    private volatile ThreadPoolExecutor executor;
+
+    /**
+     * @param factory the thread factory creating the threads
+     * @param poolName the name of the thread pool, for logging
+     * @param task the warm-up task, {@code null} for an empty task
+     */
+    WarmUpThreadFactory(final ThreadFactory factory, final String poolName, final Runnable task) {
+        this.factory = factory;
+        this.poolName = poolName;
+        this.task = task;
+    }
+
+    /**
+     * Starts all core threads of the executor, each of them is warmed up before it takes a task.
+     * @param executor the executor created with this thread factory
+     * @return the number of started threads
+     */
+    int prestartAllCoreThreads(final ThreadPoolExecutor executor) {
+        // the executor creates the threads in the calling thread
+        this.executor = executor;
+        this.prestarter = Thread.currentThread();
+        try {
+            return executor.prestartAllCoreThreads();
+        } finally {
+            this.prestarter = null;
+        }
+    }
+
+    @Override
+    public Thread newThread(final Runnable worker) {
+        if ( this.prestarter != Thread.currentThread() ) {
+            return factory.newThread(worker);
+        }
+        final ThreadPoolExecutor warmedUpExecutor = this.executor;
+        return factory.newThread(() -> {
+            warmUp(warmedUpExecutor);
+            worker.run();
+        });
+    }
+
+    private void warmUp(final ThreadPoolExecutor warmedUpExecutor) {
+        final Runnable warmUpTask = this.task != null ? this.task : () -> {};
+        try {
+            if ( warmedUpExecutor instanceof ThreadLocalCleaningExecutor ) {
+                ((ThreadLocalCleaningExecutor) warmedUpExecutor).runAsTask(warmUpTask);
+            } else {
+                warmUpTask.run();
+            }
+        } catch (final Throwable t) {
+            // the thread is still used for the tasks of the pool
+            LOGGER.warn("Warm-up task of thread pool [{}] failed", poolName, t);
+        }
+    }
+}
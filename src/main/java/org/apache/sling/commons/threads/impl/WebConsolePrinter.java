@@ -19,9 +19,13 @@
 package org.apache.sling.commons.threads.impl;
 
 import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.sling.commons.threads.ThreadPoolConfig;
 import org.osgi.framework.BundleContext;
@@ -61,6 +65,9 @@ public class WebConsolePrinter {
 
     private static String HEADLINE = "Apache Sling Thread Pools";
 
+    /** The number of thread local statistics entries printed per pool */
+    private static final int TOP_THREAD_LOCALS = 20;
+
     private final DefaultThreadPoolManager mgr;
 
     public WebConsolePrinter(final DefaultThreadPoolManager dtpm) {
@@ -74,6 +81,15 @@ public class WebConsolePrinter {
     public void printConfiguration(PrintWriter pw) {
         pw.println(HEADLINE);
         pw.println();
+        final HashedWheelTimer timer = this.mgr.getSharedTimer();
+        pw.println("Timer");
+        pw.print("- tick duration ms : ");
+        pw.println(TimeUnit.NANOSECONDS.toMillis(timer.getTickNanos()));
+        pw.print("- wheel size : ");
+        pw.println(timer.getWheelSize());
+        pw.print("- pending timeouts : ");
+        pw.println(timer.getPendingTimeouts());
+        pw.println();
         final DefaultThreadPoolManager.Entry[] configs = this.mgr.getConfigurations();
         if ( configs.length > 0 ) {
             for(final DefaultThreadPoolManager.Entry entry : configs ) {
@@ -94,6 +110,38 @@ public class WebConsolePrinter {
                 pw.println(config.getQueueSize());
                 pw.print("- keep alive time : ");
                 pw.println(config.getKeepAliveTime());
+                pw.print("- executor type : ");
+                pw.println(config.getExecutorType());
+                if ( config.getQueueSize() > 0 ) {
+                    pw.print("- queue type : ");
+                    pw.println(config.getQueueType());
+                }
+                pw.print("- eager thread growth : ");
+                pw.println(config.isEagerThreadGrowth());
+                pw.print("- auto scaling : ");
+                pw.println(config.isAutoScaling());
+                if ( config.isAutoScaling() ) {
+                    pw.print("- auto scaling max pool size : ");
+                    pw.println(config.getAutoScalingMaxPoolSize());
+                }
+                pw.print("- linger time : ");
+                pw.println(config.getLingerTime());
+                pw.print("- prestart core threads : ");
+                pw.println(config.isPrestartCoreThreads());
+                if ( config.isPrestartCoreThreads() ) {
+                    pw.print("- warm up threads : ");
+                    pw.println(config.isWarmUpThreads());
+                }
+                if ( config.getHibernationTime() > 0 ) {
+                    pw.print("- hibernation time : ");
+                    pw.println(config.getHibernationTime());
+                    pw.print("- hibernating : ");
+                    pw.println(entry.isHibernating());
+                    pw.print("- hibernations : ");
+                    pw.println(entry.getHibernationCount());
+                    pw.print("- wake ups : ");
+                    pw.println(entry.getWakeUpCount());
+                }
                 pw.print("- block policy : ");
                 pw.println(config.getBlockPolicy());
                 pw.print("- priority : ");
@@ -104,6 +152,18 @@ public class WebConsolePrinter {
                 pw.println(config.getShutdownWaitTimeMs());
                 pw.print("- daemon : ");
                 pw.println(config.isDaemon());
+                pw.print("- thread local statistics : ");
+                pw.println(config.isThreadLocalStatistics());
+                pw.print("- thread local cleanup mode : ");
+                pw.println(config.getThreadLocalCleanupMode());
+                if ( config.getThreadLocalCleanupMode() == ThreadPoolConfig.ThreadLocalCleanupMode.EVERY_N_TASKS ) {
+                    pw.print("- thread local cleanup interval : ");
+                    pw.println(config.getThreadLocalCleanupInterval());
+                }
+                if ( config.getThreadLocalAllowlist().length > 0 ) {
+                    pw.print("- thread local allowlist : ");
+                    pw.println(Arrays.toString(config.getThreadLocalAllowlist()));
+                }
                 final ThreadPoolExecutor tpe = entry.getExecutor();
                 if ( tpe != null ) {
                     pw.print("- active count : ");
@@ -121,6 +181,68 @@ public class WebConsolePrinter {
                     pw.print("- task count : ");
                     pw.println(tpe.getTaskCount());
                 }
+                final AutoScalingController controller = entry.getAutoScalingController();
+                if ( controller != null ) {
+                    pw.print("- auto scaling throughput : ");
+                    pw.println(controller.getThroughput());
+                    pw.print("- auto scaling utilization : ");
+                    pw.println(controller.getUtilization());
+                    pw.print("- auto scaling queue wait time : ");
+                    pw.println(controller.getQueueWaitTime());
+                    pw.print("- auto scaling target pool size : ");
+                    pw.println(controller.getTargetPoolSize());
+                    pw.print("- auto scaling decisions : ");
+                    pw.println(controller.getDecisionCount());
+                    if ( controller.getLastDecision() != null ) {
+                        pw.print("- auto scaling last decision : ");
+                        pw.println(controller.getLastDecision());
+                    }
+                }
+                final ExecutorService executorService = entry.getExecutorService();
+                if ( executorService instanceof ThreadPerTaskExecutor ) {
+                    final ThreadPerTaskExecutor tpte = (ThreadPerTaskExecutor) executorService;
+                    pw.print("- active count : ");
+                    pw.println(tpte.getActiveCount());
+                    pw.print("- completed task count : ");
+                    pw.println(tpte.getCompletedTaskCount());
+                    pw.print("- largest active count : ");
+                    pw.println(tpte.getLargestPoolSize());
+                    pw.print("- queued task count : ");
+                    pw.println(tpte.getQueueSize());
+                } else if ( executorService instanceof ForkJoinPool ) {
+                    final ForkJoinPool fjp = (ForkJoinPool) executorService;
+                    pw.print("- parallelism : ");
+                    pw.println(fjp.getParallelism());
+                    pw.print("- pool size : ");
+                    pw.println(fjp.getPoolSize());
+                    pw.print("- active count : ");
+                    pw.println(fjp.getActiveThreadCount());
+                    pw.print("- steal count : ");
+                    pw.println(fjp.getStealCount());
+                    pw.print("- queued task count : ");
+                    pw.println(fjp.getQueuedTaskCount());
+                    pw.print("- queued submission count : ");
+                    pw.println(fjp.getQueuedSubmissionCount());
+                }
+                final ThreadLocalStatistics statistics = entry.getThreadLocalStatistics();
+                if ( statistics != null ) {
+                    pw.print("- tasks changing thread locals : ");
+                    pw.println(statistics.getTaskCount());
+                    pw.print("- thread locals added : ");
+                    pw.println(statistics.getAddedCount());
+                    pw.print("- thread locals removed : ");
+                    pw.println(statistics.getRemovedCount());
+                    pw.print("- thread locals re-added : ");
+                    pw.println(statistics.getReAddedCount());
+                    if ( tpe != null ) {
+                        pw.print("- estimated retained thread local entries without cleanup : ");
+                        pw.println(statistics.getEstimatedRetainedEntries(tpe.getPoolSize()));
+                    }
+                    for(final ThreadLocalStatistics.Entry leaker : statistics.getTopEntries(TOP_THREAD_LOCALS)) {
+                        pw.print("  - ");
+                        pw.println(leaker);
+                    }
+                }
                 pw.println();
             }
         } else {
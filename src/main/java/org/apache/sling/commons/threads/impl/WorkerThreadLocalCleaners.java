@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.sling.commons.threads.ThreadPoolConfig.ThreadLocalCleanupMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link ThreadLocalCleaner}s of the worker threads of an executor, used from the
+ * {@code beforeExecute} and {@code afterExecute} hooks of the executor.
+ * <p>
+ * Each worker thread gets its own cleaner when it is started, which is reused for all tasks executed
+ * by that worker and dropped once the worker terminates. To achieve this the thread factory
+ * of the executor must be wrapped with {@link #wrap(ThreadFactory)}.
+ * <p>
+ * The cleaner is resolved once per worker: the wrapped worker puts it into a thread local before it runs
+ * the first task, so the hooks only read a slot of the worker itself instead of looking it up in a map
+ * shared by all workers. The thread local is part of the state saved before each task, so the cleanup
+ * keeps it.
+ */
+final class WorkerThreadLocalCleaners {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    private final ThreadLocalChangeListener listener;
+
+    private final ThreadLocalCleanupMode cleanupMode;
+
+    private final int cleanupInterval;
+
+    private final ThreadLocalAllowlist allowlist;
+
+    /** the cleaner of the current worker thread, set for its whole lifetime */
+    private final ThreadLocal<WorkerCleaner> workerCleaner = new ThreadLocal<>();
+
+    /** the cleaners of the running worker threads, only for the calls which may come from other threads */
+    private final ConcurrentMap<Thread, WorkerCleaner> cleaners = new ConcurrentHashMap<>();
+
+    /**
+     * @param listener the listener notified about the changed thread locals
+     * @param cleanupMode the mode for cleaning up the thread locals, must not be {@link ThreadLocalCleanupMode#NEVER}
+     * @param cleanupInterval the number of tasks between cleanups for {@link ThreadLocalCleanupMode#EVERY_N_TASKS}
+     * @param allowlist the thread locals which survive the cleanup, possibly {@code null}
+     */
+    WorkerThreadLocalCleaners(ThreadLocalChangeListener listener,
+            ThreadLocalCleanupMode cleanupMode,
+            int cleanupInterval,
+            ThreadLocalAllowlist allowlist) {
+        if (cleanupMode == ThreadLocalCleanupMode.NEVER) {
+            throw new IllegalArgumentException("Cleanup mode " + cleanupMode + " is not supported");
+        }
+        ThreadLocalCleaner.validate();
+        this.listener = listener;
+        this.cleanupMode = cleanupMode;
+        this.cleanupInterval = Math.max(1, cleanupInterval);
+        this.allowlist = allowlist;
+    }
+
+    /**
+     * @return the mode for cleaning up the thread locals
+     */
+    ThreadLocalCleanupMode getCleanupMode() {
+        return cleanupMode;
+    }
+
+    /**
+     * @param threadFactory the thread factory of the executor
+     * @return a thread factory registering a cleaner for each worker thread while it is running
+     */
+    ThreadFactory wrap(ThreadFactory threadFactory) {
+        if (threadFactory == null) {
+            throw new NullPointerException();
+        }
+        return new CleanerThreadFactory(threadFactory);
+    }
+
+    /**
+     * Called before a task is executed by the given worker thread.
+     * @param t the worker thread
+     */
+    void beforeExecute(Thread t) {
+        LOGGER.debug("Collecting changes to ThreadLocal for thread {} from now on...", t);
+        // the hooks are called by the worker thread itself
+        WorkerCleaner cleaner = workerCleaner.get();
+        if (cleaner != null) {
+            cleaner.beforeExecute();
+        } else {
+            LOGGER.warn("Could not collect changes to thread locals in thread {} as the thread has not been created by this pool", t);
+        }
+    }
+
+    /**
+     * Called by the current worker thread after a task has been executed.
+     */
+    void afterExecute() {
+        LOGGER.debug("Cleaning up thread locals for thread {}...", Thread.currentThread());
+        WorkerCleaner cleaner = workerCleaner.get();
+
+        if (cleaner != null) {
+            cleaner.afterExecute();
+        } else {
+            LOGGER.warn("Could not clean up thread locals in thread {} as the cleaner was not set up correctly", Thread.currentThread());
+        }
+    }
+
+    /**
+     * Called by the current worker thread between two tasks which are executed as a single task,
+     * ignored if the current thread is not a worker thread. The cleaner is looked up in the map,
+     * as reading the thread local would add an entry to the thread locals of other threads.
+     * @see ThreadLocalCleaningExecutor#cleanupBetweenTasks()
+     */
+    void betweenTasks() {
+        final WorkerCleaner cleaner = cleaners.get(Thread.currentThread());
+        if (cleaner != null) {
+            cleaner.afterExecute();
+            cleaner.beforeExecute();
+        }
+    }
+
+    /**
+     * Runs a task in the current worker thread and cleans up its thread locals afterwards. A separate cleaner
+     * is used, as the task might run before the cleaner of the worker is set up.
+     * @param task the task to run
+     * @see ThreadLocalCleaningExecutor#runAsTask(Runnable)
+     */
+    void runAsTask(Runnable task) {
+        ThreadLocalCleaner cleaner = new ThreadLocalCleaner(listener, allowlist);
+        cleaner.save();
+        try {
+            task.run();
+        } finally {
+            cleaner.cleanup();
+        }
+    }
+
+    /**
+     * Registers a {@link ThreadLocalCleaner} for each worker thread while it is running.
+     */
+    private final class CleanerThreadFactory implements ThreadFactory {
+
+        private final ThreadFactory factory;
+
+        CleanerThreadFactory(ThreadFactory factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public Thread newThread(final Runnable worker) {
+            return factory.newThread(() -> {
+                final Thread thread = Thread.currentThread();
+                final WorkerCleaner cleaner = new WorkerCleaner(new ThreadLocalCleaner(listener, allowlist));
+                // set before the first task, so it is part of the saved thread locals
+                workerCleaner.set(cleaner);
+                cleaners.put(thread, cleaner);
+                try {
+                    worker.run();
+                } finally {
+                    cleaners.remove(thread);
+                    workerCleaner.remove();
+                }
+            });
+        }
+    }
+
+    /**
+     * The cleaner of a single worker thread, only accessed by that thread.
+     */
+    private final class WorkerCleaner {
+
+        private final ThreadLocalCleaner cleaner;
+
+        /** the number of tasks since the last cleanup */
+        private int tasks;
+
+        WorkerCleaner(ThreadLocalCleaner cleaner) {
+            this.cleaner = cleaner;
+        }
+
+        void beforeExecute() {
+            switch (cleanupMode) {
+                case EVERY_N_TASKS :
+                    if (tasks == 0) {
+                        cleaner.save();
+                    }
+                    break;
+                case ON_CHANGE_ONLY :
+                    // the state before the first task is kept for the lifetime of the worker
+                    if (!cleaner.isSaved()) {
+                        cleaner.save();
+                    }
+                    break;
+                default :
+                    cleaner.save();
+            }
+        }
+
+        void afterExecute() {
+            switch (cleanupMode) {
+                case EVERY_N_TASKS :
+                    if (++tasks >= cleanupInterval) {
+                        tasks = 0;
+                        cleaner.cleanup();
+                    }
+                    break;
+                case ON_CHANGE_ONLY :
+                    cleaner.cleanupIfResized();
+                    break;
+                default :
+                    cleaner.cleanup();
+            }
+        }
+    }
+}
@@ -178,4 +178,143 @@ public interface ThreadPoolMBean {
      */
     boolean isUsed();
 
+    /**
+     * Return whether or not the thread pool collects thread local statistics.
+     *
+     * @return The thread local statistics configuration.
+     * @since 1.3.0
+     */
+    boolean isThreadLocalStatistics();
+
+    /**
+     * Retrieve the number of thread locals added by the tasks of the pool.
+     *
+     * @return the number of added thread locals or -1 if the thread pool does not collect thread local statistics
+     * @since 1.3.0
+     */
+    long getThreadLocalsAddedCount();
+
+    /**
+     * Retrieve the number of thread locals removed by the tasks of the pool.
+     *
+     * @return the number of removed thread locals or -1 if the thread pool does not collect thread local statistics
+     * @since 1.3.0
+     */
+    long getThreadLocalsRemovedCount();
+
+    /**
+     * Retrieve the number of thread locals added again by the tasks of the pool after they have been
+     * cleaned up, i.e. which are initialized again for each task.
+     *
+     * @return the number of re-added thread locals or -1 if the thread pool does not collect thread local statistics
+     * @since 1.3.0
+     */
+    long getThreadLocalsReAddedCount();
+
+    /**
+     * Retrieve the estimated number of thread local entries the threads of the pool would retain
+     * if thread locals were not cleaned up.
+     *
+     * @return the estimated number of entries or -1 if the thread pool does not collect thread local statistics
+     * @since 1.3.0
+     */
+    long getThreadLocalsEstimatedRetainedEntries();
+
+    /**
+     * Retrieve the thread local classes and value classes most often added by the tasks of the pool,
+     * together with their counters.
+     *
+     * @return the most often added thread locals, empty if the thread pool does not collect thread local statistics
+     * @since 1.3.0
+     */
+    String[] getThreadLocalsTopAdded();
+
+    /**
+     * Return whether or not the thread pool adjusts its core pool size to the load.
+     *
+     * @return The auto scaling configuration.
+     * @since 1.3.0
+     */
+    boolean isAutoScaling();
+
+    /**
+     * Retrieve the number of tasks completed per second, as sampled by the auto scaling.
+     *
+     * @return the throughput or -1 if the thread pool is not auto scaled
+     * @since 1.3.0
+     */
+    double getAutoScalingThroughput();
+
+    /**
+     * Retrieve the smoothed share of busy threads of the pool, as sampled by the auto scaling.
+     *
+     * @return the utilization between 0 and 1 or -1 if the thread pool is not auto scaled
+     * @since 1.3.0
+     */
+    double getAutoScalingUtilization();
+
+    /**
+     * Retrieve the estimated time a task waits in the work queue in milliseconds, as sampled by the auto scaling.
+     *
+     * @return the estimated queue wait time or -1 if the thread pool is not auto scaled
+     * @since 1.3.0
+     */
+    long getAutoScalingQueueWaitTime();
+
+    /**
+     * Retrieve the core pool size determined by the last sample of the auto scaling.
+     *
+     * @return the target pool size or -1 if the thread pool is not auto scaled or has not been sampled yet
+     * @since 1.3.0
+     */
+    int getAutoScalingTargetPoolSize();
+
+    /**
+     * Retrieve the number of times the auto scaling has changed the core pool size.
+     *
+     * @return the number of changes or -1 if the thread pool is not auto scaled
+     * @since 1.3.0
+     */
+    long getAutoScalingDecisionCount();
+
+    /**
+     * Retrieve the last change of the core pool size by the auto scaling, together with the sample it is based on.
+     *
+     * @return the last change or {@code null} if the core pool size has not been changed
+     * @since 1.3.0
+     */
+    String getAutoScalingLastDecision();
+
+    /**
+     * Return the time without tasks after which the thread pool releases all its threads.
+     *
+     * @return The hibernation time in milliseconds, 0 or less if the core threads are kept
+     * @since 1.3.0
+     */
+    long getHibernationTime();
+
+    /**
+     * Return whether or not the thread pool has released all its threads as it has not received tasks.
+     *
+     * @return whether the thread pool hibernates
+     * @since 1.3.0
+     */
+    boolean isHibernating();
+
+    /**
+     * Retrieve the number of times the thread pool hibernated since it has been created or replaced.
+     *
+     * @return the number of hibernations or -1 if the thread pool is not used
+     * @since 1.3.0
+     */
+    long getHibernationCount();
+
+    /**
+     * Retrieve the number of times the thread pool woke up from hibernation since it has been created or replaced.
+     *
+     * @return the number of wake ups or -1 if the thread pool is not used
+     * @since 1.3.0
+     */
+    long getWakeUpCount();
+
 }
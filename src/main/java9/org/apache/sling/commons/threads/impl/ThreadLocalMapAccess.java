@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.Reference;
+import java.lang.reflect.Array;
+import java.util.function.Supplier;
+
+/**
+ * Low level access to the thread local maps of a {@link Thread} and their internal state.
+ * <p>
+ * This is the Java 9 implementation from the multi-release part of the bundle. The
+ * {@link VarHandle}s are resolved once and are constant, so the JIT can inline the
+ * accesses, and the int fields are read and written without boxing.
+ */
+final class ThreadLocalMapAccess {
+
+    /** field {@code Thread.threadLocals} of type {@code ThreadLocal.ThreadLocalMap} */
+    private static final VarHandle THREAD_LOCALS;
+    /** field {@code Thread.inheritableThreadLocals} of type {@code ThreadLocal.ThreadLocalMap} */
+    private static final VarHandle INHERITABLE_THREAD_LOCALS;
+    /** field {@code ThreadLocal.ThreadLocalMap.table} of type {@code ThreadLocal.ThreadLocalMap.Entry[]} */
+    private static final VarHandle TABLE;
+    /** field {@code ThreadLocal.ThreadLocalMap.size} of type {@code int} */
+    private static final VarHandle SIZE;
+    /** field {@code ThreadLocal.ThreadLocalMap.threshold} of type {@code int} */
+    private static final VarHandle THRESHOLD;
+    /** field {@code ThreadLocal.ThreadLocalMap.Entry.value} of type {@code Object} */
+    private static final VarHandle VALUE;
+    /** field {@code ThreadLocal.SuppliedThreadLocal.supplier} of type {@code Supplier} */
+    private static final VarHandle SUPPLIER;
+    private static final Class<?> SUPPLIED_THREAD_LOCAL;
+
+    static {
+        try {
+            final MethodHandles.Lookup lookup = MethodHandles.lookup();
+            final Class<?> threadLocalMapClass = inner(ThreadLocal.class, "ThreadLocalMap");
+            final Class<?> threadLocalMapEntryClass = inner(threadLocalMapClass, "Entry");
+
+            final MethodHandles.Lookup threadLookup = MethodHandles.privateLookupIn(Thread.class, lookup);
+            THREAD_LOCALS = threadLookup.findVarHandle(Thread.class, "threadLocals", threadLocalMapClass);
+            INHERITABLE_THREAD_LOCALS = threadLookup.findVarHandle(Thread.class, "inheritableThreadLocals", threadLocalMapClass);
+
+            final MethodHandles.Lookup mapLookup = MethodHandles.privateLookupIn(threadLocalMapClass, lookup);
+            TABLE = mapLookup.findVarHandle(threadLocalMapClass, "table",
+                    Array.newInstance(threadLocalMapEntryClass, 0).getClass());
+            SIZE = mapLookup.findVarHandle(threadLocalMapClass, "size", int.class);
+            THRESHOLD = mapLookup.findVarHandle(threadLocalMapClass, "threshold", int.class);
+
+            VALUE = MethodHandles.privateLookupIn(threadLocalMapEntryClass, lookup)
+                    .findVarHandle(threadLocalMapEntryClass, "value", Object.class);
+
+            SUPPLIED_THREAD_LOCAL = inner(ThreadLocal.class, "SuppliedThreadLocal");
+            SUPPLIER = MethodHandles.privateLookupIn(SUPPLIED_THREAD_LOCAL, lookup)
+                    .findVarHandle(SUPPLIED_THREAD_LOCAL, "supplier", Supplier.class);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            ExceptionInInitializerError error = new ExceptionInInitializerError(
+                    "Unable to access ThreadLocal class information using var handles");
+            error.initCause(e);
+            throw error;
+        }
+    }
+
+    private ThreadLocalMapAccess() {
+        // static methods only
+    }
+
+    /** @param clazz the class containing the inner class
+     * @param name the name of the inner class
+     * @return the class with the given name, declared as inner class of the given class */
+    private static Class<?> inner(Class<?> clazz, String name) {
+        for (Class<?> c : clazz.getDeclaredClasses()) {
+            if (c.getSimpleName().equals(name)) {
+                return c;
+            }
+        }
+        throw new IllegalStateException(
+                "Could not find inner class " + name + " in " + clazz);
+    }
+
+    /** @param thread the thread
+     * @param inheritable whether to return the map of the inheritable thread locals
+     * @return the {@code ThreadLocal.ThreadLocalMap} of the thread, possibly {@code null} */
+    static Object map(Thread thread, boolean inheritable) {
+        return inheritable ? (Object) INHERITABLE_THREAD_LOCALS.get(thread) : (Object) THREAD_LOCALS.get(thread);
+    }
+
+    /** @param thread the thread
+     * @param inheritable whether to set the map of the inheritable thread locals
+     * @param map the {@code ThreadLocal.ThreadLocalMap}, possibly {@code null} */
+    static void setMap(Thread thread, boolean inheritable, Object map) {
+        if (inheritable) {
+            INHERITABLE_THREAD_LOCALS.set(thread, map);
+        } else {
+            THREAD_LOCALS.set(thread, map);
+        }
+    }
+
+    /** @param map a {@code ThreadLocal.ThreadLocalMap}
+     * @return the entry table of the map */
+    static Reference<?>[] table(Object map) {
+        return (Reference<?>[]) TABLE.get(map);
+    }
+
+    /** @param map a {@code ThreadLocal.ThreadLocalMap}
+     * @param table the new entry table, must have been obtained from {@link #table(Object)} */
+    static void setTable(Object map, Reference<?>[] table) {
+        TABLE.set(map, table);
+    }
+
+    /** @param map a {@code ThreadLocal.ThreadLocalMap}
+     * @return the number of entries of the map */
+    static int size(Object map) {
+        return (int) SIZE.get(map);
+    }
+
+    /** @param map a {@code ThreadLocal.ThreadLocalMap}
+     * @param size the number of entries */
+    static void setSize(Object map, int size) {
+        SIZE.set(map, size);
+    }
+
+    /** @param map a {@code ThreadLocal.ThreadLocalMap}
+     * @return the resize threshold of the map */
+    static int threshold(Object map) {
+        return (int) THRESHOLD.get(map);
+    }
+
+    /** @param map a {@code ThreadLocal.ThreadLocalMap}
+     * @param threshold the resize threshold */
+    static void setThreshold(Object map, int threshold) {
+        THRESHOLD.set(map, threshold);
+    }
+
+    /** @param entry a {@code ThreadLocal.ThreadLocalMap.Entry}
+     * @return the value of the entry */
+    static Object value(Reference<?> entry) {
+        return (Object) VALUE.get(entry);
+    }
+
+    /** @param threadLocal a thread local
+     * @return the supplier of a thread local created with {@link ThreadLocal#withInitial(Supplier)},
+     * otherwise {@code null} */
+    static Object supplier(ThreadLocal<?> threadLocal) {
+        if (threadLocal.getClass() != SUPPLIED_THREAD_LOCAL) {
+            return null;
+        }
+        return (Object) SUPPLIER.get(threadLocal);
+    }
+}
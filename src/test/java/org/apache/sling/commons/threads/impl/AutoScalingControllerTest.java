@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AutoScalingControllerTest {
+
+    private ThreadPoolExecutor executor;
+
+    private final CountDownLatch blocker = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        executor = new ThreadPoolExecutor(1, 8, 100, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+    }
+
+    @After
+    public void tearDown() {
+        blocker.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testRaisesCorePoolSizeWhileTasksAreQueued() {
+        final AutoScalingController controller = new AutoScalingController("test", () -> executor, 1, 6, -1);
+        for (int i = 0; i < 20; i++) {
+            executor.execute(this::block);
+        }
+        // the first sample only records the state of the executor
+        controller.sample();
+        assertEquals(-1, controller.getTargetPoolSize());
+
+        controller.sample();
+        assertEquals(2, executor.getCorePoolSize());
+        controller.sample();
+        assertEquals(3, executor.getCorePoolSize());
+        for (int i = 0; i < 10; i++) {
+            controller.sample();
+        }
+        // bounded by the max pool size of the controller
+        assertEquals(6, executor.getCorePoolSize());
+        assertEquals(6, controller.getTargetPoolSize());
+        assertEquals(4, controller.getDecisionCount());
+        assertNotNull(controller.getLastDecision());
+        assertEquals(0, controller.getThroughput(), 0.0);
+    }
+
+    @Test
+    public void testLowersCorePoolSizeOnlyAfterIdleSamples() throws Exception {
+        final AutoScalingController controller = new AutoScalingController("test", () -> executor, 2, 8, -1);
+        executor.setCorePoolSize(8);
+        controller.sample();
+        for (int i = 1; i < AutoScalingController.SHRINK_AFTER_SAMPLES; i++) {
+            controller.sample();
+            assertEquals(8, executor.getCorePoolSize());
+        }
+        // lowered by a quarter at a time
+        controller.sample();
+        assertEquals(6, executor.getCorePoolSize());
+        for (int i = 0; i < 5 * AutoScalingController.SHRINK_AFTER_SAMPLES; i++) {
+            controller.sample();
+        }
+        // bounded by the min pool size of the controller
+        assertEquals(2, executor.getCorePoolSize());
+        assertEquals(0, controller.getUtilization(), 0.0);
+    }
+
+    @Test
+    public void testRaisesMaxPoolSizeUpToCeiling() throws Exception {
+        executor.setCorePoolSize(5);
+        executor.setMaximumPoolSize(5);
+        final AutoScalingController controller = new AutoScalingController("test", () -> executor, 5, 5, 10);
+        for (int i = 0; i < 20; i++) {
+            executor.execute(this::block);
+        }
+        controller.sample();
+        controller.sample();
+        assertEquals(7, executor.getCorePoolSize());
+        assertEquals(7, executor.getMaximumPoolSize());
+        for (int i = 0; i < 5; i++) {
+            controller.sample();
+        }
+        // bounded by the ceiling
+        assertEquals(10, executor.getCorePoolSize());
+        assertEquals(10, executor.getMaximumPoolSize());
+        assertEquals(10, executor.getPoolSize());
+
+        blocker.countDown();
+        final long deadline = System.currentTimeMillis() + 5000;
+        while ( executor.getCompletedTaskCount() < 20 && System.currentTimeMillis() < deadline ) {
+            Thread.sleep(10);
+        }
+        assertEquals(20, executor.getCompletedTaskCount());
+        for (int i = 0; i < 5 * AutoScalingController.SHRINK_AFTER_SAMPLES; i++) {
+            controller.sample();
+            assertTrue(executor.getCorePoolSize() <= executor.getMaximumPoolSize());
+        }
+        // the configured max pool size is restored
+        assertEquals(5, executor.getCorePoolSize());
+        assertEquals(5, executor.getMaximumPoolSize());
+    }
+
+    @Test
+    public void testKeepsMaxPoolSizeWithoutCeiling() {
+        executor.setCorePoolSize(5);
+        executor.setMaximumPoolSize(5);
+        final AutoScalingController controller = new AutoScalingController("test", () -> executor, 5, 5, -1);
+        for (int i = 0; i < 20; i++) {
+            executor.execute(this::block);
+        }
+        for (int i = 0; i < 5; i++) {
+            controller.sample();
+        }
+        assertEquals(5, executor.getCorePoolSize());
+        assertEquals(5, executor.getMaximumPoolSize());
+        assertEquals(0, controller.getDecisionCount());
+    }
+
+    private void block() {
+        try {
+            blocker.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
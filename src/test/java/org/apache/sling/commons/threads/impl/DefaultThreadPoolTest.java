@@ -16,16 +16,49 @@
  */
 package org.apache.sling.commons.threads.impl;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Dictionary;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.sling.commons.threads.ModifiableThreadPoolConfig;
+import org.apache.sling.commons.threads.ScheduledThreadPool;
 import org.apache.sling.commons.threads.ThreadPool;
+import org.apache.sling.commons.threads.ThreadPoolConfig;
+import org.apache.sling.commons.threads.ThreadPoolConfig.ExecutorType;
+import org.apache.sling.commons.threads.ThreadPoolConfig.QueueType;
+import org.apache.sling.commons.threads.ThreadPoolConfig.ThreadPriority;
+import org.apache.sling.commons.threads.ThreadPoolConfig.ThreadLocalCleanupMode;
+import org.apache.sling.commons.threads.ThreadPoolConfig.ThreadPoolPolicy;
+import org.apache.sling.commons.threads.Timer;
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.osgi.framework.BundleContext;
@@ -78,4 +111,1049 @@ public class DefaultThreadPoolTest {
         blocker.release(2);
     }
 
+    @Test
+    public void threadLocalCleanupModes() {
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        config.setThreadLocalCleanupMode(ThreadLocalCleanupMode.NEVER);
+        DefaultThreadPool pool = new DefaultThreadPool("never", config);
+        try {
+            assertEquals(ThreadPoolExecutor.class, pool.getExecutor().getClass());
+        } finally {
+            pool.shutdown();
+        }
+
+        config.setThreadLocalCleanupMode(ThreadLocalCleanupMode.EVERY_N_TASKS);
+        pool = new DefaultThreadPool("every-n-tasks", config);
+        try {
+            assertEquals(ThreadLocalCleanupMode.EVERY_N_TASKS,
+                    ((ThreadPoolExecutorCleaningThreadLocals) pool.getExecutor()).getCleanupMode());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void virtualThreads() throws Exception {
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        config.setExecutorType(ExecutorType.VIRTUAL_THREADS);
+        final DefaultThreadPool pool = new DefaultThreadPool("virtual", config);
+        try {
+            if (VirtualThreads.isSupported()) {
+                assertTrue(pool.getExecutorService() instanceof ThreadPerTaskExecutor);
+                assertNull(pool.getExecutor());
+            } else {
+                // falls back to platform threads
+                assertNotNull(pool.getExecutor());
+            }
+            assertEquals("done", pool.submit(() -> "done").get(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void batchOnVirtualThreads() throws Exception {
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        config.setExecutorType(ExecutorType.VIRTUAL_THREADS);
+        config.setMinPoolSize(-1);
+        config.setMaxPoolSize(-1);
+        config.setQueueSize(-1);
+        final DefaultThreadPool pool = new DefaultThreadPool("virtualbatch", config);
+        try {
+            if (VirtualThreads.isSupported()) {
+                assertTrue(pool.getExecutorService() instanceof ThreadPerTaskExecutor);
+            }
+            // more tasks than processors, each in its own thread, which all run at the same time
+            final int count = Runtime.getRuntime().availableProcessors() * 4;
+            final CountDownLatch allRunning = new CountDownLatch(count);
+            final ThreadLocal<Integer> threadLocal = new ThreadLocal<>();
+            final List<Callable<Boolean>> tasks = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                final int value = i;
+                tasks.add(() -> {
+                    final boolean fresh = threadLocal.get() == null;
+                    threadLocal.set(value);
+                    allRunning.countDown();
+                    return allRunning.await(5, TimeUnit.SECONDS) && fresh;
+                });
+            }
+            for (final Future<Boolean> future : pool.submitAll(tasks)) {
+                assertTrue(future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void forkJoin() throws Exception {
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        config.setExecutorType(ExecutorType.FORK_JOIN);
+        config.setMaxPoolSize(2);
+        config.setDaemon(true);
+        config.setPriority(ThreadPriority.MIN);
+        final DefaultThreadPool pool = new DefaultThreadPool("forkjoin", config);
+        try {
+            assertTrue(pool.getExecutorService() instanceof ForkJoinPool);
+            assertNull(pool.getExecutor());
+            assertEquals(2, ((ForkJoinPool) pool.getExecutorService()).getParallelism());
+            final Thread worker = pool.submit(() -> {
+                // forked subtasks run in the same pool
+                final ForkJoinTask<Thread> subtask = ForkJoinTask.adapt(Thread::currentThread).fork();
+                assertTrue(ForkJoinTask.inForkJoinPool());
+                subtask.join();
+                return Thread.currentThread();
+            }).get(5, TimeUnit.SECONDS);
+            assertTrue(worker.getName().startsWith("sling-forkjoin-"));
+            assertTrue(worker.isDaemon());
+            assertEquals(Thread.MIN_PRIORITY, worker.getPriority());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void scheduledThreadPool() throws Exception {
+        final BundleContext bc = Mockito.mock(BundleContext.class, Mockito.RETURNS_MOCKS);
+        final Dictionary<String, Object> props = new Hashtable<String, Object>();
+        props.put(Constants.SERVICE_DESCRIPTION, "Apache Sling Thread Pool Manager");
+        DefaultThreadPoolManager dtpm = new DefaultThreadPoolManager(bc, props);
+        final ScheduledThreadPool pool = dtpm.getScheduled("scheduled");
+        try {
+            assertEquals(ExecutorType.SCHEDULED, pool.getConfiguration().getExecutorType());
+            assertSame(pool, dtpm.get("scheduled"));
+            dtpm.release(pool);
+
+            assertEquals("done", pool.schedule(() -> "done", 10, TimeUnit.MILLISECONDS).get(5, TimeUnit.SECONDS));
+
+            final CountDownLatch runs = new CountDownLatch(3);
+            final ScheduledFuture<?> periodic = pool.scheduleAtFixedRate(runs::countDown, 0, 10, TimeUnit.MILLISECONDS);
+            assertTrue(runs.await(5, TimeUnit.SECONDS));
+            periodic.cancel(false);
+
+            // cancelled tasks are removed from the queue
+            final ThreadPoolExecutor executor = ((ThreadPoolFacade) pool).getExecutor();
+            final ScheduledFuture<?> delayed = pool.schedule(() -> {}, 1, TimeUnit.HOURS);
+            assertEquals(1, executor.getQueue().size());
+            delayed.cancel(false);
+            assertEquals(0, executor.getQueue().size());
+        } finally {
+            dtpm.release(pool);
+        }
+
+        final ThreadPool plain = dtpm.get("plain");
+        try {
+            assertFalse(plain instanceof ScheduledThreadPool);
+            dtpm.getScheduled("plain");
+            fail("plain pool is not a scheduled pool");
+        } catch (IllegalStateException e) {
+            // expected
+        } finally {
+            dtpm.release(plain);
+        }
+
+        // only pools created as scheduled pools provide the scheduling methods
+        final ThreadPool created = dtpm.create(new ModifiableThreadPoolConfig(), "plain");
+        final ScheduledThreadPool createdScheduled = dtpm.createScheduled(new ModifiableThreadPoolConfig(), "scheduled");
+        try {
+            assertFalse(created instanceof ScheduledThreadPool);
+            assertEquals(ExecutorType.SCHEDULED, createdScheduled.getConfiguration().getExecutorType());
+            assertEquals("done", createdScheduled.schedule(() -> "done", 10, TimeUnit.MILLISECONDS).get(5, TimeUnit.SECONDS));
+        } finally {
+            dtpm.release(created);
+            dtpm.release(createdScheduled);
+        }
+
+        // a pool used before it has been configured as scheduled pool keeps its facade until it is recreated
+        final ThreadPool reconfigured = dtpm.get("reconfigured");
+        try {
+            final Dictionary<String, Object> config = new Hashtable<String, Object>();
+            config.put(ModifiableThreadPoolConfig.PROPERTY_NAME, "reconfigured");
+            config.put(ModifiableThreadPoolConfig.PROPERTY_EXECUTOR_TYPE, ExecutorType.SCHEDULED.name());
+            dtpm.updated("reconfigured.pid", config);
+            assertFalse(reconfigured instanceof ScheduledThreadPool);
+            try {
+                dtpm.getScheduled("reconfigured");
+                fail("pool is used as plain pool");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        } finally {
+            dtpm.release(reconfigured);
+        }
+        final ScheduledThreadPool recreated = dtpm.getScheduled("reconfigured");
+        dtpm.release(recreated);
+        dtpm.destroy();
+    }
+
+    @Test
+    public void completableFutures() throws Exception {
+        final DefaultThreadPool pool = new DefaultThreadPool("async", new ModifiableThreadPoolConfig());
+        try {
+            final CompletableFuture<String> stage = pool.submitAsync(() -> Thread.currentThread().getName())
+                    .thenApplyAsync(name -> name + "," + Thread.currentThread().getName());
+            for (final String name : stage.get(5, TimeUnit.SECONDS).split(",")) {
+                // dependent stages stay on the pool
+                assertTrue(name, name.startsWith("sling-async-"));
+            }
+            assertNull(pool.runAsync(() -> {}).get(5, TimeUnit.SECONDS));
+
+            final CompletableFuture<Object> failed = pool.submitAsync(() -> {
+                throw new IllegalStateException("failed");
+            });
+            try {
+                failed.get(5, TimeUnit.SECONDS);
+                fail("supplier failed");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void batchSubmission() throws Exception {
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        config.setMinPoolSize(1);
+        config.setMaxPoolSize(1);
+        config.setQueueSize(2);
+        config.setBlockPolicy(ThreadPoolPolicy.ABORT);
+        final DefaultThreadPool pool = new DefaultThreadPool("batch", config);
+        try {
+            final ThreadLocal<Integer> threadLocal = new ThreadLocal<>();
+            final List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                final int value = i;
+                tasks.add(() -> {
+                    // cleaned up between the tasks of the batch
+                    assertNull(threadLocal.get());
+                    threadLocal.set(value);
+                    return value;
+                });
+            }
+            // many more tasks than the queue size, but a single queue entry
+            final List<Future<Integer>> futures = pool.submitAll(tasks);
+            assertEquals(tasks.size(), futures.size());
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(Integer.valueOf(i), futures.get(i).get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void batchRunnersPerThread() throws Exception {
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        config.setMinPoolSize(2);
+        config.setMaxPoolSize(8);
+        config.setQueueSize(100);
+        final DefaultThreadPool pool = new DefaultThreadPool("batchrunners", config);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        try {
+            // the first tasks of both runners wait, so no runner takes all tasks before the other one is queued
+            final CountDownLatch started = new CountDownLatch(2);
+            final List<Callable<Integer>> tasks = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                final int value = i;
+                tasks.add(() -> {
+                    started.countDown();
+                    blocker.await();
+                    return value;
+                });
+            }
+            final List<Future<Integer>> futures = pool.submitAll(tasks);
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            // one runner per core thread, not per task up to the max pool size
+            assertEquals(2, pool.getExecutor().getTaskCount());
+            blocker.countDown();
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(Integer.valueOf(i), futures.get(i).get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            blocker.countDown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void batchRunsInParallelWithoutQueue() throws Exception {
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        config.setMinPoolSize(1);
+        config.setMaxPoolSize(10);
+        config.setQueueSize(0);
+        final DefaultThreadPool pool = new DefaultThreadPool("batchhandoff", config);
+        try {
+            final CountDownLatch allRunning = new CountDownLatch(10);
+            final List<Callable<Boolean>> tasks = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                tasks.add(() -> {
+                    allRunning.countDown();
+                    return allRunning.await(5, TimeUnit.SECONDS);
+                });
+            }
+            for (final Future<Boolean> future : pool.submitAll(tasks)) {
+                assertTrue(future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void rejectedBatchRunsSingleTaskInCaller() throws Exception {
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        config.setMinPoolSize(1);
+        config.setMaxPoolSize(1);
+        config.setQueueSize(0);
+        config.setBlockPolicy(ThreadPoolPolicy.RUN);
+        final DefaultThreadPool pool = new DefaultThreadPool("batchcallerruns", config);
+        try {
+            final CountDownLatch blocker = new CountDownLatch(1);
+            final CompletableFuture<Thread> worker = new CompletableFuture<>();
+            pool.execute(() -> {
+                worker.complete(Thread.currentThread());
+                try {
+                    blocker.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            final Thread thread = worker.get(5, TimeUnit.SECONDS);
+            final List<Callable<Thread>> tasks = new ArrayList<>();
+            tasks.add(() -> {
+                // frees the only thread, which then takes the next runner
+                blocker.countDown();
+                final long deadline = System.currentTimeMillis() + 5000;
+                while ( (pool.getExecutor().getActiveCount() != 0 || thread.getState() != Thread.State.WAITING)
+                        && System.currentTimeMillis() < deadline ) {
+                    Thread.sleep(10);
+                }
+                return Thread.currentThread();
+            });
+            tasks.add(Thread::currentThread);
+            final List<Future<Thread>> futures = pool.submitAll(tasks);
+            assertSame(Thread.currentThread(), futures.get(0).get(5, TimeUnit.SECONDS));
+            assertSame(thread, futures.get(1).get(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void discardedBatchIsCancelled() throws Exception {
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        config.setMinPoolSize(1);
+        config.setMaxPoolSize(1);
+        config.setQueueSize(1);
+        config.setBlockPolicy(ThreadPoolPolicy.DISCARD);
+        final DefaultThreadPool pool = new DefaultThreadPool("batchdiscard", config);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        try {
+            final CountDownLatch started = new CountDownLatch(1);
+            pool.execute(() -> {
+                started.countDown();
+                try {
+                    blocker.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            pool.execute(() -> {});
+            // the pool is saturated, so the runner of the batch is discarded
+            final List<Callable<String>> tasks = new ArrayList<>();
+            tasks.add(() -> "first");
+            tasks.add(() -> "second");
+            for (final Future<String> future : pool.submitAll(tasks)) {
+                assertTrue(future.isCancelled());
+            }
+            // and doesn't wait for tasks nobody runs
+            for (final Future<String> future : pool.invokeAll(tasks, 1, TimeUnit.HOURS)) {
+                assertTrue(future.isCancelled());
+            }
+        } finally {
+            blocker.countDown();
+            pool.shutdown();
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void discardedOldestBatchIsCancelled() throws Exception {
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        config.setMinPoolSize(1);
+        config.setMaxPoolSize(1);
+        config.setQueueSize(1);
+        config.setBlockPolicy(ThreadPoolPolicy.DISCARDOLDEST);
+        final DefaultThreadPool pool = new DefaultThreadPool("batchdiscardoldest", config);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        try {
+            final CountDownLatch started = new CountDownLatch(1);
+            pool.execute(() -> {
+                started.countDown();
+                try {
+                    blocker.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            final List<Callable<String>> tasks = new ArrayList<>();
+            tasks.add(() -> "first");
+            tasks.add(() -> "second");
+            final List<Future<String>> futures = pool.submitAll(tasks);
+            assertFalse(futures.get(0).isDone());
+            // the queued runner of the batch is dropped for a newer task
+            pool.execute(() -> {});
+            for (final Future<String> future : futures) {
+                assertTrue(future.isCancelled());
+            }
+        } finally {
+            blocker.countDown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void batchTaskInterruptDoesNotLeak() throws Exception {
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        config.setMinPoolSize(1);
+        config.setMaxPoolSize(1);
+        final DefaultThreadPool pool = new DefaultThreadPool("batchinterrupt", config);
+        try {
+            final CountDownLatch started = new CountDownLatch(1);
+            final List<Callable<Boolean>> tasks = new ArrayList<>();
+            tasks.add(() -> {
+                started.countDown();
+                // keeps the interrupt status, other than a blocking method
+                final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (!Thread.currentThread().isInterrupted() && System.nanoTime() < deadline) {
+                    Thread.yield();
+                }
+                return Boolean.FALSE;
+            });
+            tasks.add(() -> Thread.currentThread().isInterrupted());
+            final List<Future<Boolean>> futures = pool.submitAll(tasks);
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            futures.get(0).cancel(true);
+            assertFalse(futures.get(1).get(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void invokeAllWithTimeout() throws Exception {
+        final DefaultThreadPool pool = new DefaultThreadPool("invokeall", new ModifiableThreadPoolConfig());
+        try {
+            final CountDownLatch blocker = new CountDownLatch(1);
+            final List<Callable<String>> tasks = new ArrayList<>();
+            tasks.add(() -> "done");
+            tasks.add(() -> {
+                blocker.await();
+                return "blocked";
+            });
+            final List<Future<String>> futures = pool.invokeAll(tasks, 100, TimeUnit.MILLISECONDS);
+            assertEquals("done", futures.get(0).get());
+            assertTrue(futures.get(1).isCancelled());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void queueTypes() throws Exception {
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        config.setQueueSize(10);
+        config.setQueueType(QueueType.RING_BUFFER);
+        final DefaultThreadPool pool = new DefaultThreadPool("ringbuffer", config);
+        try {
+            assertTrue(((HandOverQueue) pool.getExecutor().getQueue()).getQueue() instanceof MpmcArrayBlockingQueue);
+            assertEquals("done", pool.submit(() -> "done").get(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void eagerThreadGrowth() throws Exception {
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        config.setMinPoolSize(1);
+        config.setMaxPoolSize(3);
+        config.setQueueSize(-1);
+        config.setEagerThreadGrowth(true);
+        final DefaultThreadPool pool = new DefaultThreadPool("eager", config);
+        final CountDownLatch started = new CountDownLatch(3);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        try {
+            // the min pool size is kept for the unbounded queue
+            assertEquals(1, pool.getConfiguration().getMinPoolSize());
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(pool.submit(() -> {
+                    started.countDown();
+                    blocker.await();
+                    return null;
+                }));
+            }
+            // threads are started up to the max pool size before a task is queued
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertEquals(3, pool.getExecutor().getPoolSize());
+            assertEquals(1, pool.getExecutor().getQueue().size());
+            blocker.countDown();
+            for (final Future<?> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            blocker.countDown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void liveReconfiguration() throws Exception {
+        final BundleContext bc = Mockito.mock(BundleContext.class, Mockito.RETURNS_MOCKS);
+        final Dictionary<String, Object> props = new Hashtable<String, Object>();
+        props.put(Constants.SERVICE_PID, DefaultThreadPool.class.getName() + ".factory");
+        final DefaultThreadPoolManager dtpm = new DefaultThreadPoolManager(bc, props);
+        try {
+            final Dictionary<String, Object> config = new Hashtable<String, Object>();
+            config.put(ModifiableThreadPoolConfig.PROPERTY_NAME, "live");
+            config.put(ModifiableThreadPoolConfig.PROPERTY_MIN_POOL_SIZE, 2);
+            config.put(ModifiableThreadPoolConfig.PROPERTY_MAX_POOL_SIZE, 4);
+            config.put(ModifiableThreadPoolConfig.PROPERTY_QUEUE_SIZE, 10);
+            dtpm.updated("live.pid", config);
+            final ThreadPoolFacade pool = (ThreadPoolFacade) dtpm.get("live");
+            final ThreadPoolExecutor executor = pool.getExecutor();
+            final ThreadPoolConfig previous = pool.getConfiguration();
+
+            // sizes, keep alive time and block policy are changed in place
+            config.put(ModifiableThreadPoolConfig.PROPERTY_MIN_POOL_SIZE, 6);
+            config.put(ModifiableThreadPoolConfig.PROPERTY_MAX_POOL_SIZE, 8);
+            config.put(ModifiableThreadPoolConfig.PROPERTY_KEEP_ALIVE_TIME, 5000L);
+            config.put(ModifiableThreadPoolConfig.PROPERTY_BLOCK_POLICY, ThreadPoolPolicy.ABORT.name());
+            dtpm.updated("live.pid", config);
+            assertSame(executor, pool.getExecutor());
+            assertEquals(6, executor.getCorePoolSize());
+            assertEquals(8, executor.getMaximumPoolSize());
+            assertEquals(5000L, executor.getKeepAliveTime(TimeUnit.MILLISECONDS));
+            try {
+                executor.getRejectedExecutionHandler().rejectedExecution(() -> {}, executor);
+                fail("Task should have been aborted");
+            } catch (final RejectedExecutionException e) {
+                // expected
+            }
+            assertEquals(8, pool.getConfiguration().getMaxPoolSize());
+            // the configuration is replaced, not changed
+            assertNotSame(previous, pool.getConfiguration());
+            assertEquals(4, previous.getMaxPoolSize());
+
+            config.put(ModifiableThreadPoolConfig.PROPERTY_MIN_POOL_SIZE, 1);
+            config.put(ModifiableThreadPoolConfig.PROPERTY_MAX_POOL_SIZE, 2);
+            dtpm.updated("live.pid", config);
+            assertSame(executor, pool.getExecutor());
+            assertEquals(1, executor.getCorePoolSize());
+            assertEquals(2, executor.getMaximumPoolSize());
+
+            // a different queue requires a new executor
+            config.put(ModifiableThreadPoolConfig.PROPERTY_QUEUE_SIZE, 20);
+            dtpm.updated("live.pid", config);
+            assertTrue(executor.isShutdown());
+            assertEquals(20, pool.getExecutor().getQueue().remainingCapacity());
+            dtpm.release(pool);
+        } finally {
+            dtpm.destroy();
+        }
+    }
+
+    @Test
+    public void queuedTasksHandedOverToNewPool() throws Exception {
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        config.setMinPoolSize(1);
+        config.setMaxPoolSize(1);
+        config.setQueueSize(10);
+        // the handover must not interrupt the running task of a non graceful pool
+        config.setShutdownGraceful(false);
+        final ThreadPoolFacade pool = new ThreadPoolFacade(new DefaultThreadPool("old", config));
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        try {
+            final ThreadPoolExecutor oldExecutor = pool.getExecutor();
+            final Future<?> running = pool.submit(() -> {
+                started.countDown();
+                blocker.await();
+                return null;
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            final List<Future<String>> queued = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                queued.add(pool.submit(() -> Thread.currentThread().getName()));
+            }
+            assertEquals(3, oldExecutor.getQueue().size());
+
+            pool.setPool(new DefaultThreadPool("new", config));
+            // the queued tasks run in the new pool while the old pool still runs its task
+            for (final Future<String> future : queued) {
+                assertTrue(future.get(5, TimeUnit.SECONDS).startsWith("sling-new-"));
+            }
+            assertTrue(oldExecutor.isShutdown());
+            assertFalse(running.isDone());
+            blocker.countDown();
+            running.get(5, TimeUnit.SECONDS);
+        } finally {
+            blocker.countDown();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void tasksPassedWhileRebuildingReachNewPool() throws Exception {
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        config.setMinPoolSize(2);
+        config.setMaxPoolSize(2);
+        config.setQueueSize(-1);
+        // the running old pool never drops tasks, but it would drop the tasks passed to it once it is shut down
+        config.setBlockPolicy(ThreadPoolPolicy.DISCARD);
+        final ThreadPoolFacade pool = new ThreadPoolFacade(new DefaultThreadPool("rebuilt", config));
+        try {
+            final DefaultThreadPool oldPool = pool.getPool();
+            final ThreadPoolExecutor oldExecutor = pool.getExecutor();
+            final List<Future<?>> futures = Collections.synchronizedList(new ArrayList<>());
+            final AtomicBoolean stop = new AtomicBoolean();
+            final CountDownLatch submitting = new CountDownLatch(1);
+            final Thread submitter = new Thread(() -> {
+                while ( !stop.get() ) {
+                    // keeps using the old pool, like a caller which got it just before it was replaced
+                    futures.add(oldPool.submit(() -> {}));
+                    submitting.countDown();
+                }
+            });
+            submitter.start();
+            assertTrue(submitting.await(5, TimeUnit.SECONDS));
+            pool.setPool(new DefaultThreadPool("rebuilt", config));
+            Thread.sleep(50);
+            stop.set(true);
+            submitter.join(5000);
+
+            // passed to the executor after it has been shut down, and to the pool without an executor
+            assertTrue(oldExecutor.isShutdown());
+            final FutureTask<String> rejected = new FutureTask<>(() -> "forwarded");
+            oldExecutor.execute(rejected);
+            futures.add(rejected);
+            futures.add(oldPool.submit(() -> "forwarded"));
+            for (final Future<?> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+            assertEquals("forwarded", rejected.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void queuedTasksHandedOverToSmallerPool() throws Exception {
+        final BundleContext bc = Mockito.mock(BundleContext.class, Mockito.RETURNS_MOCKS);
+        final Dictionary<String, Object> props = new Hashtable<String, Object>();
+        props.put(Constants.SERVICE_PID, DefaultThreadPool.class.getName() + ".factory");
+        final DefaultThreadPoolManager dtpm = new DefaultThreadPoolManager(bc, props);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        try {
+            final Dictionary<String, Object> config = new Hashtable<String, Object>();
+            config.put(ModifiableThreadPoolConfig.PROPERTY_NAME, "shrinking");
+            config.put(ModifiableThreadPoolConfig.PROPERTY_MIN_POOL_SIZE, 1);
+            config.put(ModifiableThreadPoolConfig.PROPERTY_MAX_POOL_SIZE, 1);
+            config.put(ModifiableThreadPoolConfig.PROPERTY_QUEUE_SIZE, 10);
+            config.put(ModifiableThreadPoolConfig.PROPERTY_BLOCK_POLICY, ThreadPoolPolicy.RUN.name());
+            dtpm.updated("shrinking.pid", config);
+            final ThreadPool pool = dtpm.get("shrinking");
+            final CountDownLatch started = new CountDownLatch(1);
+            pool.execute(() -> {
+                started.countDown();
+                try {
+                    blocker.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            final List<Future<Thread>> queued = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                queued.add(pool.submit(Thread::currentThread));
+            }
+
+            // the queue of the new pool is too small for the queued tasks, which must not run in the caller
+            config.put(ModifiableThreadPoolConfig.PROPERTY_QUEUE_SIZE, 2);
+            dtpm.updated("shrinking.pid", config);
+            for (final Future<Thread> future : queued) {
+                final Thread thread = future.get(5, TimeUnit.SECONDS);
+                assertNotSame(Thread.currentThread(), thread);
+                assertTrue(thread.getName().startsWith("sling-shrinking-"));
+            }
+            dtpm.release(pool);
+        } finally {
+            blocker.countDown();
+            dtpm.destroy();
+        }
+    }
+
+    @Test
+    public void concurrentGetAndRelease() throws Exception {
+        final BundleContext bc = Mockito.mock(BundleContext.class, Mockito.RETURNS_MOCKS);
+        final Dictionary<String, Object> props = new Hashtable<String, Object>();
+        props.put(Constants.SERVICE_PID, DefaultThreadPool.class.getName() + ".factory");
+        final DefaultThreadPoolManager dtpm = new DefaultThreadPoolManager(bc, props);
+        try {
+            final Dictionary<String, Object> config = new Hashtable<String, Object>();
+            config.put(ModifiableThreadPoolConfig.PROPERTY_NAME, "shared");
+            config.put(ModifiableThreadPoolConfig.PROPERTY_MAX_POOL_SIZE, 7);
+            dtpm.updated("shared.pid", config);
+
+            final ThreadPool kept = dtpm.get("shared");
+            final int threads = 8;
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Future<Integer>> results = new ArrayList<>();
+            final ExecutorService callers = Executors.newFixedThreadPool(threads);
+            try {
+                for (int i = 0; i < threads; i++) {
+                    // half of the callers use a pool which is released by its last user in between
+                    final String name = i % 2 == 0 ? "shared" : "transient";
+                    results.add(callers.submit(() -> {
+                        start.await();
+                        int executed = 0;
+                        for (int j = 0; j < 500; j++) {
+                            final ThreadPool pool = dtpm.get(name);
+                            try {
+                                pool.submit(() -> null).get(5, TimeUnit.SECONDS);
+                                executed++;
+                            } finally {
+                                dtpm.release(pool);
+                            }
+                        }
+                        return executed;
+                    }));
+                }
+                start.countDown();
+                for (final Future<Integer> result : results) {
+                    assertEquals(500, result.get(30, TimeUnit.SECONDS).intValue());
+                }
+            } finally {
+                callers.shutdownNow();
+            }
+
+            // the configured pool has been used all the time and is still the same
+            assertSame(kept, dtpm.get("shared"));
+            dtpm.release(kept);
+            assertEquals(7, kept.getConfiguration().getMaxPoolSize());
+
+            // the pid index still finds the pool
+            config.put(ModifiableThreadPoolConfig.PROPERTY_MAX_POOL_SIZE, 9);
+            dtpm.updated("shared.pid", config);
+            assertEquals(9, kept.getConfiguration().getMaxPoolSize());
+            dtpm.deleted("shared.pid");
+            assertFalse("shared".equals(kept.getName()));
+            dtpm.release(kept);
+            for (final DefaultThreadPoolManager.Entry entry : dtpm.getConfigurations()) {
+                assertTrue(entry.getName(), entry.isUsed());
+            }
+        } finally {
+            dtpm.destroy();
+        }
+    }
+
+    @Test
+    public void unusedPoolLingers() throws Exception {
+        final BundleContext bc = Mockito.mock(BundleContext.class, Mockito.RETURNS_MOCKS);
+        final Dictionary<String, Object> props = new Hashtable<String, Object>();
+        props.put(Constants.SERVICE_PID, DefaultThreadPool.class.getName() + ".factory");
+        final DefaultThreadPoolManager dtpm = new DefaultThreadPoolManager(bc, props);
+        try {
+            final Dictionary<String, Object> config = new Hashtable<String, Object>();
+            config.put(ModifiableThreadPoolConfig.PROPERTY_NAME, "lingering");
+            config.put(ModifiableThreadPoolConfig.PROPERTY_LINGER_TIME, 500L);
+            dtpm.updated("lingering.pid", config);
+
+            ThreadPoolFacade pool = (ThreadPoolFacade) dtpm.get("lingering");
+            pool.submit(() -> null).get(5, TimeUnit.SECONDS);
+            final ThreadPoolExecutor executor = pool.getExecutor();
+            dtpm.release(pool);
+
+            // the unused pool is reused within the linger time
+            assertFalse(executor.isShutdown());
+            pool = (ThreadPoolFacade) dtpm.get("lingering");
+            assertSame(executor, pool.getExecutor());
+            dtpm.release(pool);
+
+            // and shut down and removed afterwards, off the timer thread
+            final long deadline = System.currentTimeMillis() + 5000;
+            while ( (!executor.isShutdown() || dtpm.getConfigurations().length > 0)
+                    && System.currentTimeMillis() < deadline ) {
+                Thread.sleep(50);
+            }
+            assertTrue(executor.isShutdown());
+            assertEquals(0, dtpm.getConfigurations().length);
+
+            // a pool without linger time is shut down at once
+            final ThreadPoolFacade other = (ThreadPoolFacade) dtpm.get("other");
+            final ThreadPoolExecutor otherExecutor = other.getExecutor();
+            dtpm.release(other);
+            assertTrue(otherExecutor.isShutdown());
+        } finally {
+            dtpm.destroy();
+        }
+    }
+
+    @Test
+    public void lingerExpiryDoesNotBlockTimer() throws Exception {
+        final BundleContext bc = Mockito.mock(BundleContext.class, Mockito.RETURNS_MOCKS);
+        final Dictionary<String, Object> props = new Hashtable<String, Object>();
+        props.put(Constants.SERVICE_PID, DefaultThreadPool.class.getName() + ".factory");
+        final DefaultThreadPoolManager dtpm = new DefaultThreadPoolManager(bc, props);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        try {
+            final Dictionary<String, Object> config = new Hashtable<String, Object>();
+            config.put(ModifiableThreadPoolConfig.PROPERTY_NAME, "lingering");
+            config.put(ModifiableThreadPoolConfig.PROPERTY_LINGER_TIME, 100L);
+            config.put(ModifiableThreadPoolConfig.PROPERTY_SHUTDOWN_GRACEFUL, true);
+            config.put(ModifiableThreadPoolConfig.PROPERTY_SHUTDOWN_WAIT_TIME, 10000);
+            dtpm.updated("lingering.pid", config);
+
+            final ThreadPoolFacade pool = (ThreadPoolFacade) dtpm.get("lingering");
+            pool.execute(() -> {
+                try {
+                    blocker.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            final ThreadPoolExecutor executor = pool.getExecutor();
+            dtpm.release(pool);
+            final long deadline = System.currentTimeMillis() + 5000;
+            while ( !executor.isShutdown() && System.currentTimeMillis() < deadline ) {
+                Thread.sleep(10);
+            }
+            assertTrue(executor.isShutdown());
+
+            // the shutdown waits for the running task, the timer keeps running meanwhile
+            final Timer timer = dtpm.getTimer("other");
+            try {
+                final CountDownLatch fired = new CountDownLatch(1);
+                timer.schedule(fired::countDown, 10, TimeUnit.MILLISECONDS);
+                assertTrue(fired.await(2, TimeUnit.SECONDS));
+                assertFalse(executor.isTerminated());
+            } finally {
+                dtpm.release(timer);
+            }
+        } finally {
+            blocker.countDown();
+            dtpm.destroy();
+        }
+    }
+
+    @Test
+    public void saturatedCallerRunsPoolDoesNotBlockTimer() throws Exception {
+        final BundleContext bc = Mockito.mock(BundleContext.class, Mockito.RETURNS_MOCKS);
+        final Dictionary<String, Object> props = new Hashtable<String, Object>();
+        props.put(Constants.SERVICE_PID, DefaultThreadPool.class.getName() + ".factory");
+        final DefaultThreadPoolManager dtpm = new DefaultThreadPoolManager(bc, props);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final Runnable blocking = () -> {
+            try {
+                blocker.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        try {
+            final Dictionary<String, Object> config = new Hashtable<String, Object>();
+            config.put(ModifiableThreadPoolConfig.PROPERTY_NAME, "saturated");
+            config.put(ModifiableThreadPoolConfig.PROPERTY_MIN_POOL_SIZE, 1);
+            config.put(ModifiableThreadPoolConfig.PROPERTY_MAX_POOL_SIZE, 1);
+            config.put(ModifiableThreadPoolConfig.PROPERTY_QUEUE_SIZE, 1);
+            config.put(ModifiableThreadPoolConfig.PROPERTY_BLOCK_POLICY, ThreadPoolPolicy.RUN.name());
+            dtpm.updated("saturated.pid", config);
+
+            final Timer saturatedTimer = dtpm.getTimer("saturated");
+            final Timer otherTimer = dtpm.getTimer("other");
+            try {
+                // the only thread and the queue are busy
+                ((TimerFacade) saturatedTimer).getThreadPool().execute(blocking);
+                ((TimerFacade) saturatedTimer).getThreadPool().execute(blocking);
+
+                final CompletableFuture<Thread> expired = new CompletableFuture<>();
+                saturatedTimer.schedule(() -> {
+                    expired.complete(Thread.currentThread());
+                    blocking.run();
+                }, 10, TimeUnit.MILLISECONDS);
+                assertTrue(expired.get(5, TimeUnit.SECONDS).getName().startsWith("sling-timer-fallback-"));
+
+                // the blocked task doesn't delay other timers
+                final CountDownLatch fired = new CountDownLatch(1);
+                otherTimer.schedule(fired::countDown, 10, TimeUnit.MILLISECONDS);
+                assertTrue(fired.await(2, TimeUnit.SECONDS));
+            } finally {
+                blocker.countDown();
+                dtpm.release(saturatedTimer);
+                dtpm.release(otherTimer);
+            }
+        } finally {
+            blocker.countDown();
+            dtpm.destroy();
+        }
+    }
+
+    @Test
+    public void executorCreatedWithFirstTask() throws Exception {
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        final DefaultThreadPool pool = new DefaultThreadPool("lazy", config);
+        try {
+            assertNull(pool.getCreatedExecutorService());
+            assertEquals("lazy", pool.submit(() -> "lazy").get(5, TimeUnit.SECONDS));
+            final ThreadPoolExecutor executor = pool.getCreatedExecutor();
+            assertNotNull(executor);
+            assertSame(executor, pool.getExecutor());
+        } finally {
+            pool.shutdown();
+        }
+        assertNull(pool.getExecutorService());
+
+        // a pool shut down before its first task never creates an executor
+        final DefaultThreadPool unused = new DefaultThreadPool("unused", config);
+        unused.shutdown();
+        assertNull(unused.getExecutorService());
+        try {
+            unused.execute(() -> {});
+            fail("Shut down pool must reject tasks");
+        } catch (final RejectedExecutionException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void idleHibernation() throws Exception {
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        config.setMinPoolSize(2);
+        config.setMaxPoolSize(2);
+        config.setQueueSize(10);
+        config.setHibernationTime(100);
+        config.setPrestartCoreThreads(true);
+        final ThreadPoolFacade pool = new ThreadPoolFacade(new DefaultThreadPool("hibernating", config));
+        final HibernationController controller = new HibernationController("hibernating", () -> pool, 100);
+        try {
+            pool.submit(() -> null).get(5, TimeUnit.SECONDS);
+            final ThreadPoolExecutor executor = pool.getCreatedExecutor();
+            executor.prestartAllCoreThreads();
+            assertEquals(2, executor.getPoolSize());
+
+            // the pool hibernates once it has been idle for the hibernation time
+            controller.sample();
+            assertFalse(pool.isHibernating());
+            Thread.sleep(150);
+            controller.sample();
+            assertTrue(pool.isHibernating());
+            assertEquals(1, pool.getHibernationCount());
+            final long deadline = System.currentTimeMillis() + 5000;
+            while ( executor.getPoolSize() > 0 && System.currentTimeMillis() < deadline ) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, executor.getPoolSize());
+
+            // and wakes up with the next task
+            pool.submit(() -> null).get(5, TimeUnit.SECONDS);
+            assertFalse(pool.isHibernating());
+            assertEquals(1, pool.getWakeUpCount());
+            assertFalse(executor.allowsCoreThreadTimeOut());
+            assertEquals(60000L, executor.getKeepAliveTime(TimeUnit.MILLISECONDS));
+            assertEquals(2, executor.getPoolSize());
+
+            // a task passed to the pool within the idle time prevents hibernating, even if it is not queued yet
+            assertFalse(pool.hibernate(100));
+            assertFalse(pool.isHibernating());
+            Thread.sleep(150);
+            assertTrue(pool.hibernate(100));
+            assertEquals(2, pool.getHibernationCount());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void prestartAndWarmUp() throws Exception {
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        config.setMinPoolSize(3);
+        config.setMaxPoolSize(3);
+        config.setQueueSize(10);
+        config.setPrestartCoreThreads(true);
+        config.setWarmUpThreads(true);
+        final Set<Thread> warmedUpThreads = ConcurrentHashMap.newKeySet();
+        final CountDownLatch warmedUp = new CountDownLatch(3);
+        final ThreadLocal<String> threadLocal = new ThreadLocal<>();
+        config.setWarmUpTask(() -> {
+            threadLocal.set("warm-up");
+            warmedUpThreads.add(Thread.currentThread());
+            warmedUp.countDown();
+        });
+        final ThreadPoolFacade pool = new ThreadPoolFacade(new DefaultThreadPool("prestarted", config));
+        try {
+            // the threads are started and warmed up before the first task, each of them once
+            final ThreadPoolExecutor executor = pool.getCreatedExecutor();
+            assertNotNull(executor);
+            assertEquals(3, executor.getPoolSize());
+            assertTrue(warmedUp.await(5, TimeUnit.SECONDS));
+            assertEquals(3, warmedUpThreads.size());
+            assertEquals(0, executor.getCompletedTaskCount());
+            // the thread locals of the warm-up are cleaned up
+            assertNull(pool.submit(threadLocal::get).get(5, TimeUnit.SECONDS));
+
+            // also when the pool is replaced
+            final CountDownLatch replacementWarmedUp = new CountDownLatch(3);
+            config.setWarmUpTask(replacementWarmedUp::countDown);
+            config.setQueueSize(20);
+            pool.setConfiguration(config);
+            final ThreadPoolExecutor replacement = pool.getCreatedExecutor();
+            assertNotSame(executor, replacement);
+            assertEquals(3, replacement.getPoolSize());
+            assertTrue(replacementWarmedUp.await(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void warmUpRunsInPrestartedThreads() throws Exception {
+        // without a queue and with the caller running rejected tasks the warm-up must not end up in the caller
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        config.setMinPoolSize(2);
+        config.setMaxPoolSize(2);
+        config.setQueueSize(0);
+        config.setBlockPolicy(ThreadPoolPolicy.RUN);
+        config.setPrestartCoreThreads(true);
+        config.setWarmUpThreads(true);
+        final Set<Thread> warmedUpThreads = ConcurrentHashMap.newKeySet();
+        final CountDownLatch warmedUp = new CountDownLatch(2);
+        config.setWarmUpTask(() -> {
+            warmedUpThreads.add(Thread.currentThread());
+            warmedUp.countDown();
+            // a failing warm-up doesn't terminate the thread
+            throw new AssertionError("failed warm-up");
+        });
+        final DefaultThreadPool pool = new DefaultThreadPool("warmup", config);
+        try {
+            assertTrue(warmedUp.await(5, TimeUnit.SECONDS));
+            assertEquals(2, warmedUpThreads.size());
+            assertFalse(warmedUpThreads.contains(Thread.currentThread()));
+            // the warmed up threads wait for tasks
+            final long deadline = System.currentTimeMillis() + 5000;
+            for (final Thread thread : warmedUpThreads) {
+                while ( thread.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline ) {
+                    Thread.sleep(10);
+                }
+                assertEquals(Thread.State.WAITING, thread.getState());
+            }
+            assertEquals(2, pool.getCreatedExecutor().getPoolSize());
+            assertTrue(warmedUpThreads.contains(pool.submit(Thread::currentThread).get(5, TimeUnit.SECONDS)));
+        } finally {
+            pool.shutdown();
+        }
+    }
 }
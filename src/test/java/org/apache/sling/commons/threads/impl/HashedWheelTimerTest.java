@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.commons.threads.ThreadPoolConfig.ThreadPriority;
+import org.apache.sling.commons.threads.Timer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+
+public class HashedWheelTimerTest {
+
+    private static final Executor DIRECT = Runnable::run;
+
+    private HashedWheelTimer timer;
+
+    @Before
+    public void setUp() {
+        timer = new HashedWheelTimer(
+                new ExtendedThreadFactory(Executors.defaultThreadFactory(), "timer-test", ThreadPriority.NORM, true),
+                10, TimeUnit.MILLISECONDS, 8);
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void testWheelSizeIsRoundedUpToPowerOfTwo() {
+        assertEquals(8, timer.getWheelSize());
+        assertEquals(16, new HashedWheelTimer(Executors.defaultThreadFactory(), 1, TimeUnit.SECONDS, 9).getWheelSize());
+        assertEquals(1, new HashedWheelTimer(Executors.defaultThreadFactory(), 1, TimeUnit.SECONDS, 1).getWheelSize());
+    }
+
+    @Test(timeout = 10000)
+    public void testTimeoutsExpireInOrderOfDeadline() throws InterruptedException {
+        final List<Integer> expired = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(3);
+        final long start = System.nanoTime();
+        // more than one round of the wheel, which covers 80ms
+        for (final int delay : new int[] {150, 20, 60}) {
+            timer.newTimeout(() -> {
+                synchronized (expired) {
+                    expired.add(delay);
+                }
+                done.countDown();
+            }, DIRECT, delay, TimeUnit.MILLISECONDS);
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+        synchronized (expired) {
+            assertEquals(Arrays.asList(20, 60, 150), expired);
+        }
+        assertEquals(0, timer.getPendingTimeouts());
+    }
+
+    @Test(timeout = 10000)
+    public void testCancelledTimeoutsDoNotExpire() throws InterruptedException {
+        final AtomicInteger runs = new AtomicInteger();
+        final HashedWheelTimer.WheelTimeout cancelled = timer.newTimeout(runs::incrementAndGet, DIRECT, 20, TimeUnit.MILLISECONDS);
+        final CountDownLatch done = new CountDownLatch(1);
+        final HashedWheelTimer.WheelTimeout expiring = timer.newTimeout(done::countDown, DIRECT, 50, TimeUnit.MILLISECONDS);
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        assertTrue(cancelled.isCancelled());
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(expiring.isExpired());
+        assertFalse(expiring.cancel());
+        assertEquals(0, runs.get());
+    }
+
+    @Test(timeout = 30000)
+    public void testManyOutstandingTimeouts() throws InterruptedException {
+        final int count = 200000;
+        final AtomicInteger runs = new AtomicInteger();
+        final List<HashedWheelTimer.WheelTimeout> timeouts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            timeouts.add(timer.newTimeout(runs::incrementAndGet, DIRECT, 1, TimeUnit.HOURS));
+        }
+        assertEquals(count, timer.getPendingTimeouts());
+        // the usual case, the guarded task completes before its timeout
+        for (final HashedWheelTimer.WheelTimeout timeout : timeouts) {
+            assertTrue(timeout.cancel());
+        }
+        assertEquals(0, timer.getPendingTimeouts());
+
+        final CountDownLatch done = new CountDownLatch(1);
+        timer.newTimeout(done::countDown, DIRECT, 10, TimeUnit.MILLISECONDS);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    public void testStoppedTimerRejectsTimeouts() {
+        timer.stop();
+        try {
+            timer.newTimeout(() -> {}, DIRECT, 1, TimeUnit.SECONDS);
+            fail("stopped timer accepted a timeout");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testTimerFromManagerRunsTasksInThreadPool() throws InterruptedException {
+        final BundleContext bc = Mockito.mock(BundleContext.class, Mockito.RETURNS_MOCKS);
+        Mockito.when(bc.getProperty(DefaultThreadPoolManager.PROPERTY_TIMER_TICK_DURATION)).thenReturn("10");
+        final Dictionary<String, Object> props = new Hashtable<String, Object>();
+        props.put(Constants.SERVICE_DESCRIPTION, "Apache Sling Thread Pool Manager");
+        final DefaultThreadPoolManager dtpm = new DefaultThreadPoolManager(bc, props);
+        try {
+            final Timer poolTimer = dtpm.getTimer("timer-pool");
+            final CountDownLatch done = new CountDownLatch(1);
+            final List<String> threads = new ArrayList<>();
+            poolTimer.schedule(() -> {
+                threads.add(Thread.currentThread().getName());
+                done.countDown();
+            }, 10, TimeUnit.MILLISECONDS);
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertTrue(threads.get(0), threads.get(0).startsWith("sling-timer-pool-"));
+
+            dtpm.release(poolTimer);
+            try {
+                poolTimer.schedule(() -> {}, 10, TimeUnit.MILLISECONDS);
+                fail("released timer accepted a task");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        } finally {
+            dtpm.destroy();
+        }
+    }
+}
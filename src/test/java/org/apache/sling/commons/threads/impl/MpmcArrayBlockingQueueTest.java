@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class MpmcArrayBlockingQueueTest {
+
+    @Test
+    public void testBoundedFifo() {
+        final MpmcArrayBlockingQueue<Integer> queue = new MpmcArrayBlockingQueue<>(3);
+        assertNull(queue.poll());
+        // several laps of the ring buffer
+        for (int lap = 0; lap < 5; lap++) {
+            assertTrue(queue.offer(1));
+            assertTrue(queue.offer(2));
+            assertTrue(queue.offer(3));
+            assertFalse(queue.offer(4));
+            assertEquals(3, queue.size());
+            assertEquals(0, queue.remainingCapacity());
+            assertEquals(Arrays.asList(1, 2, 3), new ArrayList<>(queue));
+            assertEquals(Integer.valueOf(1), queue.peek());
+            assertEquals(Integer.valueOf(1), queue.poll());
+            assertEquals(Integer.valueOf(2), queue.poll());
+            assertEquals(Integer.valueOf(3), queue.poll());
+            assertNull(queue.poll());
+            assertTrue(queue.isEmpty());
+        }
+        queue.offer(5);
+        final List<Integer> drained = new ArrayList<>();
+        assertEquals(1, queue.drainTo(drained));
+        assertEquals(Arrays.asList(5), drained);
+    }
+
+    @Test
+    public void testRemove() {
+        final MpmcArrayBlockingQueue<Integer> queue = new MpmcArrayBlockingQueue<>(3);
+        for (int lap = 0; lap < 5; lap++) {
+            queue.offer(1);
+            queue.offer(2);
+            queue.offer(3);
+            assertTrue(queue.remove(2));
+            assertFalse(queue.remove(2));
+            assertFalse(queue.remove(4));
+            assertEquals(2, queue.size());
+            assertEquals(Arrays.asList(1, 3), new ArrayList<>(queue));
+            // the slot of a removed element is freed once the consumers reach it
+            assertFalse(queue.offer(4));
+            assertEquals(Integer.valueOf(1), queue.poll());
+            assertEquals(Integer.valueOf(3), queue.poll());
+            assertNull(queue.poll());
+            assertTrue(queue.isEmpty());
+        }
+        queue.offer(1);
+        queue.offer(2);
+        queue.offer(3);
+        assertTrue(queue.remove(1));
+        // removing the head frees its slot
+        assertTrue(queue.offer(4));
+        assertEquals(Integer.valueOf(2), queue.peek());
+        final Iterator<Integer> i = queue.iterator();
+        assertEquals(Integer.valueOf(2), i.next());
+        assertEquals(Integer.valueOf(3), i.next());
+        i.remove();
+        assertEquals(Integer.valueOf(4), i.next());
+        assertFalse(i.hasNext());
+        assertEquals(Arrays.asList(2, 4), new ArrayList<>(queue));
+        assertTrue(queue.remove(2));
+        assertTrue(queue.remove(4));
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+        assertEquals(3, queue.remainingCapacity());
+    }
+
+    @Test(timeout = 10000)
+    public void testThreadPoolExecutorRemoveAndPurge() throws Exception {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.MINUTES,
+                new MpmcArrayBlockingQueue<Runnable>(10));
+        try {
+            final CountDownLatch blocker = new CountDownLatch(1);
+            executor.execute(() -> {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            final AtomicLong runs = new AtomicLong();
+            final Runnable removed = runs::incrementAndGet;
+            executor.execute(removed);
+            final Future<?> cancelled = executor.submit(runs::incrementAndGet);
+            final Future<?> kept = executor.submit(runs::incrementAndGet);
+            assertTrue(executor.remove(removed));
+            assertTrue(cancelled.cancel(false));
+            executor.purge();
+            assertEquals(1, executor.getQueue().size());
+            blocker.countDown();
+            kept.get(5, TimeUnit.SECONDS);
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+            assertEquals(1, runs.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testConcurrentRemove() throws Exception {
+        final int elements = 100000;
+        final MpmcArrayBlockingQueue<Integer> queue = new MpmcArrayBlockingQueue<>(64);
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final AtomicLong taken = new AtomicLong();
+            final AtomicLong removed = new AtomicLong();
+            final AtomicBoolean produced = new AtomicBoolean();
+            final Future<?> producer = executor.submit(() -> {
+                for (int i = 0; i < elements; i++) {
+                    queue.put(i);
+                }
+                produced.set(true);
+                return null;
+            });
+            final Future<?> consumer = executor.submit(() -> {
+                while ( !produced.get() || !queue.isEmpty() ) {
+                    if ( queue.poll(1, TimeUnit.MILLISECONDS) != null ) {
+                        taken.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+            final Future<?> remover = executor.submit(() -> {
+                for (int i = 0; i < elements; i++) {
+                    while ( !produced.get() && queue.size() == 0 ) {
+                        Thread.yield();
+                    }
+                    if ( queue.remove(i) ) {
+                        removed.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+            producer.get(20, TimeUnit.SECONDS);
+            remover.get(20, TimeUnit.SECONDS);
+            consumer.get(20, TimeUnit.SECONDS);
+            // every element is either taken or removed, never both
+            assertEquals(elements, taken.get() + removed.get());
+            assertTrue(queue.isEmpty());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testBlocksOnlyWhileEmptyOrFull() throws InterruptedException {
+        final MpmcArrayBlockingQueue<String> queue = new MpmcArrayBlockingQueue<>(1);
+        assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+
+        final CountDownLatch polling = new CountDownLatch(1);
+        final Thread producer = new Thread(() -> {
+            try {
+                polling.await();
+                Thread.sleep(50);
+                queue.put("a");
+                // blocks until the consumer took the second element
+                queue.put("b");
+                queue.put("c");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        polling.countDown();
+        assertEquals("a", queue.take());
+        assertEquals("b", queue.poll(5, TimeUnit.SECONDS));
+        assertEquals("c", queue.take());
+        producer.join();
+        assertTrue(queue.offer("d", 0, TimeUnit.MILLISECONDS));
+        assertFalse(queue.offer("e", 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(timeout = 30000)
+    public void testMultipleProducersAndConsumers() throws Exception {
+        final int threads = 4;
+        final int perProducer = 100000;
+        final MpmcArrayBlockingQueue<Long> queue = new MpmcArrayBlockingQueue<>(64);
+        final ExecutorService executor = Executors.newFixedThreadPool(2 * threads);
+        try {
+            final AtomicLong sum = new AtomicLong();
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < threads; p++) {
+                futures.add(executor.submit(() -> {
+                    for (long i = 1; i <= perProducer; i++) {
+                        queue.put(i);
+                    }
+                    return null;
+                }));
+            }
+            for (int c = 0; c < threads; c++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perProducer; i++) {
+                        sum.addAndGet(queue.take());
+                    }
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get(20, TimeUnit.SECONDS);
+            }
+            assertEquals(threads * ((long) perProducer * (perProducer + 1) / 2), sum.get());
+            assertTrue(queue.isEmpty());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
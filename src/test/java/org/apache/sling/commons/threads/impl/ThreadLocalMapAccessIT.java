@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+import java.util.function.Supplier;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Runs against the packaged multi-release jar, so on Java 9+ the {@link ThreadLocalMapAccess}
+ * from {@code META-INF/versions/9} is used instead of the one in {@code target/classes}
+ * used by the unit tests.
+ */
+public class ThreadLocalMapAccessIT {
+
+    @BeforeClass
+    public static void requireJava9() {
+        Assume.assumeFalse("The versioned classes are only used on Java 9+",
+                System.getProperty("java.specification.version").startsWith("1."));
+    }
+
+    @Test
+    public void usesVarHandlesFromMultiReleaseJar() {
+        final String location = ThreadLocalMapAccess.class.getProtectionDomain().getCodeSource().getLocation().toString();
+        assertTrue("Not loaded from the jar: " + location, location.endsWith(".jar"));
+        boolean varHandles = false;
+        for (final Field field : ThreadLocalMapAccess.class.getDeclaredFields()) {
+            varHandles |= field.getType().getName().equals("java.lang.invoke.VarHandle");
+        }
+        assertTrue("The Java 8 variant of ThreadLocalMapAccess has been loaded", varHandles);
+    }
+
+    @Test
+    public void accessesThreadLocalMap() {
+        final ThreadLocal<String> threadLocal = new ThreadLocal<>();
+        threadLocal.set("value");
+        try {
+            final Object map = ThreadLocalMapAccess.map(Thread.currentThread(), false);
+            assertNotNull(map);
+            boolean found = false;
+            int entries = 0;
+            for (final Reference<?> entry : ThreadLocalMapAccess.table(map)) {
+                if (entry != null) {
+                    entries++;
+                    found |= entry.get() == threadLocal && "value".equals(ThreadLocalMapAccess.value(entry));
+                }
+            }
+            assertTrue(found);
+            assertEquals(entries, ThreadLocalMapAccess.size(map));
+            assertTrue(ThreadLocalMapAccess.threshold(map) >= ThreadLocalMapAccess.size(map));
+        } finally {
+            threadLocal.remove();
+        }
+
+        final Supplier<String> supplier = () -> "initial";
+        assertSame(supplier, ThreadLocalMapAccess.supplier(ThreadLocal.withInitial(supplier)));
+        assertNull(ThreadLocalMapAccess.supplier(threadLocal));
+    }
+
+    @Test
+    public void cleanerRestoresThreadLocals() {
+        final ThreadLocalChangeListener listener = Mockito.mock(ThreadLocalChangeListener.class);
+        final ThreadLocal<String> threadLocal = new ThreadLocal<>();
+        final ThreadLocalCleaner cleaner = new ThreadLocalCleaner(listener);
+        cleaner.save();
+        threadLocal.set("value");
+        cleaner.cleanup();
+        assertNull(threadLocal.get());
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.sling.commons.threads.ModifiableThreadPoolConfig;
+import org.apache.sling.commons.threads.impl.ThreadLocalChangeListener.Mode;
+import org.junit.Test;
+
+public class ThreadLocalStatisticsTest {
+
+    private static final ThreadLocal<String> STRINGS = new ThreadLocal<>();
+
+    @Test
+    public void testStatisticsAreCollectedPerClass() throws InterruptedException, ExecutionException {
+        final ModifiableThreadPoolConfig config = new ModifiableThreadPoolConfig();
+        config.setMinPoolSize(1);
+        config.setMaxPoolSize(1);
+        config.setThreadLocalStatistics(true);
+        final DefaultThreadPool pool = new DefaultThreadPool("statistics", config);
+        try {
+            for (int i = 0; i < 3; i++) {
+                pool.submit(() -> STRINGS.set("value")).get();
+            }
+            // make sure the previous task has been cleaned up
+            pool.submit(() -> {}).get();
+
+            final ThreadLocalStatistics statistics = pool.getThreadLocalStatistics();
+            final List<ThreadLocalStatistics.Entry> entries = statistics.getTopEntries(1);
+            assertEquals(1, entries.size());
+            final ThreadLocalStatistics.Entry entry = entries.get(0);
+            assertEquals(ThreadLocal.class.getName(), entry.getThreadLocalClass());
+            assertEquals(String.class.getName(), entry.getValueClass());
+            assertEquals(3, entry.getAdded());
+            assertEquals(0, entry.getRemoved());
+            assertEquals(2, entry.getReAdded());
+            assertEquals(1, entry.getDistinct());
+            assertEquals(1, statistics.getEstimatedRetainedEntries(1));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testDistinctThreadLocalsAreCountedConcurrently() throws InterruptedException {
+        final ThreadLocalStatistics statistics = new ThreadLocalStatistics();
+        final List<ThreadLocal<String>> threadLocals = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            threadLocals.add(new ThreadLocal<>());
+        }
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    statistics.changed(Mode.ADDED, Thread.currentThread(), threadLocals.get(i % threadLocals.size()), "value");
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        final ThreadLocalStatistics.Entry entry = statistics.getTopEntries(1).get(0);
+        assertEquals(4000, entry.getAdded());
+        assertEquals(10, entry.getDistinct());
+        assertEquals(3990, entry.getReAdded());
+        assertEquals(10 * 2, statistics.getEstimatedRetainedEntries(2));
+    }
+}
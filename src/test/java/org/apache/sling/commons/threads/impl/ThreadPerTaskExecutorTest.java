@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.sling.commons.threads.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.commons.threads.ThreadPoolConfig.ThreadPoolPolicy;
+import org.junit.Test;
+
+public class ThreadPerTaskExecutorTest {
+
+    @Test(timeout = 10000)
+    public void testConcurrencyIsLimited() throws InterruptedException {
+        final ThreadPerTaskExecutor executor = new ThreadPerTaskExecutor(Executors.defaultThreadFactory(), 2, -1, ThreadPoolPolicy.ABORT);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(2);
+        final CountDownLatch done = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            executor.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                started.countDown();
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(8, executor.getQueueSize());
+        blocker.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, maxRunning.get());
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(10, executor.getCompletedTaskCount());
+    }
+
+    @Test(timeout = 10000)
+    public void testFullQueueIsRejected() throws InterruptedException {
+        final ThreadPerTaskExecutor executor = new ThreadPerTaskExecutor(Executors.defaultThreadFactory(), 1, 1, ThreadPoolPolicy.ABORT);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final Runnable task = () -> {
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        executor.execute(task);
+        executor.execute(task);
+        try {
+            executor.execute(task);
+            fail("Task should have been rejected");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        assertEquals(1, executor.shutdownNow().size());
+        assertFalse(executor.awaitTermination(0, TimeUnit.SECONDS) && executor.getActiveCount() > 0);
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void testThreadFailingToStartIsNotCounted() throws InterruptedException {
+        // the factory returns a thread which has already been started, so starting it again fails
+        final ThreadPerTaskExecutor executor = new ThreadPerTaskExecutor(r -> {
+            final Thread thread = new Thread(() -> {});
+            thread.start();
+            return thread;
+        }, 1, -1, ThreadPoolPolicy.ABORT);
+        try {
+            executor.execute(() -> {});
+            fail("Starting the thread should have failed");
+        } catch (IllegalThreadStateException e) {
+            // expected
+        }
+        assertEquals(0, executor.getActiveCount());
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test(timeout = 10000)
+    public void testQueuedTaskWithoutThreadIsCancelled() throws Exception {
+        // only the first task gets a thread
+        final AtomicInteger threads = new AtomicInteger();
+        final ThreadPerTaskExecutor executor = new ThreadPerTaskExecutor(
+                r -> threads.getAndIncrement() == 0 ? new Thread(r) : null, 1, -1, ThreadPoolPolicy.ABORT);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        final Future<?> queued = executor.submit(() -> {});
+        assertEquals(1, executor.getQueueSize());
+        blocker.countDown();
+        try {
+            queued.get(5, TimeUnit.SECONDS);
+            fail("Task without a thread should have been cancelled");
+        } catch (CancellationException e) {
+            // expected
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}
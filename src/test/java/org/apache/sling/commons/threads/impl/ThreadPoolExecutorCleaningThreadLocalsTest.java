@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -27,6 +28,7 @@ import java.util.concurrent.RejectedExecutionHandler;
  import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import org.apache.sling.commons.threads.ThreadPoolConfig.ThreadLocalCleanupMode;
 import org.apache.sling.commons.threads.impl.ThreadLocalChangeListener.Mode;
 import org.junit.Assert;
 import org.junit.Before;
@@ -79,6 +81,113 @@ public class ThreadPoolExecutorCleaningThreadLocalsTest {
         Mockito.verify(listener, Mockito.times(0)).changed(ArgumentMatchers.eq(Mode.REMOVED), ArgumentMatchers.any(Thread.class), ArgumentMatchers.eq(ThreadLocalTask.threadLocalVariable), ArgumentMatchers.anyString());
     }
 
+    @Test(timeout = 10000)
+    public void testUnchangedThreadLocalsAreNotReported() throws InterruptedException, ExecutionException {
+        assertTaskDoesNotSeeOldThreadLocals("test");
+        // the following tasks don't touch any thread local
+        for (int i = 0; i < 3; i++) {
+            pool.submit(() -> {}).get();
+        }
+        assertTaskDoesNotSeeOldThreadLocals("test2");
+        // make sure the previous task has been cleaned up
+        pool.submit(() -> {}).get();
+        // only the two tasks setting the thread local have been reported
+        Mockito.verify(listener, Mockito.times(2)).changed(ArgumentMatchers.eq(Mode.ADDED), ArgumentMatchers.any(Thread.class), ArgumentMatchers.eq(ThreadLocalTask.threadLocalVariable), ArgumentMatchers.anyString());
+        // the listener is only asked if it is enabled when changes have been detected
+        Mockito.verify(listener, Mockito.times(2)).isEnabled();
+    }
+
+    @Test(timeout = 10000)
+    public void testBatchListenerIsNotifiedOncePerTask() throws InterruptedException, ExecutionException {
+        final List<List<BatchThreadLocalChangeListener.Change>> batches = new CopyOnWriteArrayList<>();
+        final BatchThreadLocalChangeListener batchListener = new BatchThreadLocalChangeListener() {
+            @Override
+            public void changed(Thread thread, List<Change> changes) {
+                batches.add(changes);
+            }
+
+            @Override
+            public boolean isEnabled() {
+                return true;
+            }
+        };
+        final ThreadPoolExecutorCleaningThreadLocals batchPool = new ThreadPoolExecutorCleaningThreadLocals(
+                1, 1, 100, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(20), Executors.defaultThreadFactory(), new ThreadPoolExecutor.AbortPolicy(), batchListener);
+        try {
+            batchPool.submit(new RunnableImplementation(20)).get();
+            batchPool.submit(() -> {}).get();
+            // make sure the previous task has been cleaned up
+            batchPool.submit(() -> {}).get();
+            Assert.assertEquals(1, batches.size());
+            // the JRE might have added some thread locals on its own
+            int added = 0;
+            for (BatchThreadLocalChangeListener.Change change : batches.get(0)) {
+                Assert.assertEquals(Mode.ADDED, change.getMode());
+                if ("val".equals(change.getValue())) {
+                    added++;
+                }
+            }
+            Assert.assertEquals(20, added);
+        } finally {
+            batchPool.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testThreadLocalsCleanedUpEveryNTasks() throws InterruptedException, ExecutionException {
+        pool = new ThreadPoolExecutorCleaningThreadLocals(
+                1, 1, 100, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(20), Executors.defaultThreadFactory(), new ThreadPoolExecutor.AbortPolicy(),
+                listener, ThreadLocalCleanupMode.EVERY_N_TASKS, 3, null);
+        Assert.assertNull(runThreadLocalTask("1"));
+        Assert.assertEquals("1", runThreadLocalTask("2"));
+        Assert.assertEquals("2", runThreadLocalTask("3"));
+        // the thread locals have been restored after the third task
+        Assert.assertNull(runThreadLocalTask("4"));
+    }
+
+    @Test(timeout = 10000)
+    public void testThreadLocalsCleanedUpOnChangeOnly() throws InterruptedException, ExecutionException {
+        pool = new ThreadPoolExecutorCleaningThreadLocals(
+                1, 1, 100, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(20), Executors.defaultThreadFactory(), new ThreadPoolExecutor.AbortPolicy(),
+                listener, ThreadLocalCleanupMode.ON_CHANGE_ONLY, 0, null);
+        assertTaskDoesNotSeeOldThreadLocals("test");
+        assertTaskDoesNotSeeOldThreadLocals("test2");
+        pool.submit(new RunnableImplementation(20)).get();
+        assertTaskDoesNotSeeOldThreadLocals("test3");
+    }
+
+    @Test(timeout = 10000)
+    public void testAllowlistedThreadLocalsArePreserved() throws InterruptedException, ExecutionException {
+        final ThreadLocal<StringBuilder> cache = ThreadLocal.withInitial(StringBuilder::new);
+        for (ThreadLocalCleanupMode mode : new ThreadLocalCleanupMode[] {ThreadLocalCleanupMode.ALWAYS, ThreadLocalCleanupMode.ON_CHANGE_ONLY}) {
+            pool = new ThreadPoolExecutorCleaningThreadLocals(
+                    1, 1, 100, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(20), Executors.defaultThreadFactory(), new ThreadPoolExecutor.AbortPolicy(),
+                    listener, mode, 0, new ThreadLocalAllowlist(new String[] {ThreadPoolExecutorCleaningThreadLocalsTest.class.getName()}));
+            try {
+                final StringBuilder first = pool.submit(() -> cache.get().append("a")).get();
+                assertTaskDoesNotSeeOldThreadLocals("test");
+                final StringBuilder second = pool.submit(() -> cache.get().append("b")).get();
+                assertTaskDoesNotSeeOldThreadLocals("test2");
+                Assert.assertSame(first, second);
+                Assert.assertEquals("ab", second.toString());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        // preserved thread locals are not reported as added
+        Mockito.verify(listener, Mockito.never()).changed(ArgumentMatchers.eq(Mode.ADDED), ArgumentMatchers.any(Thread.class), ArgumentMatchers.eq(cache), ArgumentMatchers.any());
+    }
+
+    private String runThreadLocalTask(String value) throws InterruptedException, ExecutionException {
+        ThreadLocalTask task = new ThreadLocalTask(value);
+        pool.submit(task).get();
+        return task.getOldValue();
+    }
+
     private void assertTaskDoesNotSeeOldThreadLocals(String value) throws InterruptedException, ExecutionException {
         ThreadLocalTask task = new ThreadLocalTask(value);
         pool.submit(task).get();